@@ -16,7 +16,6 @@ import fi.harism.facebook.dao.FBBitmap;
 import fi.harism.facebook.dao.FBChat;
 import fi.harism.facebook.dao.FBUser;
 import fi.harism.facebook.request.RequestUI;
-import fi.harism.facebook.util.BitmapUtils;
 import fi.harism.facebook.view.BitmapSwitcher;
 
 /**
@@ -26,8 +25,11 @@ import fi.harism.facebook.view.BitmapSwitcher;
  */
 public class ChatActivity extends BaseActivity implements FBChat.Observer {
 
+	private static final int PICTURE_ROUND_RADIUS = 7;
+
 	private FBChat fbChat;
 	private Bitmap defaultPicture;
+	private int pictureSize;
 
 	public void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
@@ -58,8 +60,11 @@ public class ChatActivity extends BaseActivity implements FBChat.Observer {
 			}
 		});
 
-		Bitmap bitmap = getGlobalState().getDefaultPicture();
-		defaultPicture = BitmapUtils.roundBitmap(bitmap, 7);
+		pictureSize = getResources().getDimensionPixelSize(
+				R.dimen.view_picture_size);
+
+		defaultPicture = getGlobalState().getDefaultPicture(
+				PICTURE_ROUND_RADIUS);
 
 		fbChat = getGlobalState().getFBFactory().getChat(this);
 		Vector<FBUser> users = fbChat.getUsers();
@@ -163,7 +168,8 @@ public class ChatActivity extends BaseActivity implements FBChat.Observer {
 				nameView.setText(user.getName());
 
 				FBBitmap fbBitmap = getGlobalState().getFBFactory().getBitmap(
-						user.getPicture());
+						user.getPicture(), pictureSize, pictureSize,
+						PICTURE_ROUND_RADIUS);
 				Bitmap bitmap = fbBitmap.getBitmap();
 				if (bitmap != null) {
 					profilePic.setBitmap(bitmap);
@@ -180,14 +186,15 @@ public class ChatActivity extends BaseActivity implements FBChat.Observer {
 		}
 	}
 
-	private class FBBitmapRequest extends RequestUI {
+	private class FBBitmapRequest extends RequestUI implements
+			FBBitmap.Observer {
 
 		private View friendView;
 		private FBUser fbUser;
 		private FBBitmap fbBitmap;
 
 		public FBBitmapRequest(Activity activity, View friendView, FBUser fbUser) {
-			super(activity, activity);
+			super(activity);
 			this.friendView = friendView;
 			this.fbUser = fbUser;
 		}
@@ -196,8 +203,9 @@ public class ChatActivity extends BaseActivity implements FBChat.Observer {
 		public void execute() throws Exception {
 			fbUser.load(FBUser.Level.DEFAULT);
 			fbBitmap = getGlobalState().getFBFactory().getBitmap(
-					fbUser.getPicture());
-			fbBitmap.load();
+					fbUser.getPicture(), pictureSize, pictureSize,
+					PICTURE_ROUND_RADIUS);
+			fbBitmap.load(this);
 		}
 
 		@Override
@@ -211,10 +219,17 @@ public class ChatActivity extends BaseActivity implements FBChat.Observer {
 				// it.
 				BitmapSwitcher profilePic = (BitmapSwitcher) friendView
 						.findViewById(R.id.view_friend_picture);
-				profilePic.setBitmap(BitmapUtils.roundBitmap(
-						fbBitmap.getBitmap(), 7));
+				Bitmap bitmap = fbBitmap.getBitmap();
+				if (bitmap != null) {
+					profilePic.setBitmap(bitmap);
+				}
 			}
 		}
+
+		@Override
+		public void onLoaded(FBBitmap fbBitmap, Exception ex) {
+			postUI(ex);
+		}
 	}
 
 }
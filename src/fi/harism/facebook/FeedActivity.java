@@ -1,10 +1,15 @@
 package fi.harism.facebook;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Vector;
+
 import android.app.Activity;
 import android.content.Intent;
 import android.graphics.Bitmap;
 import android.graphics.Rect;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.view.View;
 import android.view.Window;
 import android.view.animation.AlphaAnimation;
@@ -15,11 +20,13 @@ import fi.harism.facebook.dao.FBBitmap;
 import fi.harism.facebook.dao.FBPost;
 import fi.harism.facebook.dao.FBFeed;
 import fi.harism.facebook.dao.FBUser;
+import fi.harism.facebook.request.Request;
+import fi.harism.facebook.request.RequestQueue;
 import fi.harism.facebook.request.RequestUI;
-import fi.harism.facebook.util.BitmapUtils;
 import fi.harism.facebook.util.FacebookURLSpan;
 import fi.harism.facebook.util.StringUtils;
 import fi.harism.facebook.view.BitmapSwitcher;
+import fi.harism.facebook.view.ObservableScrollView;
 
 /**
  * Feed Activity for showing feed listings.
@@ -33,6 +40,10 @@ public class FeedActivity extends BaseActivity {
 	// Rounding radius for user picture.
 	// TODO: Move this value to resources instead.
 	private static final int PICTURE_ROUND_RADIUS = 7;
+	// Size of user picture in pixels.
+	private int mPictureSize;
+	// Maximum size of post picture in pixels.
+	private int mPostPictureSize;
 	// Span onClick observer for profile protocol.
 	private SpanClickObserver mSpanClickObserver;
 	// Feed path.
@@ -41,6 +52,17 @@ public class FeedActivity extends BaseActivity {
 	private PostClickObserver mPostClickObserver;
 	// Static protocol name for showing profile.
 	private static final String PROTOCOL_SHOW_PROFILE = "showprofile://";
+	// Picture requests for authors not loaded yet, queued by AuthorsRequest.
+	private Vector<FromPictureRequest> mAuthorPictureRequests = new Vector<FromPictureRequest>();
+	// Time in milliseconds author picture requests may wait in queue.
+	private static final long PICTURE_TIME_TO_LIVE = 30000;
+	// Author picture requests by picture view, until picture is shown.
+	private HashMap<BitmapSwitcher, FromPictureRequest> mPictureRequests = new HashMap<BitmapSwitcher, FromPictureRequest>();
+	// Range of visible post views, -1 if not known.
+	private int mFirstVisiblePost = -1;
+	private int mLastVisiblePost = -1;
+	// Author pictures within visible post views.
+	private HashSet<BitmapSwitcher> mVisiblePictures = new HashSet<BitmapSwitcher>();
 
 	@Override
 	public void onCreate(Bundle savedInstanceState) {
@@ -49,13 +71,20 @@ public class FeedActivity extends BaseActivity {
 		setContentView(R.layout.activity_feed);
 
 		// Create default picture from resources.
-		mDefaultPicture = getGlobalState().getDefaultPicture();
-		mDefaultPicture = BitmapUtils.roundBitmap(mDefaultPicture,
+		mDefaultPicture = getGlobalState().getDefaultPicture(
 				PICTURE_ROUND_RADIUS);
 
+		mPictureSize = getResources().getDimensionPixelSize(
+				R.dimen.view_picture_size);
+		mPostPictureSize = getResources().getDimensionPixelSize(
+				R.dimen.view_post_picture_size);
+
 		mSpanClickObserver = new SpanClickObserver();
 		mPostClickObserver = new PostClickObserver();
 
+		ObservableScrollView scrollView = (ObservableScrollView) findViewById(R.id.activity_feed_scroll);
+		scrollView.setObserver(new ScrollObserver());
+
 		TextView title = (TextView) findViewById(R.id.activity_feed_title);
 		title.setText(getIntent().getStringExtra(
 				"fi.harism.facebook.FeedActivity.title"));
@@ -72,14 +101,18 @@ public class FeedActivity extends BaseActivity {
 			public void onClick(View v) {
 				showProgressDialog();
 				getGlobalState().getRequestQueue().removeRequests(self);
-				FBFeedRequest request = new FBFeedRequest(self, fbFeed);
+				FBFeedRequest request = new FBFeedRequest(self, fbFeed, false,
+						true);
 				getGlobalState().getRequestQueue().addRequest(request);
 			}
 		});
 
 		if (fbFeed.getPosts().size() == 0) {
+			// Show cached feed first, it's revalidated afterwards.
 			showProgressDialog();
-			FBFeedRequest request = new FBFeedRequest(this, fbFeed);
+			FBFeedRequest request = new FBFeedRequest(this, fbFeed, true,
+					false);
+			request.setPriority(Request.PRIORITY_HIGH);
 			getGlobalState().getRequestQueue().addRequest(request);
 		} else {
 			updateFeedView(fbFeed);
@@ -102,6 +135,100 @@ public class FeedActivity extends BaseActivity {
 	public void onResume() {
 		super.onResume();
 		getGlobalState().getRequestQueue().setPaused(this, false);
+		// Picture requests might have expired while we were paused.
+		addExpiredPictureRequests();
+	}
+
+	/**
+	 * Adds author picture request to queue. Requests which have not been
+	 * started within PICTURE_TIME_TO_LIVE are dropped, so that pictures of
+	 * posts left behind do not hold back newer requests.
+	 */
+	private void addPictureRequest(FromPictureRequest request) {
+		mPictureRequests.put(request.mProfilePic, request);
+		if (mFirstVisiblePost != -1
+				&& !mVisiblePictures.contains(request.mProfilePic)) {
+			request.setPriority(Request.PRIORITY_LOW);
+		}
+		request.setTimeToLive(PICTURE_TIME_TO_LIVE);
+		getGlobalState().getRequestQueue().addRequest(request);
+	}
+
+	/**
+	 * Finds out which post views are visible, and if they have changed,
+	 * raises priority of queued author picture requests for visible posts and
+	 * lowers it for the rest. This way pictures scrolled into view are loaded
+	 * before pictures of posts further away.
+	 */
+	private void updateVisiblePosts() {
+		ObservableScrollView scrollView = (ObservableScrollView) findViewById(R.id.activity_feed_scroll);
+		LinearLayout contentView = (LinearLayout) findViewById(R.id.activity_feed_content);
+		int top = scrollView.getScrollY();
+		int bottom = top + scrollView.getHeight();
+		int first = -1, last = -1;
+		for (int i = 0; i < contentView.getChildCount(); ++i) {
+			View postView = contentView.getChildAt(i);
+			if (postView.getBottom() > top && postView.getTop() < bottom) {
+				if (first == -1) {
+					first = i;
+				}
+				last = i;
+			}
+		}
+		if (first == mFirstVisiblePost && last == mLastVisiblePost) {
+			return;
+		}
+		mFirstVisiblePost = first;
+		mLastVisiblePost = last;
+
+		mVisiblePictures.clear();
+		for (int i = first; i <= last && i != -1; ++i) {
+			mVisiblePictures.add((BitmapSwitcher) contentView.getChildAt(i)
+					.findViewById(R.id.view_post_from_picture));
+		}
+
+		addExpiredPictureRequests();
+		final HashSet<Request> visible = new HashSet<Request>();
+		final HashSet<Request> hidden = new HashSet<Request>(
+				mPictureRequests.values());
+		for (BitmapSwitcher profilePic : mVisiblePictures) {
+			FromPictureRequest request = mPictureRequests.get(profilePic);
+			if (request != null) {
+				visible.add(request);
+				hidden.remove(request);
+			}
+		}
+		RequestQueue requestQueue = getGlobalState().getRequestQueue();
+		requestQueue.setPriority(new RequestQueue.Filter() {
+			@Override
+			public boolean accept(Request request) {
+				return visible.contains(request);
+			}
+		}, Request.PRIORITY_NORMAL);
+		requestQueue.setPriority(new RequestQueue.Filter() {
+			@Override
+			public boolean accept(Request request) {
+				return hidden.contains(request);
+			}
+		}, Request.PRIORITY_LOW);
+	}
+
+	/**
+	 * Replaces author picture requests whose deadline has passed before
+	 * picture was shown with new ones.
+	 */
+	private void addExpiredPictureRequests() {
+		long time = SystemClock.uptimeMillis();
+		Vector<FromPictureRequest> expired = new Vector<FromPictureRequest>();
+		for (FromPictureRequest request : mPictureRequests.values()) {
+			if (request.getDeadline() != 0 && request.getDeadline() < time) {
+				expired.add(request);
+			}
+		}
+		for (FromPictureRequest request : expired) {
+			addPictureRequest(new FromPictureRequest(this,
+					request.mProfilePic, request.mFBUser));
+		}
 	}
 
 	/**
@@ -184,6 +311,10 @@ public class FeedActivity extends BaseActivity {
 		LinearLayout contentView = (LinearLayout) findViewById(R.id.activity_feed_content);
 		contentView.setVisibility(View.GONE);
 		contentView.removeAllViews();
+		mAuthorPictureRequests.clear();
+		mPictureRequests.clear();
+		mFirstVisiblePost = mLastVisiblePost = -1;
+		mVisiblePictures.clear();
 		
 		for (FBPost post : fbFeed.getPosts()) {
 			View postView = createPostView(post);
@@ -194,7 +325,7 @@ public class FeedActivity extends BaseActivity {
 			if (post.getPicture() != null) {
 				imageView.setVisibility(View.VISIBLE);
 				FBBitmap fbBitmap = getGlobalState().getFBFactory().getBitmap(
-						post.getPicture());
+						post.getPicture(), mPostPictureSize, mPostPictureSize);
 				Bitmap bitmap = fbBitmap.getBitmap();
 				if (bitmap != null) {
 					imageView.setImageBitmap(bitmap);
@@ -212,22 +343,23 @@ public class FeedActivity extends BaseActivity {
 			FBUser fbUser = getGlobalState().getFBFactory().getUser(
 					post.getFromId());
 			if (fbUser.getLevel() == FBUser.Level.UNINITIALIZED) {
+				// Picture is requested once AuthorsRequest has loaded users.
 				profilePic.setBitmap(mDefaultPicture);
 				FromPictureRequest request = new FromPictureRequest(this,
 						profilePic, fbUser);
-				getGlobalState().getRequestQueue().addRequest(request);
+				mAuthorPictureRequests.add(request);
+				mPictureRequests.put(profilePic, request);
 			} else {
 				FBBitmap fbBitmap = getGlobalState().getFBFactory().getBitmap(
-						fbUser.getPicture());
+						fbUser.getPicture(), mPictureSize, mPictureSize,
+						PICTURE_ROUND_RADIUS);
 				Bitmap bitmap = fbBitmap.getBitmap();
 				if (bitmap != null) {
-					profilePic.setBitmap(BitmapUtils.roundBitmap(bitmap,
-							PICTURE_ROUND_RADIUS));
+					profilePic.setBitmap(bitmap);
 				} else {
 					profilePic.setBitmap(mDefaultPicture);
-					FromPictureRequest request = new FromPictureRequest(this,
-							profilePic, fbUser);
-					getGlobalState().getRequestQueue().addRequest(request);
+					addPictureRequest(new FromPictureRequest(this, profilePic,
+							fbUser));
 				}
 			}
 
@@ -236,31 +368,103 @@ public class FeedActivity extends BaseActivity {
 		}
 
 		contentView.setVisibility(View.VISIBLE);
+		// Prioritize pictures once post views have been laid out.
+		contentView.post(new Runnable() {
+			@Override
+			public void run() {
+				updateVisiblePosts();
+			}
+		});
+
+		if (!mAuthorPictureRequests.isEmpty()) {
+			AuthorsRequest request = new AuthorsRequest(this);
+			request.setPriority(Request.PRIORITY_HIGH);
+			getGlobalState().getRequestQueue().addRequest(request);
+		}
+	}
+
+	/**
+	 * Request for loading authors of shown posts with one request, instead of
+	 * having FromPictureRequests load them one by one. Pending
+	 * FromPictureRequests are queued once it's done. If loading fails, they
+	 * load their users themselves.
+	 */
+	private final class AuthorsRequest extends RequestUI {
+
+		private Vector<String> mFromIds;
+
+		public AuthorsRequest(Activity activity) {
+			super(activity);
+			mFromIds = new Vector<String>();
+			for (FromPictureRequest request : mAuthorPictureRequests) {
+				mFromIds.add(request.mFBUser.getId());
+			}
+		}
+
+		@Override
+		public void execute() throws Exception {
+			getGlobalState().getFBFactory().getUserLoader().load(mFromIds,
+					FBUser.Level.DEFAULT);
+		}
+
+		@Override
+		public void executeUI(Exception ex) {
+			for (FromPictureRequest request : mAuthorPictureRequests) {
+				addPictureRequest(request);
+			}
+			mAuthorPictureRequests.clear();
+		}
 	}
 
 	/**
-	 * Request for handling FBFeed loading.
+	 * Request for handling FBFeed loading. Cached request loads feed from
+	 * response cache and triggers network request once it's done. Refresh
+	 * request revalidates feed even if its cached response is still fresh.
 	 */
 	private final class FBFeedRequest extends RequestUI {
 
 		private FBFeed mFBFeed;
-
-		public FBFeedRequest(Activity activity, FBFeed fbFeed) {
-			super(activity, activity);
+		// True for loading from cache only.
+		private boolean mCached;
+		// True for explicit refresh.
+		private boolean mRefresh;
+		// True if feed was updated.
+		private boolean mUpdated;
+
+		public FBFeedRequest(Activity activity, FBFeed fbFeed,
+				boolean cached, boolean refresh) {
+			super(activity);
 			mFBFeed = fbFeed;
+			mCached = cached;
+			mRefresh = refresh;
 		}
 
 		@Override
 		public void execute() throws Exception {
-			mFBFeed.load();
+			if (mCached) {
+				mUpdated = mFBFeed.loadCached();
+			} else {
+				mUpdated = mRefresh ? mFBFeed.refresh() : mFBFeed.load();
+			}
 		}
 
 		@Override
 		public void executeUI(Exception ex) {
+			if (mCached) {
+				// Errors are left for network request to report.
+				if (mUpdated) {
+					updateFeedView(mFBFeed);
+					hideProgressDialog();
+				}
+				FBFeedRequest request = new FBFeedRequest(FeedActivity.this,
+						mFBFeed, false, false);
+				getGlobalState().getRequestQueue().addRequest(request);
+				return;
+			}
 			if (ex != null) {
 				// We don't want to see this happening but just in case.
 				showAlertDialog(ex.getLocalizedMessage());
-			} else {
+			} else if (mUpdated) {
 				updateFeedView(mFBFeed);
 			}
 			hideProgressDialog();
@@ -271,7 +475,8 @@ public class FeedActivity extends BaseActivity {
 	/**
 	 * Private class for handling sender/from picture requests.
 	 */
-	private final class FromPictureRequest extends RequestUI {
+	private final class FromPictureRequest extends RequestUI implements
+			FBBitmap.Observer {
 
 		private BitmapSwitcher mProfilePic;
 		private FBUser mFBUser;
@@ -279,53 +484,68 @@ public class FeedActivity extends BaseActivity {
 
 		public FromPictureRequest(Activity activity, BitmapSwitcher profilePic,
 				FBUser fbUser) {
-			super(activity, activity);
+			super(activity);
 			mProfilePic = profilePic;
 			mFBUser = fbUser;
 		}
 
 		@Override
 		public void execute() throws Exception {
-			mFBUser.load(FBUser.Level.DEFAULT);
+			// Same user might have been loaded by an earlier request.
+			if (mFBUser.getLevel() == FBUser.Level.UNINITIALIZED) {
+				mFBUser.load(FBUser.Level.DEFAULT);
+			}
 			mFBBitmap = getGlobalState().getFBFactory().getBitmap(
-					mFBUser.getPicture());
-			mFBBitmap.load();
+					mFBUser.getPicture(), mPictureSize, mPictureSize,
+					PICTURE_ROUND_RADIUS);
+			mFBBitmap.load(this);
 		}
 
 		@Override
 		public void executeUI(Exception ex) {
-			if (ex == null) {
-				Bitmap rounded = BitmapUtils.roundBitmap(mFBBitmap.getBitmap(),
-						PICTURE_ROUND_RADIUS);
-				mProfilePic.setBitmap(rounded);
+			Bitmap bitmap = ex == null ? mFBBitmap.getBitmap() : null;
+			if (bitmap != null) {
+				mProfilePic.setBitmap(bitmap);
+			}
+			// Coalesced load delivers its picture later.
+			if ((ex != null || bitmap != null)
+					&& mPictureRequests.get(mProfilePic) == this) {
+				mPictureRequests.remove(mProfilePic);
 			}
 		}
+
+		@Override
+		public void onLoaded(FBBitmap fbBitmap, Exception ex) {
+			postUI(ex);
+		}
 	}
 
 	/**
 	 * Private class for handling feed post picture requests.
 	 */
-	private final class PostPictureRequest extends RequestUI {
+	private final class PostPictureRequest extends RequestUI implements
+			FBBitmap.Observer {
 
 		private ImageView mImageView;
 		private FBBitmap mFBBitmap;
 
 		public PostPictureRequest(Activity activity, ImageView imageView,
 				FBBitmap fbBitmap) {
-			super(activity, activity);
+			super(activity);
 			mImageView = imageView;
 			mFBBitmap = fbBitmap;
 		}
 
 		@Override
 		public void execute() throws Exception {
-			mFBBitmap.load();
+			mFBBitmap.load(this);
 		}
 
 		@Override
 		public void executeUI(Exception ex) {
-			if (ex == null) {
-				mImageView.setImageBitmap(mFBBitmap.getBitmap());
+			Bitmap bitmap = mFBBitmap.getBitmap();
+			if (ex == null && bitmap != null) {
+				mImageView.setImageBitmap(bitmap);
 				// TODO: Image size is (0, 0) and animation never takes place.
 				Rect r = new Rect();
 				if (mImageView.getLocalVisibleRect(r)) {
@@ -335,6 +555,22 @@ public class FeedActivity extends BaseActivity {
 				}
 			}
 		}
+
+		@Override
+		public void onLoaded(FBBitmap fbBitmap, Exception ex) {
+			postUI(ex);
+		}
+	}
+
+	/**
+	 * Scroll observer for updating visible posts.
+	 */
+	private final class ScrollObserver implements
+			ObservableScrollView.Observer {
+		@Override
+		public void onScrollChanged(ObservableScrollView view) {
+			updateVisiblePosts();
+		}
 	}
 
 	/**
@@ -18,9 +18,9 @@ import android.widget.LinearLayout;
 import fi.harism.facebook.dao.FBBitmap;
 import fi.harism.facebook.dao.FBFriendList;
 import fi.harism.facebook.dao.FBUser;
+import fi.harism.facebook.request.Request;
 import fi.harism.facebook.request.RequestQueue;
 import fi.harism.facebook.request.RequestUI;
-import fi.harism.facebook.util.BitmapUtils;
 import fi.harism.facebook.view.UserView;
 
 /**
@@ -42,6 +42,8 @@ public class FriendsActivity extends BaseActivity {
 	private FriendViewClickObserver mFriendViewClickObserver;
 	// Radius value for rounding profile images.
 	private static final int PICTURE_ROUND_RADIUS = 7;
+	// Size of profile pictures in pixels.
+	private int mPictureSize;
 
 	@Override
 	public void onCreate(Bundle savedInstanceState) {
@@ -55,10 +57,12 @@ public class FriendsActivity extends BaseActivity {
 		searchEditor.addTextChangedListener(searchObserver);
 
 		// Create default picture shared among friend items.
-		mDefaultPicture = getGlobalState().getDefaultPicture();
-		mDefaultPicture = BitmapUtils.roundBitmap(mDefaultPicture,
+		mDefaultPicture = getGlobalState().getDefaultPicture(
 				PICTURE_ROUND_RADIUS);
 
+		mPictureSize = getResources().getDimensionPixelSize(
+				R.dimen.view_picture_size);
+
 		mRequestQueue = getGlobalState().getRequestQueue();
 		mFriendViewClickObserver = new FriendViewClickObserver();
 
@@ -68,10 +72,12 @@ public class FriendsActivity extends BaseActivity {
 		if (fbFriendList.getFriends().size() > 0) {
 			updateFriendList(fbFriendList);
 		} else {
-			// Show progress dialog.
+			// Show progress dialog and cached friend list, it's revalidated
+			// afterwards.
 			showProgressDialog();
 			FBFriendListRequest request = new FBFriendListRequest(this,
-					fbFriendList);
+					fbFriendList, true);
+			request.setPriority(Request.PRIORITY_HIGH);
 			mRequestQueue.addRequest(request);
 		}
 	}
@@ -163,11 +169,11 @@ public class FriendsActivity extends BaseActivity {
 			friendsView.addView(friendView);
 
 			FBBitmap picture = getGlobalState().getFBFactory().getBitmap(
-					pictureUrl);
+					pictureUrl, mPictureSize, mPictureSize,
+					PICTURE_ROUND_RADIUS);
 			Bitmap bitmap = picture.getBitmap();
 			if (bitmap != null) {
-				friendView.setPicture(BitmapUtils.roundBitmap(bitmap,
-						PICTURE_ROUND_RADIUS));
+				friendView.setPicture(bitmap);
 			} else {
 				friendView.setPicture(mDefaultPicture);
 				FBBitmapRequest request = new FBBitmapRequest(this, friendView,
@@ -182,55 +188,80 @@ public class FriendsActivity extends BaseActivity {
 	/**
 	 * Request for handling profile picture loading.
 	 */
-	private final class FBBitmapRequest extends RequestUI {
+	private final class FBBitmapRequest extends RequestUI implements
+			FBBitmap.Observer {
 
 		private UserView mFriendView;
 		private FBBitmap mFBBitmap;
-		private Bitmap mBitmap;
 
 		public FBBitmapRequest(Activity activity, UserView friendView,
 				FBBitmap fbBitmap) {
-			super(activity, activity);
+			super(activity);
 			mFriendView = friendView;
 			mFBBitmap = fbBitmap;
 		}
 
 		@Override
 		public void execute() throws Exception {
-			mFBBitmap.load();
-			mBitmap = BitmapUtils.roundBitmap(mFBBitmap.getBitmap(),
-					PICTURE_ROUND_RADIUS);
+			mFBBitmap.load(this);
 		}
 
 		@Override
 		public void executeUI(Exception ex) {
-			if (ex == null) {
-				mFriendView.setPicture(mBitmap);
+			Bitmap bitmap = mFBBitmap.getBitmap();
+			if (ex == null && bitmap != null) {
+				mFriendView.setPicture(bitmap);
 			}
 		}
+
+		@Override
+		public void onLoaded(FBBitmap fbBitmap, Exception ex) {
+			postUI(ex);
+		}
 	}
 
 	/**
-	 * Request for handling "me/friends" loading.
+	 * Request for handling "me/friends" loading. Cached request loads friend
+	 * list from response cache and triggers network request once it's done.
 	 */
 	private final class FBFriendListRequest extends RequestUI {
 
 		private FBFriendList mFBFriendList;
-
-		public FBFriendListRequest(Activity activity, FBFriendList fbFriendList) {
-			super(activity, activity);
+		// True for loading from cache only.
+		private boolean mCached;
+		// True if friend list was updated.
+		private boolean mUpdated;
+
+		public FBFriendListRequest(Activity activity,
+				FBFriendList fbFriendList, boolean cached) {
+			super(activity);
 			mFBFriendList = fbFriendList;
+			mCached = cached;
 		}
 
 		@Override
 		public void execute() throws Exception {
-			mFBFriendList.load();
+			mUpdated = mCached ? mFBFriendList.loadCached() : mFBFriendList
+					.load();
 		}
 
 		@Override
 		public void executeUI(Exception ex) {
+			if (mCached) {
+				// Errors are left for network request to report.
+				if (mUpdated) {
+					updateFriendList(mFBFriendList);
+					hideProgressDialog();
+				}
+				FBFriendListRequest request = new FBFriendListRequest(
+						FriendsActivity.this, mFBFriendList, false);
+				mRequestQueue.addRequest(request);
+				return;
+			}
 			if (ex == null) {
-				updateFriendList(mFBFriendList);
+				if (mUpdated) {
+					updateFriendList(mFBFriendList);
+				}
 			} else {
 				showAlertDialog(ex.toString());				
 			}
@@ -253,6 +284,11 @@ public class FriendsActivity extends BaseActivity {
 				UserView friendView = (UserView) friendList.getChildAt(i);
 				toggleFriendViewVisibility(friendView, searchText);
 			}
+			// Load pictures for visible friends first.
+			mRequestQueue.setPriority(new PictureRequestFilter(true),
+					Request.PRIORITY_NORMAL);
+			mRequestQueue.setPriority(new PictureRequestFilter(false),
+					Request.PRIORITY_LOW);
 		}
 
 		@Override
@@ -268,6 +304,27 @@ public class FriendsActivity extends BaseActivity {
 		}
 	}
 
+	/**
+	 * Filter for choosing picture requests for visible or hidden friend views.
+	 */
+	private final class PictureRequestFilter implements RequestQueue.Filter {
+
+		private boolean mVisible;
+
+		public PictureRequestFilter(boolean visible) {
+			mVisible = visible;
+		}
+
+		@Override
+		public boolean accept(Request request) {
+			if (request instanceof FBBitmapRequest) {
+				View friendView = ((FBBitmapRequest) request).mFriendView;
+				return (friendView.getVisibility() == View.VISIBLE) == mVisible;
+			}
+			return false;
+		}
+	}
+
 	/**
 	 * Private class for handling FriendView clicking.
 	 */
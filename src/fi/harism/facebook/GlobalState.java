@@ -20,6 +20,17 @@ public interface GlobalState {
 	 */
 	public Bitmap getDefaultPicture();
 
+	/**
+	 * Returns instance of default profile picture with rounded corners.
+	 * Creates one once this method is called for the first time with given
+	 * radius.
+	 * 
+	 * @param roundRadius
+	 *            Radius for rounding corners in pixels.
+	 * @return Rounded default profile picture Bitmap.
+	 */
+	public Bitmap getDefaultPicture(float roundRadius);
+
 	/**
 	 * Returns application wide instance of FBClient. Creates one once this
 	 * method is called for the first time.
@@ -1,11 +1,14 @@
 package fi.harism.facebook;
 
+import java.util.HashMap;
+
 import android.app.Application;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import fi.harism.facebook.dao.FBFactory;
 import fi.harism.facebook.net.FBClient;
 import fi.harism.facebook.request.RequestQueue;
+import fi.harism.facebook.util.BitmapUtils;
 
 /**
  * GlobalStateImpl class extends Application and is used as base class for our
@@ -15,6 +18,8 @@ import fi.harism.facebook.request.RequestQueue;
  */
 public class GlobalStateImpl extends Application implements GlobalState {
 
+	// Number of WorkerThreads for RequestQueue.
+	private static final int REQUEST_WORKER_COUNT = 3;
 	// RequestQueue instance.
 	private RequestQueue mRequestQueue = null;
 	// FBClient instance.
@@ -23,6 +28,8 @@ public class GlobalStateImpl extends Application implements GlobalState {
 	private FBFactory mFBFactory = null;
 	// Default profile picture.
 	private Bitmap mDefaultPicture = null;
+	// Rounded default profile pictures.
+	private HashMap<Float, Bitmap> mRoundedDefaultPictures = new HashMap<Float, Bitmap>();
 
 	@Override
 	public Bitmap getDefaultPicture() {
@@ -33,10 +40,20 @@ public class GlobalStateImpl extends Application implements GlobalState {
 		return mDefaultPicture;
 	}
 
+	@Override
+	public Bitmap getDefaultPicture(float roundRadius) {
+		Bitmap picture = mRoundedDefaultPictures.get(roundRadius);
+		if (picture == null) {
+			picture = BitmapUtils.roundBitmap(getDefaultPicture(), roundRadius);
+			mRoundedDefaultPictures.put(roundRadius, picture);
+		}
+		return picture;
+	}
+
 	@Override
 	public FBClient getFBClient() {
 		if (mFBClient == null) {
-			mFBClient= new FBClient();
+			mFBClient= new FBClient(getCacheDir());
 		}
 		return mFBClient;
 	}
@@ -44,7 +61,8 @@ public class GlobalStateImpl extends Application implements GlobalState {
 	@Override
 	public FBFactory getFBFactory() {
 		if (mFBFactory == null) {
-			mFBFactory= new FBFactory(getRequestQueue(), getFBClient());
+			mFBFactory= new FBFactory(getRequestQueue(), getFBClient(),
+					getCacheDir());
 		}
 		return mFBFactory;
 	}
@@ -52,7 +70,7 @@ public class GlobalStateImpl extends Application implements GlobalState {
 	@Override
 	public RequestQueue getRequestQueue() {
 		if (mRequestQueue == null) {
-			mRequestQueue = new RequestQueue();
+			mRequestQueue = new RequestQueue(REQUEST_WORKER_COUNT);
 		}
 		return mRequestQueue;
 	}
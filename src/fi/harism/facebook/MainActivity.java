@@ -175,8 +175,10 @@ public class MainActivity extends BaseActivity {
 		userView.setName(fbUserMe.getName());
 		userView.setContent(fbUserMe.getStatus());
 
+		int pictureSize = getResources().getDimensionPixelSize(
+				R.dimen.view_picture_size);
 		FBBitmap fbBitmapMe = getGlobalState().getFBFactory().getBitmap(
-				fbUserMe.getPicture());
+				fbUserMe.getPicture(), pictureSize, pictureSize);
 		if (fbBitmapMe.getBitmap() != null) {
 			updateProfilePicture(fbBitmapMe);
 		} else {
@@ -197,26 +199,32 @@ public class MainActivity extends BaseActivity {
 	/**
 	 * Class for handling profile picture request.
 	 */
-	private final class FBBitmapRequest extends RequestUI {
+	private final class FBBitmapRequest extends RequestUI implements
+			FBBitmap.Observer {
 
 		private FBBitmap fbBitmap;
 
 		public FBBitmapRequest(Activity activity, FBBitmap fbBitmap) {
-			super(activity, activity);
+			super(activity);
 			this.fbBitmap = fbBitmap;
 		}
 
 		@Override
 		public void execute() throws Exception {
-			fbBitmap.load();
+			fbBitmap.load(this);
 		}
 
 		@Override
 		public void executeUI(Exception ex) {
-			if (ex == null) {
+			if (ex == null && fbBitmap.getBitmap() != null) {
 				updateProfilePicture(fbBitmap);
 			}
 		}
+
+		@Override
+		public void onLoaded(FBBitmap fbBitmap, Exception ex) {
+			postUI(ex);
+		}
 	}
 
 	/**
@@ -227,7 +235,7 @@ public class MainActivity extends BaseActivity {
 		private FBUser mFBUser;
 
 		public FBUserRequest(Activity activity, FBUser fbUser) {
-			super(activity, activity);
+			super(activity);
 			mFBUser = fbUser;
 		}
 
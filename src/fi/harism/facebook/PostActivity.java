@@ -94,7 +94,7 @@ public class PostActivity extends BaseActivity {
 		private String mMessage;
 
 		public SendRequest(Activity activity, EditText editText) {
-			super(activity, activity);
+			super(activity);
 			mEditText = editText;
 			mMessage = mEditText.getText().toString().trim();
 		}
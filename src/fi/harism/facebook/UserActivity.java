@@ -1,7 +1,10 @@
 package fi.harism.facebook;
 
+import java.util.Collections;
+
 import fi.harism.facebook.dao.FBBitmap;
 import fi.harism.facebook.dao.FBUser;
+import fi.harism.facebook.dao.FBUserLoader;
 import fi.harism.facebook.request.RequestUI;
 import fi.harism.facebook.view.BitmapSwitcher;
 import android.app.Activity;
@@ -33,7 +36,8 @@ public class UserActivity extends BaseActivity {
 		setUserInfo(fbUser);
 		if (fbUser.getLevel() != FBUser.Level.FULL) {
 			showProgressDialog();
-			ProfileRequest request = new ProfileRequest(this, fbUser);
+			ProfileRequest request = new ProfileRequest(this, fbUser,
+					getGlobalState().getFBFactory().getUserLoader());
 			getGlobalState().getRequestQueue().addRequest(request);
 		}
 
@@ -131,43 +135,55 @@ public class UserActivity extends BaseActivity {
 		return v;
 	}
 
-	private class PictureRequest extends RequestUI {
+	private class PictureRequest extends RequestUI implements
+			FBBitmap.Observer {
 
 		private BitmapSwitcher mPicView;
 		private FBBitmap mFBBitmap;
 
 		public PictureRequest(Activity activity, BitmapSwitcher picView,
 				FBBitmap fbBitmap) {
-			super(activity, activity);
+			super(activity);
 			mPicView = picView;
 			mFBBitmap = fbBitmap;
 		}
 
 		@Override
 		public void execute() throws Exception {
-			mFBBitmap.load();
+			mFBBitmap.load(this);
 		}
 
 		@Override
 		public void executeUI(Exception ex) {
-			if (ex == null) {
-				mPicView.setBitmap(mFBBitmap.getBitmap());
+			Bitmap bitmap = mFBBitmap.getBitmap();
+			if (ex == null && bitmap != null) {
+				mPicView.setBitmap(bitmap);
 			}
 		}
+
+		@Override
+		public void onLoaded(FBBitmap fbBitmap, Exception ex) {
+			postUI(ex);
+		}
 	}
 
 	private class ProfileRequest extends RequestUI {
 
 		private FBUser mFBUser;
+		private FBUserLoader mFBUserLoader;
 
-		public ProfileRequest(Activity activity, FBUser fbUser) {
-			super(activity, activity);
+		public ProfileRequest(Activity activity, FBUser fbUser,
+				FBUserLoader fbUserLoader) {
+			super(activity);
 			mFBUser = fbUser;
+			mFBUserLoader = fbUserLoader;
 		}
 
 		@Override
 		public void execute() throws Exception {
-			mFBUser.load(FBUser.Level.FULL);
+			// Loader handles users, pages and "me" alike.
+			mFBUserLoader.load(Collections.singleton(mFBUser.getId()),
+					FBUser.Level.FULL);
 		}
 
 		@Override
@@ -1,14 +1,18 @@
 package fi.harism.facebook.dao;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
-import java.net.URL;
+import java.util.Vector;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import fi.harism.facebook.net.HttpTransport;
+import fi.harism.facebook.util.BitmapCache;
+import fi.harism.facebook.util.BitmapUtils;
+import fi.harism.facebook.util.ByteArrayPool;
 import fi.harism.facebook.util.DataCache;
+import fi.harism.facebook.util.DiskCache;
 
 /**
  * Class for handling image loading and caching.
@@ -17,38 +21,86 @@ import fi.harism.facebook.util.DataCache;
  */
 public class FBBitmap {
 
+	// Initial read buffer size if image size is not known beforehand.
+	private static final int BUFFER_SIZE = 8192;
+	// Read buffers shared among all FBBitmaps.
+	private static final ByteArrayPool sBufferPool = new ByteArrayPool(65536);
+
+	// Decoded Bitmap storage.
+	private BitmapCache mBitmapCache;
 	// Internal data storage.
 	private DataCache mImageCache;
+	// Persistent data storage.
+	private DiskCache mDiskCache;
+	// Transport for loading image data.
+	private HttpTransport mHttpTransport;
+	// Loads in progress, shared with other FBBitmaps.
+	private FBBitmapLoads mLoads;
 	// Url for this image.
 	private String mUrl;
+	// Requested size for decoded Bitmap, 0 for source size.
+	private int mWidth;
+	private int mHeight;
+	// Radius for rounding decoded Bitmap corners, 0 for no rounding.
+	private float mRoundRadius;
+	// Key for decoded Bitmap in BitmapCache.
+	private String mBitmapKey;
 	// Image data.
 	private byte[] mBitmapData;
+	// Observer for load coalesced with another one.
+	private Observer mObserver;
 
 	/**
 	 * Default constructor.
 	 * 
+	 * @param bitmapCache
+	 *            BitmapCache instance.
 	 * @param imageCache
 	 *            DataCache instance.
+	 * @param diskCache
+	 *            DiskCache instance.
+	 * @param httpTransport
+	 *            HttpTransport instance.
+	 * @param loads
+	 *            FBBitmapLoads instance.
 	 * @param url
 	 *            Url for image.
+	 * @param width
+	 *            Requested width for decoded Bitmap, 0 for source width.
+	 * @param height
+	 *            Requested height for decoded Bitmap, 0 for source height.
+	 * @param roundRadius
+	 *            Radius for rounding decoded Bitmap corners, 0 for none.
 	 */
-	FBBitmap(DataCache imageCache, String url) {
+	FBBitmap(BitmapCache bitmapCache, DataCache imageCache,
+			DiskCache diskCache, HttpTransport httpTransport,
+			FBBitmapLoads loads, String url, int width, int height,
+			float roundRadius) {
+		mBitmapCache = bitmapCache;
 		mImageCache = imageCache;
+		mDiskCache = diskCache;
+		mHttpTransport = httpTransport;
+		mLoads = loads;
 		mUrl = url;
+		mWidth = width;
+		mHeight = height;
+		mRoundRadius = roundRadius;
+		mBitmapKey = url + "#" + width + "x" + height + "#" + roundRadius;
 		// Set bitmapData from imageCache, will be null if not found.
 		mBitmapData = imageCache.getData(url);
 	}
 
 	/**
-	 * Returns Bitmap object if image has been loaded, null otherwise.
+	 * Returns Bitmap object if image has been loaded, null otherwise. Image
+	 * data is decoded only if there is no decoded Bitmap in BitmapCache
+	 * already.
 	 */
 	public Bitmap getBitmap() {
-		if (mBitmapData != null) {
-			return BitmapFactory.decodeByteArray(mBitmapData, 0,
-					mBitmapData.length);
-		} else {
-			return null;
+		Bitmap bitmap = mBitmapCache.getBitmap(mBitmapKey);
+		if (bitmap == null && mBitmapData != null) {
+			bitmap = decode();
 		}
+		return bitmap;
 	}
 
 	/**
@@ -59,31 +111,195 @@ public class FBBitmap {
 	}
 
 	/**
-	 * Loads image from given url. If there is a image loaded already this
-	 * method will reload image anyway. Returns loaded Bitmap and stores it for
-	 * further getBitmap() calls.
+	 * Loads image from memory, from disk cache, or from given url if it hasn't
+	 * been stored on disk. Returns loaded Bitmap and stores it for further
+	 * getBitmap() calls.
 	 * 
-	 * @return Bitmap loaded.
+	 * If another thread is loading same url already, this method returns null
+	 * at once without loading image again. Given Observer is called instead
+	 * once that load has finished, from thread which loaded image, and it
+	 * receives same result or Exception. Observer might be called before this
+	 * method returns.
+	 * 
+	 * @param observer
+	 *            Observer for coalesced load.
+	 * @return Bitmap loaded, or null if load was coalesced with another one.
 	 * @throws IOException
 	 * @throws MalformedURLException
 	 */
-	public Bitmap load() throws IOException, MalformedURLException {
-		// Open InputStream for given url.
-		URL u = new URL(mUrl);
-		InputStream is = u.openStream();
-		ByteArrayOutputStream imageBuffer = new ByteArrayOutputStream();
-
-		// Read actual data from InputStream.
-		int readLength;
-		byte buffer[] = new byte[1024];
-		while ((readLength = is.read(buffer)) != -1) {
-			imageBuffer.write(buffer, 0, readLength);
+	public Bitmap load(Observer observer) throws IOException,
+			MalformedURLException {
+		// Image might have been loaded already.
+		mBitmapData = mImageCache.getData(mUrl);
+		if (mBitmapData != null) {
+			Bitmap bitmap = mBitmapCache.getBitmap(mBitmapKey);
+			return bitmap != null ? bitmap : decode();
+		}
+
+		mObserver = observer;
+		if (!mLoads.start(this)) {
+			return null;
+		}
+
+		Exception error = null;
+		try {
+			loadData();
+			return decode();
+		} catch (IOException ex) {
+			error = ex;
+			throw ex;
+		} catch (RuntimeException ex) {
+			error = ex;
+			throw ex;
+		} finally {
+			Vector<FBBitmap> waiting = mLoads.finish(mUrl);
+			for (FBBitmap fbBitmap : waiting) {
+				fbBitmap.onLoaded(mBitmapData, error);
+			}
+		}
+	}
+
+	/**
+	 * Loads image data from disk cache, or from url if it hasn't been stored
+	 * on disk, and stores it into memory cache.
+	 */
+	private void loadData() throws IOException, MalformedURLException {
+		// Try to find image from disk first.
+		mBitmapData = mDiskCache.getData(mUrl);
+		if (mBitmapData != null) {
+			mImageCache.setData(mUrl, mBitmapData);
+			return;
+		}
+
+		// Open connection for given url. Connection is kept alive for
+		// following images once response has been closed, and disconnected
+		// if calling Request is cancelled.
+		HttpTransport.Response response = mHttpTransport.get(mUrl);
+		try {
+			if (response.getStatus() >= 400) {
+				throw new IOException("HTTP error " + response.getStatus());
+			}
+			InputStream is = response.getInputStream();
+			// If server told us image size we can read it in place.
+			int contentLength = response.getContentLength();
+			if (contentLength > 0) {
+				mBitmapData = new byte[contentLength];
+				int offset = 0;
+				while (offset < contentLength) {
+					int readLength = is.read(mBitmapData, offset,
+							contentLength - offset);
+					if (readLength == -1) {
+						throw new IOException("Unexpected end of stream.");
+					}
+					offset += readLength;
+				}
+			} else {
+				mBitmapData = readPooled(is);
+			}
+		} finally {
+			response.close();
 		}
 
-		mBitmapData = imageBuffer.toByteArray();
+		// Same byte array is shared by caches and decoder.
 		mImageCache.setData(mUrl, mBitmapData);
+		mDiskCache.setData(mUrl, mBitmapData);
+	}
 
-		return BitmapFactory.decodeByteArray(mBitmapData, 0, mBitmapData.length);
+	/**
+	 * Called once load of same url this FBBitmap was waiting for has
+	 * finished. Image data is decoded here, on loading thread, before Observer
+	 * is called.
+	 */
+	private void onLoaded(byte[] bitmapData, Exception error) {
+		if (error == null && bitmapData == null) {
+			// Loading thread ended with an Error.
+			error = new IOException("Loading image failed.");
+		}
+		if (error == null) {
+			mBitmapData = bitmapData;
+			try {
+				decode();
+			} catch (RuntimeException ex) {
+				error = ex;
+			}
+		}
+		mObserver.onLoaded(this, error);
+	}
+
+	/**
+	 * Decodes image data into a Bitmap and stores it into BitmapCache. If
+	 * requested size is given, image bounds are decoded first and image is
+	 * subsampled with largest power of two which still keeps decoded Bitmap
+	 * at least as large as requested. If round radius is given, rounded Bitmap
+	 * is stored instead of decoded one.
+	 */
+	private Bitmap decode() {
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		if (mWidth > 0 || mHeight > 0) {
+			options.inJustDecodeBounds = true;
+			BitmapFactory.decodeByteArray(mBitmapData, 0, mBitmapData.length,
+					options);
+			int sampleSize = 1;
+			while (options.outWidth / (sampleSize * 2) >= mWidth
+					&& options.outHeight / (sampleSize * 2) >= mHeight) {
+				sampleSize *= 2;
+			}
+			options.inJustDecodeBounds = false;
+			options.inSampleSize = sampleSize;
+		}
+		Bitmap bitmap = BitmapFactory.decodeByteArray(mBitmapData, 0,
+				mBitmapData.length, options);
+		if (bitmap != null && mRoundRadius > 0) {
+			bitmap = BitmapUtils.roundBitmap(bitmap, mRoundRadius);
+		}
+		if (bitmap != null) {
+			mBitmapCache.setBitmap(mBitmapKey, bitmap);
+		}
+		return bitmap;
+	}
+
+	/**
+	 * Reads given InputStream into pooled buffers which are grown as needed.
+	 * Only the final byte array returned is allocated for this image.
+	 * Package-private for FBBitmapBenchmark.
+	 */
+	static byte[] readPooled(InputStream is) throws IOException {
+		byte buffer[] = sBufferPool.getBuffer(BUFFER_SIZE);
+		try {
+			int length = 0;
+			int readLength;
+			while ((readLength = is.read(buffer, length, buffer.length
+					- length)) != -1) {
+				length += readLength;
+				if (length == buffer.length) {
+					byte newBuffer[] = sBufferPool.getBuffer(buffer.length * 2);
+					System.arraycopy(buffer, 0, newBuffer, 0, length);
+					sBufferPool.returnBuffer(buffer);
+					buffer = newBuffer;
+				}
+			}
+			byte data[] = new byte[length];
+			System.arraycopy(buffer, 0, data, 0, length);
+			return data;
+		} finally {
+			sBufferPool.returnBuffer(buffer);
+		}
+	}
+
+	/**
+	 * Observer for loads coalesced with another load of same url.
+	 */
+	public interface Observer {
+		/**
+		 * Called once load has finished, from thread which loaded image.
+		 * Exception is null if image was loaded, getBitmap() returns it then.
+		 * 
+		 * @param fbBitmap
+		 *            FBBitmap given load() was called for.
+		 * @param ex
+		 *            Exception thrown by load, null on success.
+		 */
+		public void onLoaded(FBBitmap fbBitmap, Exception ex);
 	}
 
 }
@@ -0,0 +1,67 @@
+package fi.harism.facebook.dao;
+
+import java.util.HashMap;
+import java.util.Vector;
+
+/**
+ * Registry of image loads in progress, shared among FBBitmaps created by same
+ * FBFactory. First FBBitmap loading an url loads it, and FBBitmaps loading
+ * same url meanwhile are registered to receive its result instead of loading
+ * image again. Nothing waits for another load to finish.
+ * 
+ * @author harism
+ */
+public final class FBBitmapLoads {
+
+	// FBBitmaps waiting for load of their url, guarded by this.
+	private HashMap<String, Vector<FBBitmap>> mWaitingMap;
+	// Number of loads which were coalesced with another load of same url.
+	private int mCoalescedCount;
+
+	/**
+	 * Default constructor.
+	 */
+	FBBitmapLoads() {
+		mWaitingMap = new HashMap<String, Vector<FBBitmap>>();
+	}
+
+	/**
+	 * Returns number of loads which did not load image themselves but
+	 * received result of another load for same url.
+	 */
+	public synchronized int getCoalescedCount() {
+		return mCoalescedCount;
+	}
+
+	/**
+	 * Ends load of given url and returns FBBitmaps which were waiting for it.
+	 * 
+	 * @param url
+	 *            Url given to start().
+	 * @return FBBitmaps to notify, in order they were registered.
+	 */
+	synchronized Vector<FBBitmap> finish(String url) {
+		return mWaitingMap.remove(url);
+	}
+
+	/**
+	 * Starts load of given FBBitmap. If another load of same url is in
+	 * progress, FBBitmap is registered to be notified once it finishes.
+	 * 
+	 * @param fbBitmap
+	 *            FBBitmap being loaded.
+	 * @return True if caller should load image and call finish() afterwards,
+	 *         false if FBBitmap is registered with another load.
+	 */
+	synchronized boolean start(FBBitmap fbBitmap) {
+		Vector<FBBitmap> waiting = mWaitingMap.get(fbBitmap.getUrl());
+		if (waiting == null) {
+			mWaitingMap.put(fbBitmap.getUrl(), new Vector<FBBitmap>());
+			return true;
+		}
+		waiting.add(fbBitmap);
+		++mCoalescedCount;
+		return false;
+	}
+
+}
@@ -94,11 +94,7 @@ public class FBChat {
 			if (id.charAt(0) == '-') {
 				id = id.substring(1);
 			}
-			FBUser u = mUserMap.get(id);
-			if (u == null) {
-				u = new FBUser(mFBClient, id);
-				mUserMap.put(id, u);
-			}
+			FBUser u = FBUser.getUser(mFBClient, mUserMap, id);
 			FBUser.Presence presence;
 			switch (user.getPresence()) {
 			case AWAY:
@@ -111,7 +107,9 @@ public class FBChat {
 				presence = FBUser.Presence.GONE;
 				break;
 			}
-			u.mPresence = presence;
+			synchronized (u) {
+				u.mPresence = presence;
+			}
 			out.add(u);
 		}
 		return out;
@@ -163,7 +161,10 @@ public class FBChat {
 			if (id.charAt(0) == '-') {
 				id = id.substring(1);
 			}
-			FBUser user = mUserMap.get(id);
+			FBUser user;
+			synchronized (mUserMap) {
+				user = mUserMap.get(id);
+			}
 			if (user != null) {
 				mObserver.onMessage(user, message);
 			}
@@ -189,14 +190,11 @@ public class FBChat {
 				break;
 			}
 
-			FBUser u = mUserMap.get(id);
-			if (u == null) {
-				u = new FBUser(mFBClient, id);
-				mUserMap.put(id, u);
+			FBUser u = FBUser.getUser(mFBClient, mUserMap, id);
+			synchronized (u) {
+				u.mJid = jid;
+				u.mPresence = presence;
 			}
-
-			u.mJid = jid;
-			u.mPresence = presence;
 			mObserver.onPresenceChanged(u);
 		}
 	}
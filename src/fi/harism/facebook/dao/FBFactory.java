@@ -1,12 +1,15 @@
 package fi.harism.facebook.dao;
 
+import java.io.File;
 import java.util.HashMap;
 import java.util.Vector;
 
 import fi.harism.facebook.chat.ChatHandler;
 import fi.harism.facebook.net.FBClient;
 import fi.harism.facebook.request.RequestQueue;
+import fi.harism.facebook.util.BitmapCache;
 import fi.harism.facebook.util.DataCache;
+import fi.harism.facebook.util.DiskCache;
 
 public class FBFactory {
 
@@ -14,24 +17,85 @@ public class FBFactory {
 	private FBClient mFBClient;
 
 	private HashMap<String, FBFeed> mFeedMap;
+	private BitmapCache mBitmapCache;
 	private DataCache mImageCache;
+	private DiskCache mImageDiskCache;
+	private FBBitmapLoads mBitmapLoads;
 	private ChatHandler mChatHandler;
+	// Users by id, shared among request workers and guarded by itself.
 	private HashMap<String, FBUser> mUserMap;
 	private Vector<String> mFriendIdList;
 
-	public FBFactory(RequestQueue requestQueue, FBClient fbClient) {
+	public FBFactory(RequestQueue requestQueue, FBClient fbClient,
+			File cacheDir) {
 		mRequestQueue = requestQueue;
 		mFBClient = fbClient;
 
 		mFeedMap = new HashMap<String, FBFeed>();
+		mBitmapCache = new BitmapCache(2048000);
 		mImageCache = new DataCache(1024000);
+		mImageDiskCache = new DiskCache(new File(cacheDir, "images"), 4096000);
+		mBitmapLoads = new FBBitmapLoads();
 		mChatHandler = new ChatHandler();
 		mUserMap = new HashMap<String, FBUser>();
 		mFriendIdList = new Vector<String>();
 	}
 
 	public FBBitmap getBitmap(String url) {
-		return new FBBitmap(mImageCache, url);
+		return getBitmap(url, 0, 0);
+	}
+
+	/**
+	 * Returns FBBitmap which decodes image subsampled close to given size.
+	 * Decoded Bitmap is never smaller than requested size, unless image itself
+	 * is smaller.
+	 * 
+	 * @param url
+	 *            Url for image.
+	 * @param width
+	 *            Requested width in pixels, 0 for source width.
+	 * @param height
+	 *            Requested height in pixels, 0 for source height.
+	 */
+	public FBBitmap getBitmap(String url, int width, int height) {
+		return getBitmap(url, width, height, 0);
+	}
+
+	/**
+	 * Returns FBBitmap which decodes image subsampled close to given size and
+	 * rounds its corners with given radius. Rounding is done once per decode,
+	 * usually within FBBitmap.load(), and rounded Bitmap is cached.
+	 * 
+	 * @param url
+	 *            Url for image.
+	 * @param width
+	 *            Requested width in pixels, 0 for source width.
+	 * @param height
+	 *            Requested height in pixels, 0 for source height.
+	 * @param roundRadius
+	 *            Radius for rounding corners in pixels, 0 for no rounding.
+	 */
+	public FBBitmap getBitmap(String url, int width, int height,
+			float roundRadius) {
+		return new FBBitmap(mBitmapCache, mImageCache, mImageDiskCache,
+				mFBClient.getHttpTransport(), mBitmapLoads, url, width, height,
+				roundRadius);
+	}
+
+	/**
+	 * Returns BitmapCache shared among FBBitmaps. Cache hit, miss and decode
+	 * counts can be read from it.
+	 */
+	public BitmapCache getBitmapCache() {
+		return mBitmapCache;
+	}
+
+	/**
+	 * Returns FBBitmapLoads shared among FBBitmaps. Number of coalesced image
+	 * loads can be read from it.
+	 */
+	public FBBitmapLoads getBitmapLoads() {
+		return mBitmapLoads;
 	}
 
 	public FBChat getChat(FBChat.Observer observer) {
@@ -52,20 +116,25 @@ public class FBFactory {
 	}
 
 	public FBUser getUser(String id) {
-		FBUser user = mUserMap.get(id);
-		if (user == null) {
-			user = new FBUser(mFBClient, id);
-			mUserMap.put(id, user);
-		}
-		return user;
+		return FBUser.getUser(mFBClient, mUserMap, id);
+	}
+
+	/**
+	 * Returns FBUserLoader for loading several users with one request.
+	 * Loaded users are available via getUser().
+	 */
+	public FBUserLoader getUserLoader() {
+		return new FBUserLoader(mFBClient, mUserMap);
 	}
 
 	public void reset() {
 		mFeedMap.clear();
 		mRequestQueue.removeRequests();
 		mChatHandler.disconnect();
-		mUserMap.clear();
-		mFriendIdList.clear();		
+		synchronized (mUserMap) {
+			mUserMap.clear();
+		}
+		mFriendIdList.clear();
 	}
 
 }
@@ -3,12 +3,12 @@ package fi.harism.facebook.dao;
 import java.io.IOException;
 import java.util.Vector;
 
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import android.os.Bundle;
 import fi.harism.facebook.net.FBClient;
+import fi.harism.facebook.net.JSONStreamReader;
 
 /**
  * Class presenting different feeds. Let it be "me/home", "me/feed" or
@@ -50,23 +50,88 @@ public class FBFeed {
 
 	/**
 	 * Loads certain amount of posts in this feed.<br>
+	 * If feed has been loaded already, it's revalidated and left untouched if
+	 * it has not been modified.
+	 * 
+	 * @return True if posts were updated.
+	 */
+	public boolean load() throws IOException, JSONException {
+		return load(false);
+	}
+
+	/**
+	 * Same as load() but loaded feed is revalidated with server even if its
+	 * cached response is still fresh, for explicit refreshes.
+	 * 
+	 * @return True if posts were updated.
+	 */
+	public boolean refresh() throws IOException, JSONException {
+		return load(true);
+	}
+
+	/**
+	 * Loads feed, revalidating fresh cached response too if revalidate is
+	 * true.
 	 */
-	public void load() throws IOException, JSONException {
+	private boolean load(boolean revalidate) throws IOException,
+			JSONException {
 		Bundle params = new Bundle();
 		params.putString("fields", FBPost.FIELDS);
-		JSONObject resp = mFBClient.request(mFeedPath, params);
-		JSONArray feedItems = resp.getJSONArray("data");
+		PostHandler handler = new PostHandler();
+		if (mFeedPosts.isEmpty()) {
+			mFBClient.requestData(mFeedPath, params, handler);
+		} else if (revalidate) {
+			if (mFBClient.revalidateData(mFeedPath, params, handler) == null) {
+				return false;
+			}
+		} else if (mFBClient.requestDataIfModified(mFeedPath, params,
+				handler) == null) {
+			return false;
+		}
+		update(handler.mPosts);
+		return true;
+	}
 
-		Vector<FBPost> posts = new Vector<FBPost>();
-		for (int i = 0; i < feedItems.length(); ++i) {
-			JSONObject item = feedItems.getJSONObject(i);
-			FBPost post = new FBPost(mFBClient, item.getString("id"));
-			post.update(item);
-			posts.add(post);
+	/**
+	 * Loads posts from cached response without accessing network. Cached
+	 * posts may be outdated and load() should be called afterwards.
+	 * 
+	 * @return True if cached response was found.
+	 */
+	public boolean loadCached() throws IOException, JSONException {
+		Bundle params = new Bundle();
+		params.putString("fields", FBPost.FIELDS);
+		PostHandler handler = new PostHandler();
+		if (mFBClient.requestDataCached(mFeedPath, params, handler) == null) {
+			return false;
 		}
+		update(handler.mPosts);
+		return true;
+	}
 
+	/**
+	 * Replaces posts with given ones.
+	 */
+	private void update(Vector<FBPost> posts) {
 		mFeedPosts.removeAllElements();
 		mFeedPosts.addAll(posts);
 	}
 
+	/**
+	 * Handler creating posts from feed items while response is being read.
+	 * Posts are collected aside, so that feed is left untouched if response
+	 * turns out to be invalid.
+	 */
+	private final class PostHandler implements JSONStreamReader.DataHandler {
+
+		private Vector<FBPost> mPosts = new Vector<FBPost>();
+
+		@Override
+		public void onData(JSONObject item) throws JSONException {
+			FBPost post = new FBPost(mFBClient, item.getString("id"));
+			post.update(item);
+			mPosts.add(post);
+		}
+	}
+
 }
@@ -4,7 +4,6 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.Vector;
 
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.xmlpull.v1.XmlPullParserException;
@@ -12,6 +11,7 @@ import org.xmlpull.v1.XmlPullParserException;
 import android.os.Bundle;
 
 import fi.harism.facebook.net.FBClient;
+import fi.harism.facebook.net.JSONStreamReader;
 
 /**
  * Class for handling friend list.
@@ -43,38 +43,80 @@ public class FBFriendList {
 	 */
 	public Vector<FBUser> getFriends() {
 		Vector<FBUser> friends = new Vector<FBUser>();
-		for (String id : mFriendIds) {
-			friends.add(mUserMap.get(id));
+		synchronized (mFriendIds) {
+			synchronized (mUserMap) {
+				for (String id : mFriendIds) {
+					friends.add(mUserMap.get(id));
+				}
+			}
 		}
 		return friends;
 	}
 
 	/**
-	 * Loads/updates friend list.
+	 * Loads/updates friend list. If friend list has been loaded already, it's
+	 * revalidated and left untouched if it has not been modified.
+	 * 
+	 * @return True if friend list was updated.
 	 */
-	public void load() throws IOException, JSONException, XmlPullParserException {	
+	public boolean load() throws IOException, JSONException, XmlPullParserException {	
 		Bundle params = new Bundle();
 		params.putString("fields", "id, name, picture");
-		JSONObject resp = mFBClient.request("me/friends", params);
-		
-		JSONArray data = resp.getJSONArray("data");
+		FriendHandler handler = new FriendHandler();
+		if (mFriendIds.isEmpty()) {
+			mFBClient.requestData("me/friends", params, handler);
+		} else if (mFBClient.requestDataIfModified("me/friends", params,
+				handler) == null) {
+			return false;
+		}
+		update(handler.mFriends);
+		return true;
+	}
 
-		Vector<FBUser> tempList = new Vector<FBUser>();
-		for (int i = 0; i < data.length(); ++i) {
-			JSONObject userObj = data.getJSONObject(i);
+	/**
+	 * Loads friend list from cached response without accessing network.
+	 * Cached list may be outdated and load() should be called afterwards.
+	 * 
+	 * @return True if cached response was found.
+	 */
+	public boolean loadCached() throws IOException, JSONException {
+		Bundle params = new Bundle();
+		params.putString("fields", "id, name, picture");
+		FriendHandler handler = new FriendHandler();
+		if (mFBClient.requestDataCached("me/friends", params, handler) == null) {
+			return false;
+		}
+		update(handler.mFriends);
+		return true;
+	}
 
-			FBUser user = mUserMap.get(userObj.getString("id"));
-			if (user == null) {
-				user = new FBUser(mFBClient, userObj.getString("id"));
+	/**
+	 * Replaces friend list with given users.
+	 */
+	private void update(Vector<FBUser> friends) {
+		synchronized (mFriendIds) {
+			mFriendIds.clear();
+			for (FBUser friend : friends) {
+				mFriendIds.add(friend.getId());
 			}
-			user.update(userObj, FBUser.Level.DEFAULT);
-			tempList.add(user);
 		}
+	}
 
-		mFriendIds.clear();
-		for (FBUser friend : tempList) {
-			mFriendIds.add(friend.getId());
-			mUserMap.put(friend.getId(), friend);
+	/**
+	 * Handler updating users from "me/friends" items while response is being
+	 * read. Friend list itself is updated only once whole response has been
+	 * read.
+	 */
+	private final class FriendHandler implements JSONStreamReader.DataHandler {
+
+		private Vector<FBUser> mFriends = new Vector<FBUser>();
+
+		@Override
+		public void onData(JSONObject userObj) throws JSONException {
+			FBUser user = FBUser.getUser(mFBClient, mUserMap,
+					userObj.getString("id"));
+			user.update(userObj, FBUser.Level.DEFAULT);
+			mFriends.add(user);
 		}
 	}
 
@@ -1,6 +1,7 @@
 package fi.harism.facebook.dao;
 
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.Vector;
 
 import org.json.JSONArray;
@@ -24,6 +25,10 @@ import fi.harism.facebook.net.FBClient;
  * null checks.</li>
  * </ul>
  * 
+ * Users are loaded and updated by several request workers concurrently.
+ * Updates are done holding FBUser's lock, and FBUser instances are looked up
+ * and created with getUser(), which guards user map with itself.
+ * 
  * @author harism
  */
 public class FBUser {
@@ -84,7 +89,32 @@ public class FBUser {
 	}
 	
 	/**
-	 * Returns list of user's affiliations/networks.
+	 * Returns FBUser with given id from given user map, creates and adds one
+	 * if needed. Map is shared among request workers and UI thread and it's
+	 * guarded by itself.
+	 * 
+	 * @param fbClient
+	 *            FBClient instance for new FBUser.
+	 * @param userMap
+	 *            Map of users by id.
+	 * @param id
+	 *            User id.
+	 */
+	static FBUser getUser(FBClient fbClient, HashMap<String, FBUser> userMap,
+			String id) {
+		synchronized (userMap) {
+			FBUser user = userMap.get(id);
+			if (user == null) {
+				user = new FBUser(fbClient, id);
+				userMap.put(id, user);
+			}
+			return user;
+		}
+	}
+
+	/**
+	 * Returns list of user's affiliations/networks. Returned Vector is
+	 * replaced, not modified, once affiliations change.
 	 */
 	public Vector<String> getAffiliations() {
 		return mAffiliations;
@@ -201,7 +231,16 @@ public class FBUser {
 		if (level == Level.DEFAULT) {
 			Bundle params = new Bundle();
 			params.putString("fields", FIELDS_DEFAULT);
-			JSONObject response = mFBClient.request(mId, params);
+			// Loaded user is only revalidated.
+			JSONObject response;
+			if (mLevel == Level.UNINITIALIZED) {
+				response = mFBClient.request(mId, params);
+			} else {
+				response = mFBClient.requestIfModified(mId, params);
+				if (response == null) {
+					return;
+				}
+			}
 			update(response, Level.DEFAULT);
 		} else if (level == Level.FULL) {
 			String uid = mId;
@@ -214,86 +253,108 @@ public class FBUser {
 			query.append("FROM user WHERE uid = ");
 			query.append(uid);
 
-			JSONObject resp = mFBClient.requestFQL(query.toString());
-			JSONArray data = resp.getJSONArray("data");
-			if (data.length() == 1) {
-				resp = data.getJSONObject(0);
-			} else {
+			FBUserBinder binder = new FBUserBinder(this);
+			mFBClient.requestFQL(query.toString(), binder);
+			if (binder.getUids().size() != 1) {
 				Bundle params = new Bundle();
 				params.putString("limit", "1");
 				params.putString("fields", FIELDS_PAGE);
-				resp = mFBClient.request(mId, params);
+				JSONObject resp = mFBClient.request(mId, params);
+				update(resp, Level.FULL);
 			}
-			update(resp, Level.FULL);
 		}
 	}
 	
 	/**
-	 * Updates user information from provided JSONObject.
+	 * Updates user information from provided JSONObject. FULL level
+	 * information is either a FQL user row, having "uid", or a Graph API page
+	 * object. FQL rows are read the same way FBUserBinder binds them, e.g.
+	 * hometown and current location are read as their "name" value.
 	 * 
 	 * @param userObj
 	 * @param level
 	 * @throws JSONException
 	 */
-	void update(JSONObject userObj, Level level) throws JSONException {
+	synchronized void update(JSONObject userObj, Level level)
+			throws JSONException {
 		if (level == Level.DEFAULT) {
 			mName = userObj.getString("name");
 			mPicture = userObj.getString("picture");
 			if (mLevel != Level.FULL) {
 				mLevel = Level.DEFAULT;
 			}
-		} else if (level == Level.FULL) {
-			if (userObj.opt("id") != null) {			
-				mName = userObj.getString("name");
-				mPicture = userObj.getString("picture");
+		} else if (level == Level.FULL && userObj.has("uid")) {
+			mName = optText(userObj, "name");
+			mPicture = optText(userObj, "pic_square");
 
-				mStatus = null;
-				JSONObject statusObj = userObj.optJSONObject("statuses");
-				if (statusObj != null) {
-					JSONArray data = statusObj.getJSONArray("data");
-					if (data.length() > 0) {
-						mStatus = data.getJSONObject(0).getString("message");
-					}
-				}
-			
-				mBirthday = userObj.optString("birthday", null);
-				mGender = userObj.optString("gender", null);
-				mWebsite = userObj.optString("website", null);
-				mEmail = userObj.optString("email", null);
-				mPhone = userObj.optString("phone", null);
-				mHometown = userObj.optString("hometown", null);
-				mLocation = userObj.optString("location", null);
-			} else {
-				mName = userObj.getString("name");
-				mPicture = userObj.getString("pic_square");
+			mStatus = null;
+			JSONObject statusObj = userObj.optJSONObject("status");
+			if (statusObj != null) {
+				mStatus = optText(statusObj, "message");
+			}
 
-				JSONObject statusObj = userObj.optJSONObject("status");
-				if (statusObj != null) {
-					mStatus = statusObj.getString("message");
+			Vector<String> affiliations = new Vector<String>();
+			JSONArray affiliationArray = userObj.optJSONArray("affiliations");
+			for (int i = 0; affiliationArray != null
+					&& i < affiliationArray.length(); ++i) {
+				JSONObject affiliation = affiliationArray.optJSONObject(i);
+				if (affiliation != null
+						&& optText(affiliation, "name") != null) {
+					affiliations.add(affiliation.getString("name"));
 				}
-				
-				mAffiliations.clear();
-				JSONArray affiliations = userObj.optJSONArray("affiliations");
-				if (affiliations != null) {
-					for (int j=0; j<affiliations.length(); ++j) {
-						mAffiliations.add(affiliations.getJSONObject(j)
-								.getString("name"));
-					}
+			}
+			mAffiliations = affiliations;
+
+			mBirthday = optText(userObj, "birthday");
+			mGender = optText(userObj, "sex");
+			mWebsite = optText(userObj, "website");
+			mEmail = optText(userObj, "email");
+			mHometown = optName(userObj, "hometown_location");
+			mLocation = optName(userObj, "current_location");
+
+			mLevel = Level.FULL;
+		} else if (level == Level.FULL) {
+			mName = userObj.getString("name");
+			mPicture = userObj.getString("picture");
+
+			mStatus = null;
+			JSONObject statusObj = userObj.optJSONObject("statuses");
+			if (statusObj != null) {
+				JSONArray data = statusObj.getJSONArray("data");
+				if (data.length() > 0) {
+					mStatus = data.getJSONObject(0).getString("message");
 				}
-				
-				mBirthday = userObj.optString("birthday", null);
-				mGender = userObj.optString("sex", null);
-				mWebsite = userObj.optString("website", null);
-				mEmail = userObj.optString("email", null);
-				mHometown = userObj.optString("hometown_location", null);
-				mLocation = userObj.optString("current_location", null);
 			}
+		
+			mBirthday = userObj.optString("birthday", null);
+			mGender = userObj.optString("gender", null);
+			mWebsite = userObj.optString("website", null);
+			mEmail = userObj.optString("email", null);
+			mPhone = userObj.optString("phone", null);
+			mHometown = userObj.optString("hometown", null);
+			mLocation = userObj.optString("location", null);
 			
 			mLevel = Level.FULL;
 		}
 		
 	}
 
+	/**
+	 * Returns "name" of given object within userObj, or null if there is
+	 * none.
+	 */
+	private static String optName(JSONObject userObj, String key) {
+		JSONObject obj = userObj.optJSONObject(key);
+		return obj != null ? optText(obj, "name") : null;
+	}
+
+	/**
+	 * Returns text value with given key, or null for missing and null values.
+	 */
+	private static String optText(JSONObject obj, String key) {
+		return obj.isNull(key) ? null : obj.optString(key);
+	}
+
 	public enum Level {
 		DEFAULT, FULL, UNINITIALIZED
 	}
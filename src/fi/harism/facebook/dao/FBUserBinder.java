@@ -0,0 +1,161 @@
+package fi.harism.facebook.dao;
+
+import java.util.HashMap;
+import java.util.Vector;
+
+import fi.harism.facebook.net.FBClient;
+import fi.harism.facebook.net.FQLParser;
+
+/**
+ * Binder for FBUser.SELECT query results. Row values are stored into FBUser
+ * fields straight from FQLParser, without creating JSON presentation for
+ * them. Every row sets user to FULL level, leaving it in same state
+ * FBUser.update() leaves it for JSON presentation of the row.
+ * 
+ * @author harism
+ */
+class FBUserBinder implements FQLParser.Binder {
+
+	private FBClient mFBClient;
+	private HashMap<String, FBUser> mUserMap;
+	// User all rows are bound to, null for binding rows by uid.
+	private FBUser mTarget;
+	// Uids of rows bound so far.
+	private Vector<String> mUids;
+
+	// Name of element at row level current value is within, null for row.
+	private String mContainer;
+	// Element depth within row.
+	private int mDepth;
+
+	// Values for current row.
+	private String mUid;
+	private String mName;
+	private String mPicture;
+	private String mBirthday;
+	private String mGender;
+	private String mWebsite;
+	private String mEmail;
+	private String mStatus;
+	private String mHometown;
+	private String mLocation;
+	private Vector<String> mAffiliations;
+
+	/**
+	 * Constructor for binding rows into users by their uid. New users are
+	 * added to userMap.
+	 * 
+	 * @param fbClient
+	 * @param userMap
+	 */
+	FBUserBinder(FBClient fbClient, HashMap<String, FBUser> userMap) {
+		mFBClient = fbClient;
+		mUserMap = userMap;
+		mUids = new Vector<String>();
+		mAffiliations = new Vector<String>();
+	}
+
+	/**
+	 * Constructor for binding rows into given user.
+	 * 
+	 * @param target
+	 */
+	FBUserBinder(FBUser target) {
+		mTarget = target;
+		mUids = new Vector<String>();
+		mAffiliations = new Vector<String>();
+	}
+
+	/**
+	 * Returns uids of rows bound so far.
+	 */
+	public Vector<String> getUids() {
+		return mUids;
+	}
+
+	@Override
+	public void startRow() {
+		mContainer = null;
+		mDepth = 0;
+		mUid = mName = mPicture = mBirthday = mGender = null;
+		mWebsite = mEmail = mStatus = mHometown = mLocation = null;
+		mAffiliations.clear();
+	}
+
+	@Override
+	public void startElement(String name) {
+		if (mDepth++ == 0) {
+			mContainer = name;
+		}
+	}
+
+	@Override
+	public void value(String name, String text) {
+		if (mContainer == null) {
+			if (name.equals("uid")) {
+				mUid = text;
+			} else if (name.equals("name")) {
+				mName = text;
+			} else if (name.equals("pic_square")) {
+				mPicture = text;
+			} else if (name.equals("birthday")) {
+				mBirthday = text;
+			} else if (name.equals("sex")) {
+				mGender = text;
+			} else if (name.equals("website")) {
+				mWebsite = text;
+			} else if (name.equals("email")) {
+				mEmail = text;
+			}
+		} else if (name.equals("message")) {
+			if (mContainer.equals("status")) {
+				mStatus = text;
+			}
+		} else if (name.equals("name") && text != null) {
+			if (mContainer.equals("affiliations")) {
+				mAffiliations.add(text);
+			} else if (mContainer.equals("hometown_location")) {
+				mHometown = text;
+			} else if (mContainer.equals("current_location")) {
+				mLocation = text;
+			}
+		}
+	}
+
+	@Override
+	public void endElement(String name) {
+		if (--mDepth == 0) {
+			mContainer = null;
+		}
+	}
+
+	@Override
+	public void endRow() {
+		FBUser user = mTarget;
+		if (user == null) {
+			if (mUid == null) {
+				return;
+			}
+			user = FBUser.getUser(mFBClient, mUserMap, mUid);
+		}
+
+		synchronized (user) {
+			user.mName = mName;
+			user.mPicture = mPicture;
+			user.mStatus = mStatus;
+			// Vector is replaced so that readers are never left iterating a
+			// modified one.
+			user.mAffiliations = new Vector<String>(mAffiliations);
+			user.mBirthday = mBirthday;
+			user.mGender = mGender;
+			user.mWebsite = mWebsite;
+			user.mEmail = mEmail;
+			user.mHometown = mHometown;
+			user.mLocation = mLocation;
+			user.mLevel = FBUser.Level.FULL;
+		}
+
+		mUids.add(mUid);
+	}
+
+}
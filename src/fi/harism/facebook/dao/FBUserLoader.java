@@ -0,0 +1,138 @@
+package fi.harism.facebook.dao;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.xmlpull.v1.XmlPullParserException;
+
+import android.os.Bundle;
+import fi.harism.facebook.net.FBClient;
+
+/**
+ * Class for loading information for several users at once. Instead of one
+ * request per user, users are loaded with as few requests as FBClient allows.
+ * 
+ * @author harism
+ */
+public class FBUserLoader {
+
+	private FBClient mFBClient;
+	private HashMap<String, FBUser> mUserMap;
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param fbClient
+	 * @param userMap
+	 */
+	FBUserLoader(FBClient fbClient, HashMap<String, FBUser> userMap) {
+		mFBClient = fbClient;
+		mUserMap = userMap;
+	}
+
+	/**
+	 * Loads information for users with given ids. Users which have given
+	 * level of information already are skipped. Users not found from response
+	 * are left untouched.
+	 * 
+	 * DEFAULT level is loaded with Graph API requests for several ids at once.
+	 * FULL level is loaded with one FQL query per MAX_IDS_PER_REQUEST users,
+	 * and ids FQL did not return are assumed to be pages and loaded with Graph
+	 * API requests for several ids at once.
+	 * 
+	 * @param ids
+	 *            User ids, duplicates are allowed.
+	 * @param level
+	 *            Level of information to load.
+	 * @throws IOException
+	 * @throws JSONException
+	 * @throws XmlPullParserException
+	 */
+	public void load(Collection<String> ids, FBUser.Level level)
+			throws IOException, JSONException, XmlPullParserException {
+		LinkedHashSet<String> loadIds = new LinkedHashSet<String>();
+		synchronized (mUserMap) {
+			for (String id : ids) {
+				FBUser user = mUserMap.get(id);
+				if (user == null
+						|| user.getLevel() == FBUser.Level.UNINITIALIZED
+						|| (level == FBUser.Level.FULL && user.getLevel() != level)) {
+					loadIds.add(id);
+				}
+			}
+		}
+
+		if (level == FBUser.Level.DEFAULT) {
+			Bundle params = new Bundle();
+			params.putString("fields", FBUser.FIELDS_DEFAULT);
+			updateUsers(mFBClient.requestIds(loadIds, params), loadIds,
+					level);
+		} else if (level == FBUser.Level.FULL) {
+			// FQL returns actual uid for "me()" so it's loaded separately.
+			if (loadIds.remove("me")) {
+				getUser("me").load(level);
+			}
+			loadFQL(loadIds);
+			// Rest of the ids are left for Graph API.
+			Bundle params = new Bundle();
+			params.putString("limit", "1");
+			params.putString("fields", FBUser.FIELDS_PAGE);
+			updateUsers(mFBClient.requestIds(loadIds, params), loadIds,
+					level);
+		}
+	}
+
+	/**
+	 * Returns FBUser with given id, creates one if needed.
+	 */
+	private FBUser getUser(String id) {
+		return FBUser.getUser(mFBClient, mUserMap, id);
+	}
+
+	/**
+	 * Loads FULL level information for given ids using FQL. Ids found are
+	 * removed from given set.
+	 */
+	private void loadFQL(LinkedHashSet<String> ids) throws IOException,
+			JSONException, XmlPullParserException {
+		Iterator<String> iter = ids.iterator();
+		FBUserBinder binder = new FBUserBinder(mFBClient, mUserMap);
+		while (iter.hasNext()) {
+			StringBuilder query = new StringBuilder();
+			query.append("SELECT");
+			query.append(FBUser.SELECT);
+			query.append("FROM user WHERE uid IN (");
+			for (int i = 0; i < FBClient.MAX_IDS_PER_REQUEST
+					&& iter.hasNext(); ++i) {
+				if (i > 0) {
+					query.append(',');
+				}
+				query.append(iter.next());
+			}
+			query.append(')');
+
+			mFBClient.requestFQL(query.toString(), binder);
+		}
+		ids.removeAll(binder.getUids());
+	}
+
+	/**
+	 * Updates users from Graph API response containing an object for every id
+	 * found.
+	 */
+	private void updateUsers(JSONObject resp, Collection<String> ids,
+			FBUser.Level level) throws JSONException {
+		for (String id : ids) {
+			JSONObject userObj = resp.optJSONObject(id);
+			if (userObj != null) {
+				getUser(id).update(userObj, level);
+			}
+		}
+	}
+
+}
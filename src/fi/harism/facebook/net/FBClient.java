@@ -1,11 +1,20 @@
 package fi.harism.facebook.net;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
-import java.net.URL;
 import java.net.URLEncoder;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Vector;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -20,6 +29,8 @@ import com.facebook.android.Facebook;
 import com.facebook.android.FacebookError;
 import com.facebook.android.Util;
 
+import fi.harism.facebook.util.DiskCache;
+
 /**
  * FacebookClient class encapsulates all Facebook Android API functionality.
  * 
@@ -29,17 +40,67 @@ public class FBClient {
 
 	// Constant TOKEN string.
 	public static final String TOKEN = Facebook.TOKEN;
+	// Maximum number of ids Graph API accepts within one request.
+	public static final int MAX_IDS_PER_REQUEST = 50;
 	// Our application id.
 	private static final String FACEBOOK_APP_ID = "190087744355420";
+	// Default base url for Graph API requests.
+	private static final String GRAPH_BASE_URL = "https://graph.facebook.com/";
+	// Default url for FQL queries.
+	private static final String FQL_URL =
+			"https://api.facebook.com/method/fql.query";
+	// Maximum number of idle connections kept per host.
+	private static final int MAX_CONNECTIONS = 4;
+	// Maximum size of Graph API response cache in bytes.
+	private static final long RESPONSE_CACHE_SIZE = 2048000;
+	// Maximum ages of cached responses shown at start up, other responses are
+	// always revalidated.
+	private static final long RESPONSE_MAX_AGE_ME = 60 * 60 * 1000;
+	private static final long RESPONSE_MAX_AGE_FRIENDS = 10 * 60 * 1000;
+	private static final long RESPONSE_MAX_AGE_HOME = 60 * 1000;
 	// Private Facebook instance.
 	private Facebook mFacebook = null;
+	// Shared HTTP transport.
+	private HttpTransport mHttpTransport = null;
+	// Cache for Graph API GET responses by path and parameters.
+	private ResponseCache mResponseCache = null;
+	// Base url for Graph API GET requests.
+	private String mGraphBaseUrl = null;
+	// Url for FQL queries.
+	private String mFQLUrl = null;
 
 	/**
 	 * Default constructor. Before using this class authorize should be called
 	 * successfully.
+	 * 
+	 * @param cacheDir
+	 *            Directory for storing cached responses.
 	 */
-	public FBClient() {
+	public FBClient(File cacheDir) {
+		this(cacheDir, GRAPH_BASE_URL, FQL_URL);
+	}
+
+	/**
+	 * Constructor for executing Graph API GET requests and FQL queries
+	 * against another server, e.g. a local one in tests.
+	 * 
+	 * @param cacheDir
+	 *            Directory for storing cached responses.
+	 * @param graphBaseUrl
+	 *            Base url for Graph API GET requests, ending with '/'.
+	 * @param fqlUrl
+	 *            Url for FQL queries, without query parameters.
+	 */
+	public FBClient(File cacheDir, String graphBaseUrl, String fqlUrl) {
+		mGraphBaseUrl = graphBaseUrl;
+		mFQLUrl = fqlUrl;
 		mFacebook = new Facebook(FACEBOOK_APP_ID);
+		mHttpTransport = new HttpTransport(MAX_CONNECTIONS);
+		mResponseCache = new ResponseCache(new File(cacheDir, "responses"),
+				RESPONSE_CACHE_SIZE, 0);
+		mResponseCache.setMaxAge("me", RESPONSE_MAX_AGE_ME);
+		mResponseCache.setMaxAge("me/friends", RESPONSE_MAX_AGE_FRIENDS);
+		mResponseCache.setMaxAge("me/home", RESPONSE_MAX_AGE_HOME);
 	}
 
 	/**
@@ -85,6 +146,13 @@ public class FBClient {
 				});
 	}
 
+	/**
+	 * Removes all cached responses. Should be called once user changes.
+	 */
+	public void clearCache() {
+		mResponseCache.clear();
+	}
+
 	public void authorizeCallback(int requestCode, int resultCode, Intent data) {
 		mFacebook.authorizeCallback(requestCode, resultCode, data);
 	}
@@ -93,6 +161,13 @@ public class FBClient {
 		return mFacebook.getAccessToken();
 	}
 
+	/**
+	 * Returns HTTP transport shared by all network access.
+	 */
+	public HttpTransport getHttpTransport() {
+		return mHttpTransport;
+	}
+
 	/**
 	 * Checker method for testing if this FacebookClient instance has been
 	 * authorized already.
@@ -117,6 +192,8 @@ public class FBClient {
 			public void run() {
 				try {
 					mFacebook.logout(activity);
+					// Cached responses belong to logged out user.
+					clearCache();
 					activity.runOnUiThread(new Runnable() {
 						@Override
 						public void run() {
@@ -178,7 +255,9 @@ public class FBClient {
 	}
 
 	/**
-	 * Synchronous Facebook Graph API call.
+	 * Synchronous Facebook Graph API call. GET requests are executed using
+	 * shared HttpTransport, other methods using Facebook Android API. Other
+	 * methods mark cached responses for the object modified as stale.
 	 * 
 	 * @param graphPath
 	 *            Facebook Graph API path.
@@ -192,8 +271,278 @@ public class FBClient {
 	 */
 	public JSONObject request(String graphPath, Bundle requestParameters,
 			String method) throws IOException, JSONException {
-		String response = mFacebook.request(graphPath, requestParameters,
-				method);
+		if (method.equals("GET")) {
+			return requestGraph(graphPath, requestParameters, false, false,
+					null);
+		}
+		try {
+			return parseResponse(mFacebook.request(graphPath,
+					requestParameters, method));
+		} finally {
+			// Even failed requests may have modified object.
+			mResponseCache.invalidate(graphPath);
+		}
+	}
+
+	/**
+	 * Conditional Facebook Graph API GET call. Null is returned if cached
+	 * response is still fresh, or if server replies response has not been
+	 * modified since it was cached.
+	 * 
+	 * @param graphPath
+	 *            Facebook Graph API path.
+	 * @param requestParameters
+	 *            Additional request parameters.
+	 * @return JSON object for response, or null if response has not been
+	 *         modified.
+	 * @throws IOException
+	 * @throws JSONException
+	 */
+	public JSONObject requestIfModified(String graphPath,
+			Bundle requestParameters) throws IOException, JSONException {
+		return requestGraph(graphPath, requestParameters, true, false, null);
+	}
+
+	/**
+	 * Streaming Facebook Graph API GET call for responses containing a "data"
+	 * array. Response is parsed while it's being read and "data" items are
+	 * passed to given handler one by one, without building JSONObject tree for
+	 * whole response.
+	 * 
+	 * @param graphPath
+	 *            Facebook Graph API path.
+	 * @param requestParameters
+	 *            Additional request parameters.
+	 * @param handler
+	 *            Handler for "data" items.
+	 * @return JSON object for rest of the response, e.g. "paging".
+	 * @throws IOException
+	 * @throws JSONException
+	 */
+	public JSONObject requestData(String graphPath, Bundle requestParameters,
+			JSONStreamReader.DataHandler handler) throws IOException,
+			JSONException {
+		return requestGraph(graphPath, requestParameters, false, false,
+				handler);
+	}
+
+	/**
+	 * Returns cached response for streaming Graph API GET call regardless of
+	 * its age, without accessing network.
+	 * 
+	 * @return JSON object for rest of the cached response, or null if there
+	 *         is none.
+	 */
+	public JSONObject requestDataCached(String graphPath,
+			Bundle requestParameters, JSONStreamReader.DataHandler handler)
+			throws IOException, JSONException {
+		ResponseCache.Entry entry = mResponseCache.get(getCacheKey(graphPath,
+				requestParameters));
+		if (entry == null) {
+			return null;
+		}
+		try {
+			return parseResponse(entry.body, handler);
+		} finally {
+			entry.body.close();
+		}
+	}
+
+	/**
+	 * Streaming version of requestIfModified().
+	 * 
+	 * @return JSON object for rest of the response, or null if response has
+	 *         not been modified.
+	 */
+	public JSONObject requestDataIfModified(String graphPath,
+			Bundle requestParameters, JSONStreamReader.DataHandler handler)
+			throws IOException, JSONException {
+		return requestGraph(graphPath, requestParameters, true, false,
+				handler);
+	}
+
+	/**
+	 * Streaming version of requestIfModified() for explicit refreshes. Cached
+	 * response is revalidated with server even if it's still fresh.
+	 * 
+	 * @return JSON object for rest of the response, or null if response has
+	 *         not been modified.
+	 */
+	public JSONObject revalidateData(String graphPath,
+			Bundle requestParameters, JSONStreamReader.DataHandler handler)
+			throws IOException, JSONException {
+		return requestGraph(graphPath, requestParameters, true, true,
+				handler);
+	}
+
+	/**
+	 * Returns ResponseCache key for given Graph API path and parameters.
+	 * Access token is left out so that it does not invalidate cache.
+	 */
+	private String getCacheKey(String graphPath, Bundle requestParameters) {
+		if (requestParameters != null && requestParameters.containsKey(TOKEN)) {
+			requestParameters = new Bundle(requestParameters);
+			requestParameters.remove(TOKEN);
+		}
+		return graphPath + "?"
+				+ (requestParameters != null ? Util.encodeUrl(requestParameters)
+						: "");
+	}
+
+	/**
+	 * Executes Graph API GET request using shared HttpTransport. Fresh cached
+	 * responses are used without network access, unless revalidate is true,
+	 * stale ones are revalidated using their validators. Successful responses
+	 * are written into cache while they are being parsed. If handler is
+	 * given, "data" items are streamed to it and rest of the response is
+	 * returned.
+	 * 
+	 * Fresh cached response which fails to parse is removed and fetched
+	 * again. Its "data" items are passed to handler only once it has been
+	 * parsed successfully, so handler never sees items of a corrupt one.
+	 * 
+	 * @return JSON object for response, or null if conditional request was
+	 *         not modified.
+	 */
+	private JSONObject requestGraph(String graphPath,
+			Bundle requestParameters, boolean conditional, boolean revalidate,
+			JSONStreamReader.DataHandler handler) throws IOException,
+			JSONException {
+		String key = getCacheKey(graphPath, requestParameters);
+		ResponseCache.Entry entry = mResponseCache.get(key);
+		try {
+			if (entry != null && !revalidate
+					&& mResponseCache.isFresh(graphPath, entry)) {
+				if (conditional) {
+					return null;
+				}
+				DataCollector collector = handler != null ? new DataCollector()
+						: null;
+				JSONObject out = null;
+				try {
+					out = parseResponse(entry.body, collector);
+				} catch (JSONException ex) {
+					// Corrupt body, handled below.
+				} catch (IOException ex) {
+					// Unreadable body, handled below.
+				}
+				if (out != null) {
+					for (int i = 0; collector != null
+							&& i < collector.items.size(); ++i) {
+						handler.onData(collector.items.get(i));
+					}
+					return out;
+				}
+				// Corrupt entry is removed and response fetched again.
+				entry.body.close();
+				entry = null;
+				mResponseCache.remove(key);
+			}
+
+			Bundle params = requestParameters != null ? new Bundle(
+					requestParameters) : new Bundle();
+			params.putString("format", "json");
+			if (isAuthorized()) {
+				params.putString(TOKEN, getAccessToken());
+			}
+
+			HashMap<String, String> headers = new HashMap<String, String>();
+			if (entry != null && entry.eTag != null) {
+				headers.put("If-None-Match", entry.eTag);
+			}
+			if (entry != null && entry.lastModified != null) {
+				headers.put("If-Modified-Since", entry.lastModified);
+			}
+
+			HttpTransport.Response resp = mHttpTransport.get(mGraphBaseUrl
+					+ graphPath + "?" + Util.encodeUrl(params), headers);
+			try {
+				if (entry != null
+						&& resp.getStatus() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+					// Cached body is stored again with new validation time.
+					entry.time = System.currentTimeMillis();
+					return storeResponse(key, entry, entry.body, !conditional,
+							handler);
+				}
+				if (resp.getStatus() == HttpURLConnection.HTTP_OK) {
+					ResponseCache.Entry newEntry = new ResponseCache.Entry();
+					newEntry.time = System.currentTimeMillis();
+					newEntry.eTag = resp.getHeader("ETag");
+					newEntry.lastModified = resp.getHeader("Last-Modified");
+					return storeResponse(key, newEntry, resp.getInputStream(),
+							true, handler);
+				}
+				// Error responses contain JSON error object, parsing throws.
+				return parseResponse(resp.readString());
+			} finally {
+				resp.close();
+			}
+		} finally {
+			if (entry != null) {
+				entry.body.close();
+			}
+		}
+	}
+
+	/**
+	 * Stores response read from given stream into cache with headers of
+	 * given entry. Response is parsed while it's being written, or if parse
+	 * is false, it's just copied and null is returned. Response is not stored
+	 * if parsing fails.
+	 */
+	private JSONObject storeResponse(String key, ResponseCache.Entry entry,
+			InputStream is, boolean parse, JSONStreamReader.DataHandler handler)
+			throws IOException, JSONException {
+		DiskCache.Editor editor = mResponseCache.put(key, entry);
+		if (editor != null) {
+			is = new TeeInputStream(is, editor);
+		}
+		boolean succeeded = false;
+		try {
+			JSONObject out = null;
+			if (parse) {
+				out = parseResponse(is, handler);
+			}
+			// Copy rest of the response, parser may stop at closing brace.
+			byte buffer[] = new byte[4096];
+			while (editor != null && is.read(buffer) != -1) {
+			}
+			succeeded = true;
+			return out;
+		} finally {
+			if (editor != null && succeeded) {
+				editor.commit();
+			} else if (editor != null) {
+				editor.abort();
+			}
+		}
+	}
+
+	/**
+	 * Parses Graph API response read from given stream, streaming "data"
+	 * items to given handler if it's not null.
+	 */
+	private JSONObject parseResponse(InputStream is,
+			JSONStreamReader.DataHandler handler) throws IOException,
+			JSONException {
+		Reader reader = new BufferedReader(new InputStreamReader(is, "UTF-8"));
+		if (handler == null) {
+			StringBuilder response = new StringBuilder();
+			char buffer[] = new char[4096];
+			int readLength;
+			while ((readLength = reader.read(buffer)) != -1) {
+				response.append(buffer, 0, readLength);
+			}
+			return parseResponse(response.toString());
+		}
+		return new JSONStreamReader(reader).readResponse(handler);
+	}
+
+	/**
+	 * Parses Graph API response String into JSONObject.
+	 */
+	private JSONObject parseResponse(String response) throws IOException,
+			JSONException {
 		try {
 			return Util.parseJson(response);
 		} catch (FacebookError error) {
@@ -203,9 +552,49 @@ public class FBClient {
 		}
 	}
 
+	/**
+	 * Synchronous Facebook Graph API call for several objects at once. Ids
+	 * are requested using 'ids' parameter, MAX_IDS_PER_REQUEST ids per
+	 * request, so loading n objects takes n / MAX_IDS_PER_REQUEST round trips
+	 * instead of n.
+	 * 
+	 * @param ids
+	 *            Object ids.
+	 * @param requestParameters
+	 *            Additional request parameters, e.g. fields.
+	 * @return JSON object containing response object for every id found,
+	 *         using id as key.
+	 * @throws IOException
+	 * @throws JSONException
+	 */
+	public JSONObject requestIds(Collection<String> ids,
+			Bundle requestParameters) throws IOException, JSONException {
+		JSONObject out = new JSONObject();
+		Iterator<String> iter = ids.iterator();
+		while (iter.hasNext()) {
+			StringBuilder idList = new StringBuilder();
+			for (int i = 0; i < MAX_IDS_PER_REQUEST && iter.hasNext(); ++i) {
+				if (i > 0) {
+					idList.append(',');
+				}
+				idList.append(iter.next());
+			}
+			Bundle params = requestParameters != null ? new Bundle(
+					requestParameters) : new Bundle();
+			params.putString("ids", idList.toString());
+			JSONObject resp = request("", params);
+			Iterator<?> keys = resp.keys();
+			while (keys.hasNext()) {
+				String key = (String) keys.next();
+				out.put(key, resp.get(key));
+			}
+		}
+		return out;
+	}
+
 	/**
 	 * Executes a FQL query at
-	 * https://api.facebook.com/method/fql.query?access_token=TOKEN&query=QUERY
+	 * https://api.facebook.com/method/fql.query?query=QUERY&access_token=TOKEN
 	 * 
 	 * @param query
 	 *            FQL query string.
@@ -217,18 +606,53 @@ public class FBClient {
 	 */
 	public JSONObject requestFQL(String query) throws IOException,
 			JSONException, MalformedURLException, XmlPullParserException {
+		return executeFQL(query, null);
+	}
 
-		String token = URLEncoder.encode(mFacebook.getAccessToken());
-		query = URLEncoder.encode(query);
+	/**
+	 * Executes a FQL query and passes result rows to given Binder as they are
+	 * read, without creating JSON presentation for them.
+	 * 
+	 * @param query
+	 *            FQL query string.
+	 * @param binder
+	 *            Binder receiving result rows.
+	 * @throws IOException
+	 * @throws JSONException
+	 * @throws MalformedURLException
+	 * @throws XmlPullParserException
+	 */
+	public void requestFQL(String query, FQLParser.Binder binder)
+			throws IOException, JSONException, MalformedURLException,
+			XmlPullParserException {
+		executeFQL(query, binder);
+	}
 
-		URL url = new URL(
-				"https://api.facebook.com/method/fql.query?access_token="
-						+ token + "&query=" + query);
+	/**
+	 * Executes a FQL query. Response is parsed into JSON presentation if
+	 * binder is null, otherwise rows are passed to binder.
+	 */
+	private JSONObject executeFQL(String query, FQLParser.Binder binder)
+			throws IOException, JSONException, MalformedURLException,
+			XmlPullParserException {
 
-		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-		InputStream is = connection.getInputStream();
+		String url = mFQLUrl + "?query=" + URLEncoder.encode(query);
+		if (isAuthorized()) {
+			url += "&access_token=" + URLEncoder.encode(getAccessToken());
+		}
 
-		JSONObject out = new JSONObject(FQLParser.parse(is));
+		HttpTransport.Response resp = mHttpTransport.get(url);
+		JSONObject out;
+		try {
+			if (resp.getStatus() >= 400) {
+				throw new IOException("FQL error: HTTP " + resp.getStatus());
+			}
+			InputStream is = resp.getInputStream();
+			out = binder == null ? FQLParser.parse(is) : FQLParser.parse(is,
+					binder);
+		} finally {
+			resp.close();
+		}
 
 		JSONObject error = out.optJSONObject("error");
 		if (error != null) {
@@ -239,6 +663,52 @@ public class FBClient {
 		return out;
 	}
 
+	/**
+	 * Handler collecting "data" items aside.
+	 */
+	private static final class DataCollector implements
+			JSONStreamReader.DataHandler {
+
+		public Vector<JSONObject> items = new Vector<JSONObject>();
+
+		@Override
+		public void onData(JSONObject item) {
+			items.add(item);
+		}
+	}
+
+	/**
+	 * InputStream wrapper copying all bytes read into given OutputStream.
+	 */
+	private static final class TeeInputStream extends FilterInputStream {
+
+		private OutputStream mCopy;
+
+		public TeeInputStream(InputStream in, OutputStream copy) {
+			super(in);
+			mCopy = copy;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = in.read();
+			if (b != -1) {
+				mCopy.write(b);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length)
+				throws IOException {
+			int readLength = in.read(buffer, offset, length);
+			if (readLength > 0) {
+				mCopy.write(buffer, offset, readLength);
+			}
+			return readLength;
+		}
+	}
+
 	public interface LoginObserver {
 		public void onCancel();
 
@@ -5,15 +5,17 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 
+import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONStringer;
+import org.json.JSONObject;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
 
 /**
  * Facebook FQL query parser. Utility methods for converting response xml into
- * JSONObject.
+ * JSONObject in a single pass, or for binding rows directly into objects of
+ * caller's choice using a Binder.
  * 
  * Examples: https://api.facebook.com/method/fql.query?query= SELECT
  * uid,name,pic_square FROM user WHERE uid=1111111 SELECT uuid FROM user WHERE
@@ -63,27 +65,23 @@ public class FQLParser {
 
 	/**
 	 * Parses xml from given InputStream and converts it to JSON presentation.
+	 * JSON objects are built directly while xml is being read, there is no
+	 * intermediate String presentation.
 	 * 
 	 * @param is
 	 *            Xml InputStream.
-	 * @return JSON String presentation for xml.
+	 * @return JSON presentation for xml, containing "data" for successful
+	 *         query and "error" otherwise.
 	 * @throws IOException
 	 * @throws JSONException
 	 * @throws XmlPullParserException
 	 */
-	public static final String parse(InputStream is) throws IOException,
+	public static final JSONObject parse(InputStream is) throws IOException,
 			JSONException, XmlPullParserException {
 
-		Reader reader = new InputStreamReader(is);
+		XmlPullParser parser = createParser(is);
 
-		XmlPullParser parser = XmlPullParserFactory.newInstance()
-				.newPullParser();
-		parser.setInput(reader);
-
-		parser.nextTag();
-
-		JSONStringer stringer = new JSONStringer();
-		stringer.object();
+		JSONObject out = new JSONObject();
 
 		// We are expecting "fql_query_response" for successful query.
 		String name = parser.getName();
@@ -93,69 +91,89 @@ public class FQLParser {
 			name = "error";
 		}
 
-		stringer.key(name);
 		if (isList(parser)) {
-			parseArray(stringer, parser);
+			out.put(name, parseArray(parser));
 		} else {
-			parseObject(stringer, parser);
+			out.put(name, parseObject(parser));
 		}
 
-		stringer.endObject();
-		return stringer.toString();
+		return out;
 	}
 
 	/**
-	 * Parses an array element (==> element has type="list" attribute).
+	 * Parses xml from given InputStream and passes every result row to given
+	 * Binder. No JSON presentation is created for successful query.
 	 * 
-	 * @param stringer
-	 * @param parser
+	 * @param is
+	 *            Xml InputStream.
+	 * @param binder
+	 *            Binder receiving result rows.
+	 * @return JSON presentation containing "error" if query failed, empty
+	 *         JSONObject otherwise.
 	 * @throws IOException
 	 * @throws JSONException
 	 * @throws XmlPullParserException
 	 */
-	public static void parseArray(JSONStringer stringer, XmlPullParser parser)
+	public static final JSONObject parse(InputStream is, Binder binder)
 			throws IOException, JSONException, XmlPullParserException {
+
+		XmlPullParser parser = createParser(is);
+
+		JSONObject out = new JSONObject();
+
+		// We are expecting "fql_query_response" for successful query.
 		String name = parser.getName();
-		parser.require(XmlPullParser.START_TAG, null, name);
+		if (!name.equals("fql_query_response")) {
+			out.put("error", parseObject(parser));
+			return out;
+		}
 
-		stringer.array();
 		parser.nextTag();
 		while (parser.getEventType() != XmlPullParser.END_TAG) {
-			if (isList(parser)) {
-				parseArray(stringer, parser);
-			} else {
-				parseObject(stringer, parser);
+			String rowName = parser.getName();
+			binder.startRow();
+			parser.nextTag();
+			while (parser.getEventType() != XmlPullParser.END_TAG) {
+				bindContent(binder, parser);
+				parser.nextTag();
 			}
+			parser.require(XmlPullParser.END_TAG, null, rowName);
+			binder.endRow();
 			parser.nextTag();
 		}
-		stringer.endArray();
 		parser.require(XmlPullParser.END_TAG, null, name);
+
+		return out;
 	}
 
 	/**
-	 * Parses object content.
+	 * Passes element content to given Binder. Null elements are skipped, and
+	 * empty elements are passed as null values.
 	 * 
-	 * @param stringer
+	 * @param binder
 	 * @param parser
 	 * @throws IOException
-	 * @throws JSONException
 	 * @throws XmlPullParserException
 	 */
-	public static void parseContent(JSONStringer stringer, XmlPullParser parser)
-			throws IOException, JSONException, XmlPullParserException {
+	public static void bindContent(Binder binder, XmlPullParser parser)
+			throws IOException, XmlPullParserException {
 		String name = parser.getName();
 		parser.require(XmlPullParser.START_TAG, null, name);
-		
+
 		if (isNull(parser)) {
 			parser.nextTag();
 			parser.require(XmlPullParser.END_TAG, null, name);
 			return;
-		}		
-		
-		stringer.key(name);
+		}
 
 		if (isList(parser)) {
-			parseArray(stringer, parser);
+			binder.startElement(name);
+			parser.nextTag();
+			while (parser.getEventType() != XmlPullParser.END_TAG) {
+				bindContent(binder, parser);
+				parser.nextTag();
+			}
+			binder.endElement(name);
 		} else {
 			parser.next();
 			String text = null;
@@ -164,44 +182,188 @@ public class FQLParser {
 				parser.nextTag();
 			}
 			if (parser.getEventType() == XmlPullParser.END_TAG) {
-				stringer.value(text);
+				binder.value(name, text);
 			} else {
-				stringer.object();
+				binder.startElement(name);
 				while (parser.getEventType() != XmlPullParser.END_TAG) {
-					parseContent(stringer, parser);
+					bindContent(binder, parser);
 					parser.nextTag();
 				}
-				stringer.endObject();
+				binder.endElement(name);
+			}
+		}
+
+		parser.require(XmlPullParser.END_TAG, null, name);
+	}
+
+	/**
+	 * Parses an array element (==> element has type="list" attribute).
+	 * 
+	 * @param parser
+	 * @return JSONArray for element.
+	 * @throws IOException
+	 * @throws JSONException
+	 * @throws XmlPullParserException
+	 */
+	public static JSONArray parseArray(XmlPullParser parser)
+			throws IOException, JSONException, XmlPullParserException {
+		String name = parser.getName();
+		parser.require(XmlPullParser.START_TAG, null, name);
+
+		JSONArray array = new JSONArray();
+		parser.nextTag();
+		while (parser.getEventType() != XmlPullParser.END_TAG) {
+			if (isNull(parser)) {
+				parser.nextTag();
+				array.put(JSONObject.NULL);
+			} else {
+				array.put(parseValue(parser));
 			}
+			parser.nextTag();
+		}
+		parser.require(XmlPullParser.END_TAG, null, name);
+		return array;
+	}
 
+	/**
+	 * Parses object content and adds it into given object. Null elements are
+	 * skipped, and empty elements are added as JSONObject.NULL.
+	 * 
+	 * @param object
+	 *            Object content is added into.
+	 * @param parser
+	 * @throws IOException
+	 * @throws JSONException
+	 * @throws XmlPullParserException
+	 */
+	public static void parseContent(JSONObject object, XmlPullParser parser)
+			throws IOException, JSONException, XmlPullParserException {
+		String name = parser.getName();
+		parser.require(XmlPullParser.START_TAG, null, name);
+		
+		if (isNull(parser)) {
+			parser.nextTag();
+			parser.require(XmlPullParser.END_TAG, null, name);
+			return;
+		}		
+		
+		object.put(name, parseValue(parser));
+	}
+
+	/**
+	 * Parses value of an element. Lists are returned as JSONArray, elements
+	 * containing other elements as JSONObject, elements containing text as
+	 * String and empty elements as JSONObject.NULL.
+	 * 
+	 * @param parser
+	 * @return Value for element.
+	 * @throws IOException
+	 * @throws JSONException
+	 * @throws XmlPullParserException
+	 */
+	public static Object parseValue(XmlPullParser parser) throws IOException,
+			JSONException, XmlPullParserException {
+		String name = parser.getName();
+		parser.require(XmlPullParser.START_TAG, null, name);
+
+		if (isList(parser)) {
+			return parseArray(parser);
+		}
+
+		Object value;
+		parser.next();
+		String text = null;
+		if (parser.getEventType() == XmlPullParser.TEXT) {
+			text = parser.getText();
+			parser.nextTag();
+		}
+		if (parser.getEventType() == XmlPullParser.END_TAG) {
+			value = text != null ? text : JSONObject.NULL;
+		} else {
+			JSONObject child = new JSONObject();
+			while (parser.getEventType() != XmlPullParser.END_TAG) {
+				parseContent(child, parser);
+				parser.nextTag();
+			}
+			value = child;
 		}
 
 		parser.require(XmlPullParser.END_TAG, null, name);
+		return value;
 	}
 
 	/**
 	 * Parses object element (==> there is no list="true" attribute).
 	 * 
-	 * @param stringer
 	 * @param parser
+	 * @return JSONObject for element.
 	 * @throws IOException
 	 * @throws JSONException
 	 * @throws XmlPullParserException
 	 */
-	public static void parseObject(JSONStringer stringer, XmlPullParser parser)
+	public static JSONObject parseObject(XmlPullParser parser)
 			throws IOException, JSONException, XmlPullParserException {
 		String name = parser.getName();
 		parser.require(XmlPullParser.START_TAG, null, name);
 
-		stringer.object();
+		JSONObject object = new JSONObject();
 		parser.nextTag();
 		while (parser.getEventType() != XmlPullParser.END_TAG) {
-			parseContent(stringer, parser);
+			parseContent(object, parser);
 			parser.nextTag();
 		}
-		stringer.endObject();
 
 		parser.require(XmlPullParser.END_TAG, null, name);
+		return object;
+	}
+
+	/**
+	 * Creates parser for given InputStream and moves it to root element.
+	 */
+	private static XmlPullParser createParser(InputStream is)
+			throws IOException, XmlPullParserException {
+		Reader reader = new InputStreamReader(is, "UTF-8");
+
+		XmlPullParser parser = XmlPullParserFactory.newInstance()
+				.newPullParser();
+		parser.setInput(reader);
+
+		parser.nextTag();
+		return parser;
+	}
+
+	/**
+	 * Interface for receiving FQL result rows element by element. Elements
+	 * containing text are passed to value(), elements containing other
+	 * elements or lists are passed as startElement() and endElement() calls
+	 * surrounding their content.
+	 */
+	public interface Binder {
+		/**
+		 * Called once a new result row starts.
+		 */
+		public void startRow();
+
+		/**
+		 * Called once an element containing other elements starts.
+		 */
+		public void startElement(String name);
+
+		/**
+		 * Called for an element containing text. Text is null for empty
+		 * elements.
+		 */
+		public void value(String name, String text);
+
+		/**
+		 * Called once an element containing other elements ends.
+		 */
+		public void endElement(String name);
+
+		/**
+		 * Called once result row ends.
+		 */
+		public void endRow();
 	}
 
 }
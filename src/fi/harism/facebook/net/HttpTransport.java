@@ -0,0 +1,502 @@
+package fi.harism.facebook.net;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import android.os.Build;
+import fi.harism.facebook.util.CancelSignal;
+
+/**
+ * Shared HTTP transport for all network access. Connections are kept alive
+ * and pooled per host by HttpURLConnection, but only if response bodies are
+ * read to the end and closed. Response.close() takes care of this, draining
+ * whatever caller left unread, so that next request to same host can reuse
+ * the connection instead of doing a new TLS handshake.
+ * 
+ * HttpURLConnection does not tell whether a connection was reused. Counters
+ * are estimates only, kept by tracking connections released back to pool per
+ * host. Responses which the server ends with closing connection are not
+ * counted as released. Estimates match HttpURLConnection pooling as long as
+ * all requests go through this class and pooled connections are not closed
+ * by server while idle, and they tell nothing about TLS handshakes done.
+ * 
+ * Compressed responses are requested for all requests. Gzip encoded bodies
+ * are decompressed while they are read, so callers always see plain data.
+ * Number of bytes received on the wire and after decompression are counted.
+ * 
+ * Connections are registered with current CancelSignal while they are open.
+ * 
+ * @author harism
+ */
+public class HttpTransport {
+
+	// Largest response remainder drained on close. Connection is closed
+	// instead if there is more.
+	private static final int MAX_DRAIN_LENGTH = 65536;
+	// Connect and read timeout in milliseconds.
+	private static final int TIMEOUT = 30000;
+
+	// Maximum number of idle connections kept per host.
+	private int maxConnections;
+	// Connection counters by host, guarded by itself.
+	private HashMap<String, HostStats> hostStatsMap;
+	// Response bytes received, guarded by hostStatsMap.
+	private long wireByteCount;
+	// Response bytes after decompression, guarded by hostStatsMap.
+	private long bodyByteCount;
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param maxConnections
+	 *            Maximum number of idle connections kept per host.
+	 */
+	public HttpTransport(int maxConnections) {
+		this.maxConnections = maxConnections;
+		hostStatsMap = new HashMap<String, HostStats>();
+		// HttpURLConnection connection pool is broken before Froyo, reusing
+		// a connection may return data for an earlier request.
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.FROYO) {
+			System.setProperty("http.keepAlive", "false");
+		} else {
+			System.setProperty("http.keepAlive", "true");
+			System.setProperty("http.maxConnections", "" + maxConnections);
+		}
+	}
+
+	/**
+	 * Executes HTTP GET request. Returned Response must be closed once it's
+	 * not needed anymore, even if its body is not read.
+	 * 
+	 * @param url
+	 *            Url for request.
+	 * @return Response for request.
+	 * @throws IOException
+	 */
+	public Response get(String url) throws IOException {
+		return get(url, null);
+	}
+
+	/**
+	 * Executes HTTP GET request with additional request headers. Returned
+	 * Response must be closed once it's not needed anymore, even if its body
+	 * is not read.
+	 * 
+	 * @param url
+	 *            Url for request.
+	 * @param requestHeaders
+	 *            Request headers by name, or null for none.
+	 * @return Response for request.
+	 * @throws IOException
+	 */
+	public Response get(String url, Map<String, String> requestHeaders)
+			throws IOException {
+		URL u = new URL(url);
+		HttpURLConnection connection = (HttpURLConnection) u.openConnection();
+		connection.setConnectTimeout(TIMEOUT);
+		connection.setReadTimeout(TIMEOUT);
+		connection.setRequestProperty("Accept-Encoding", "gzip");
+		if (requestHeaders != null) {
+			for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+				connection.setRequestProperty(header.getKey(),
+						header.getValue());
+			}
+		}
+		HostStats stats = getHostStats(u.getHost());
+
+		Response response = new Response(connection, stats);
+		response.cancellable = CancelSignal.register(connection);
+		try {
+			response.status = connection.getResponseCode();
+			InputStream is = response.status >= 400 ? connection
+					.getErrorStream() : connection.getInputStream();
+			if (is != null) {
+				response.wireStream = new CountingInputStream(is);
+				is = response.wireStream;
+				if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+					response.gzip = true;
+					try {
+						is = new GZIPInputStream(is);
+					} catch (EOFException ex) {
+						// Empty body, e.g. for 304 Not Modified.
+						is = null;
+					}
+				}
+			}
+			response.inputStream = new ResponseInputStream(is);
+		} catch (IOException ex) {
+			response.close();
+			throw ex;
+		}
+
+		synchronized (hostStatsMap) {
+			if (stats.idleCount > 0) {
+				--stats.idleCount;
+				++stats.reusedCount;
+			} else {
+				++stats.openedCount;
+			}
+		}
+		return response;
+	}
+
+	/**
+	 * Returns number of response bytes after decompression.
+	 */
+	public long getBodyByteCount() {
+		synchronized (hostStatsMap) {
+			return bodyByteCount;
+		}
+	}
+
+	/**
+	 * Returns estimated number of connections opened for given host, or for
+	 * all hosts if host is null.
+	 */
+	public int getOpenedCount(String host) {
+		synchronized (hostStatsMap) {
+			int count = 0;
+			for (String key : hostStatsMap.keySet()) {
+				if (host == null || host.equals(key)) {
+					count += hostStatsMap.get(key).openedCount;
+				}
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * Returns estimated number of requests which reused a pooled connection
+	 * for given host, or for all hosts if host is null.
+	 */
+	public int getReusedCount(String host) {
+		synchronized (hostStatsMap) {
+			int count = 0;
+			for (String key : hostStatsMap.keySet()) {
+				if (host == null || host.equals(key)) {
+					count += hostStatsMap.get(key).reusedCount;
+				}
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * Returns number of response bytes received on the wire.
+	 */
+	public long getWireByteCount() {
+		synchronized (hostStatsMap) {
+			return wireByteCount;
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder out = new StringBuilder();
+		synchronized (hostStatsMap) {
+			out.append("wire=").append(wireByteCount).append(" body=")
+					.append(bodyByteCount).append('\n');
+			for (String host : hostStatsMap.keySet()) {
+				HostStats stats = hostStatsMap.get(host);
+				out.append(host).append(": estimated opened=")
+						.append(stats.openedCount).append(" reused=")
+						.append(stats.reusedCount).append('\n');
+			}
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Returns HostStats for given host, creates one if needed.
+	 */
+	private HostStats getHostStats(String host) {
+		synchronized (hostStatsMap) {
+			HostStats stats = hostStatsMap.get(host);
+			if (stats == null) {
+				stats = new HostStats();
+				hostStatsMap.put(host, stats);
+			}
+			return stats;
+		}
+	}
+
+	/**
+	 * Called once a Response has been closed.
+	 */
+	private void releaseConnection(HostStats stats, boolean reusable,
+			long wireBytes, long bodyBytes) {
+		synchronized (hostStatsMap) {
+			if (reusable && stats.idleCount < maxConnections) {
+				++stats.idleCount;
+			}
+			wireByteCount += wireBytes;
+			bodyByteCount += bodyBytes;
+		}
+	}
+
+	/**
+	 * Estimated connection counters for one host.
+	 */
+	private static final class HostStats {
+		// Number of new connections.
+		public int openedCount;
+		// Number of requests which reused an idle connection.
+		public int reusedCount;
+		// Estimated number of idle connections in pool.
+		public int idleCount;
+	}
+
+	/**
+	 * Response for HTTP request.
+	 */
+	public final class Response {
+
+		private HttpURLConnection connection;
+		private HostStats stats;
+		private CancelSignal.Cancellable cancellable;
+		private int status;
+		private ResponseInputStream inputStream;
+		// Stream counting bytes on the wire, null if there is no body.
+		private CountingInputStream wireStream;
+		// True if body is gzip encoded.
+		private boolean gzip;
+		private boolean closed;
+
+		private Response(HttpURLConnection connection, HostStats stats) {
+			this.connection = connection;
+			this.stats = stats;
+		}
+
+		/**
+		 * Drains unread response body, up to MAX_DRAIN_LENGTH, and closes
+		 * response. Connection is disconnected if body could not be read to
+		 * the end.
+		 */
+		public void close() {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			boolean reusable = false;
+			if (inputStream != null) {
+				try {
+					reusable = inputStream.drain(MAX_DRAIN_LENGTH);
+					inputStream.close();
+					// Body stream is missing if gzip body was empty.
+					if (wireStream != null) {
+						wireStream.close();
+					}
+				} catch (IOException ex) {
+					reusable = false;
+				}
+			}
+			if (reusable && !isKeepAlive()) {
+				// Server closes connection, so it's not returned to pool.
+				reusable = false;
+			}
+			if (!reusable) {
+				connection.disconnect();
+			}
+			releaseConnection(stats, reusable, wireStream != null ? wireStream
+					.getCount() : 0, inputStream != null ? inputStream
+					.getCount() : 0);
+			if (cancellable != null) {
+				CancelSignal.unregister(cancellable);
+			}
+		}
+
+		/**
+		 * Returns true if connection is kept open after this response, based
+		 * on HTTP version and Connection header of response.
+		 */
+		private boolean isKeepAlive() {
+			String connectionHeader = connection.getHeaderField("Connection");
+			if (connectionHeader != null) {
+				return !connectionHeader.equalsIgnoreCase("close");
+			}
+			String statusLine = connection.getHeaderField(0);
+			return statusLine == null || !statusLine.startsWith("HTTP/1.0");
+		}
+
+		/**
+		 * Returns length of response body, or -1 if it's not known. Length is
+		 * never known for compressed bodies.
+		 */
+		public int getContentLength() {
+			return gzip ? -1 : connection.getContentLength();
+		}
+
+		/**
+		 * Returns value of given response header, or null if there is none.
+		 */
+		public String getHeader(String name) {
+			return connection.getHeaderField(name);
+		}
+
+		/**
+		 * Returns response body. For error status codes this is error body.
+		 */
+		public InputStream getInputStream() {
+			return inputStream;
+		}
+
+		/**
+		 * Returns HTTP status code.
+		 */
+		public int getStatus() {
+			return status;
+		}
+
+		/**
+		 * Reads response body into a String.
+		 */
+		public String readString() throws IOException {
+			Reader reader = new InputStreamReader(inputStream, "UTF-8");
+			StringBuilder out = new StringBuilder();
+			char buffer[] = new char[4096];
+			int readLength;
+			while ((readLength = reader.read(buffer)) != -1) {
+				out.append(buffer, 0, readLength);
+			}
+			return out.toString();
+		}
+	}
+
+	/**
+	 * InputStream wrapper which keeps track of end of stream. Closing it
+	 * closes underlying stream only, draining is done by Response.
+	 */
+	private static final class ResponseInputStream extends InputStream {
+
+		private InputStream in;
+		private boolean eof;
+		// Number of bytes read.
+		private long count;
+
+		public ResponseInputStream(InputStream in) {
+			this.in = in;
+			// Empty bodies have no stream at all.
+			eof = in == null;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return in == null ? 0 : in.available();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (in != null) {
+				in.close();
+			}
+		}
+
+		/**
+		 * Returns number of bytes read.
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * Reads rest of the stream, up to given length. Returns true if end of
+		 * stream was reached.
+		 */
+		public boolean drain(int maxLength) throws IOException {
+			byte buffer[] = new byte[1024];
+			int drained = 0;
+			while (!eof && drained <= maxLength) {
+				int readLength = read(buffer, 0, buffer.length);
+				if (readLength > 0) {
+					drained += readLength;
+				}
+			}
+			return eof;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (eof) {
+				return -1;
+			}
+			int b = in.read();
+			if (b == -1) {
+				eof = true;
+			} else {
+				++count;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length)
+				throws IOException {
+			if (eof) {
+				return -1;
+			}
+			int readLength = in.read(buffer, offset, length);
+			if (readLength == -1) {
+				eof = true;
+			} else {
+				count += readLength;
+			}
+			return readLength;
+		}
+	}
+
+	/**
+	 * InputStream wrapper counting bytes read from underlying stream.
+	 */
+	private static final class CountingInputStream extends FilterInputStream {
+
+		// Number of bytes read.
+		private long count;
+
+		public CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		/**
+		 * Returns number of bytes read.
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = in.read();
+			if (b != -1) {
+				++count;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length)
+				throws IOException {
+			int readLength = in.read(buffer, offset, length);
+			if (readLength > 0) {
+				count += readLength;
+			}
+			return readLength;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = in.skip(n);
+			count += skipped;
+			return skipped;
+		}
+	}
+
+}
@@ -0,0 +1,319 @@
+package fi.harism.facebook.net;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Streaming reader for Graph API JSON responses. Response is tokenized while
+ * it's being read, and items of top level "data" array are handed to a
+ * DataHandler one by one. Only one item is held in memory at a time, instead
+ * of whole response String and full JSONObject tree for it.
+ * 
+ * @author harism
+ */
+public class JSONStreamReader {
+
+	private Reader reader;
+	// Character pushed back by unread(), -2 if there is none.
+	private int pushback = -2;
+	// Character returned by last read().
+	private int lastRead = -2;
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param reader
+	 *            Reader for JSON text. Should be buffered.
+	 */
+	public JSONStreamReader(Reader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * Reads Graph API response object. Items of "data" array are passed to
+	 * given DataHandler and rest of the members are returned.
+	 * 
+	 * @param handler
+	 *            Handler for "data" items.
+	 * @return Response object without "data" member.
+	 * @throws IOException
+	 *             On read error, or if response contains an error object.
+	 * @throws JSONException
+	 *             On invalid JSON.
+	 */
+	public JSONObject readResponse(DataHandler handler) throws IOException,
+			JSONException {
+		JSONObject out = new JSONObject();
+		expect('{');
+		if (skipWhitespace() == '}') {
+			return out;
+		}
+		unread();
+		do {
+			String key = readKey();
+			if (key.equals("data") && skipWhitespace() == '[') {
+				if (skipWhitespace() != ']') {
+					unread();
+					do {
+						Object item = readValue();
+						if (item instanceof JSONObject) {
+							handler.onData((JSONObject) item);
+						}
+					} while (nextSeparator(']'));
+				}
+			} else if (key.equals("data")) {
+				unread();
+				out.put(key, readValue());
+			} else {
+				Object value = readValue();
+				if (key.equals("error") && value instanceof JSONObject) {
+					JSONObject error = (JSONObject) value;
+					throw new IOException(error.optString("type") + ": "
+							+ error.optString("message"));
+				}
+				out.put(key, value);
+			}
+		} while (nextSeparator('}'));
+		return out;
+	}
+
+	/**
+	 * Reads any JSON value.
+	 */
+	public Object readValue() throws IOException, JSONException {
+		int c = skipWhitespace();
+		switch (c) {
+		case '{':
+			return readObject();
+		case '[':
+			return readArray();
+		case '"':
+			return readString();
+		case 't':
+			expectLiteral("rue");
+			return Boolean.TRUE;
+		case 'f':
+			expectLiteral("alse");
+			return Boolean.FALSE;
+		case 'n':
+			expectLiteral("ull");
+			return JSONObject.NULL;
+		default:
+			if (c == '-' || (c >= '0' && c <= '9')) {
+				unread();
+				return readNumber();
+			}
+			throw syntaxError(c);
+		}
+	}
+
+	/**
+	 * Reads array content, opening bracket has been read already.
+	 */
+	private JSONArray readArray() throws IOException, JSONException {
+		JSONArray array = new JSONArray();
+		if (skipWhitespace() == ']') {
+			return array;
+		}
+		unread();
+		do {
+			array.put(readValue());
+		} while (nextSeparator(']'));
+		return array;
+	}
+
+	/**
+	 * Reads object key and following colon.
+	 */
+	private String readKey() throws IOException, JSONException {
+		expect('"');
+		String key = readString();
+		expect(':');
+		return key;
+	}
+
+	/**
+	 * Reads a number, returned as Integer, Long or Double.
+	 */
+	private Object readNumber() throws IOException, JSONException {
+		StringBuilder number = new StringBuilder();
+		boolean decimal = false;
+		int c = read();
+		while (c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E'
+				|| (c >= '0' && c <= '9')) {
+			decimal |= c == '.' || c == 'e' || c == 'E';
+			number.append((char) c);
+			c = read();
+		}
+		unread(c);
+		try {
+			if (decimal) {
+				return Double.valueOf(number.toString());
+			}
+			long value = Long.parseLong(number.toString());
+			if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+				return Integer.valueOf((int) value);
+			}
+			return Long.valueOf(value);
+		} catch (NumberFormatException ex) {
+			throw new JSONException("Invalid number " + number);
+		}
+	}
+
+	/**
+	 * Reads object content, opening brace has been read already.
+	 */
+	private JSONObject readObject() throws IOException, JSONException {
+		JSONObject object = new JSONObject();
+		if (skipWhitespace() == '}') {
+			return object;
+		}
+		unread();
+		do {
+			String key = readKey();
+			object.put(key, readValue());
+		} while (nextSeparator('}'));
+		return object;
+	}
+
+	/**
+	 * Reads string content, opening quote has been read already.
+	 */
+	private String readString() throws IOException, JSONException {
+		StringBuilder out = new StringBuilder();
+		while (true) {
+			int c = read();
+			if (c == '"') {
+				return out.toString();
+			}
+			if (c == -1) {
+				throw new JSONException("Unterminated string");
+			}
+			if (c != '\\') {
+				out.append((char) c);
+				continue;
+			}
+			c = read();
+			switch (c) {
+			case 'b':
+				out.append('\b');
+				break;
+			case 'f':
+				out.append('\f');
+				break;
+			case 'n':
+				out.append('\n');
+				break;
+			case 'r':
+				out.append('\r');
+				break;
+			case 't':
+				out.append('\t');
+				break;
+			case 'u':
+				int code = 0;
+				for (int i = 0; i < 4; ++i) {
+					int digit = Character.digit(read(), 16);
+					if (digit == -1) {
+						throw new JSONException("Invalid unicode escape");
+					}
+					code = code * 16 + digit;
+				}
+				out.append((char) code);
+				break;
+			case -1:
+				throw new JSONException("Unterminated string");
+			default:
+				// Covers \", \\ and \/.
+				out.append((char) c);
+			}
+		}
+	}
+
+	/**
+	 * Reads separator after a value. Returns true for comma and false for
+	 * given closing character.
+	 */
+	private boolean nextSeparator(char close) throws IOException,
+			JSONException {
+		int c = skipWhitespace();
+		if (c == ',') {
+			return true;
+		}
+		if (c == close) {
+			return false;
+		}
+		throw syntaxError(c);
+	}
+
+	private void expect(char expected) throws IOException, JSONException {
+		int c = skipWhitespace();
+		if (c != expected) {
+			throw syntaxError(c);
+		}
+	}
+
+	private void expectLiteral(String rest) throws IOException, JSONException {
+		for (int i = 0; i < rest.length(); ++i) {
+			int c = read();
+			if (c != rest.charAt(i)) {
+				throw syntaxError(c);
+			}
+		}
+	}
+
+	private int read() throws IOException {
+		if (pushback != -2) {
+			lastRead = pushback;
+			pushback = -2;
+		} else {
+			lastRead = reader.read();
+		}
+		return lastRead;
+	}
+
+	/**
+	 * Returns next character which is not whitespace, or -1 at end of input.
+	 */
+	private int skipWhitespace() throws IOException {
+		int c = read();
+		while (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+			c = read();
+		}
+		return c;
+	}
+
+	private JSONException syntaxError(int c) {
+		return new JSONException(c == -1 ? "Unexpected end of input"
+				: "Unexpected character '" + (char) c + "'");
+	}
+
+	/**
+	 * Pushes back character returned by last read().
+	 */
+	private void unread() {
+		pushback = lastRead;
+	}
+
+	/**
+	 * Pushes back given character.
+	 */
+	private void unread(int c) {
+		pushback = c;
+	}
+
+	/**
+	 * Interface for receiving items of "data" array.
+	 */
+	public interface DataHandler {
+		/**
+		 * Called for every item of "data" array, in order.
+		 */
+		public void onData(JSONObject item) throws JSONException;
+	}
+
+}
@@ -0,0 +1,221 @@
+package fi.harism.facebook.net;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+
+import fi.harism.facebook.util.DiskCache;
+
+/**
+ * Persistent cache for Graph API responses. Responses are stored on disk
+ * with their validators and time of last validation, keyed by graph path and
+ * request parameters. Response bodies are read and written as streams, so
+ * they are never held in memory as a whole. Whether a response is fresh
+ * enough to be used without revalidation is decided by maximum age rules per
+ * path, and responses for an object which has been modified since they were
+ * stored are always revalidated.
+ * 
+ * Methods of this class do file I/O and they should not be called from UI
+ * thread.
+ * 
+ * @author harism
+ */
+public class ResponseCache {
+
+	// Written before headers, entries in other formats are treated as missing.
+	private static final int FORMAT_VERSION = 0x52430002;
+	// Storage for serialized entries.
+	private DiskCache diskCache;
+	// Maximum age in milliseconds by graph path.
+	private HashMap<String, Long> maxAgeMap;
+	// Maximum age for paths with no rule.
+	private long defaultMaxAge;
+	// Time of latest modification by object id.
+	private HashMap<String, Long> modifiedMap;
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param cacheDir
+	 *            Directory for storing cached responses.
+	 * @param cacheMaxSize
+	 *            Maximum size of cache in bytes.
+	 * @param defaultMaxAge
+	 *            Maximum age in milliseconds for paths without a rule.
+	 */
+	public ResponseCache(File cacheDir, long cacheMaxSize, long defaultMaxAge) {
+		diskCache = new DiskCache(cacheDir, cacheMaxSize);
+		maxAgeMap = new HashMap<String, Long>();
+		this.defaultMaxAge = defaultMaxAge;
+		modifiedMap = new HashMap<String, Long>();
+	}
+
+	/**
+	 * Removes all responses from this cache.
+	 */
+	public void clear() {
+		diskCache.clear();
+	}
+
+	/**
+	 * Returns cached entry for given key, or null if there is none. Body
+	 * stream of returned entry must be closed once done.
+	 */
+	public Entry get(String key) {
+		InputStream is = diskCache.getInputStream(key);
+		if (is == null) {
+			return null;
+		}
+		try {
+			DataInputStream in = new DataInputStream(is);
+			if (in.readInt() != FORMAT_VERSION) {
+				// Entry written by an older version, treat as missing.
+				is.close();
+				return null;
+			}
+			Entry entry = new Entry();
+			entry.time = in.readLong();
+			entry.eTag = readString(in);
+			entry.lastModified = readString(in);
+			entry.body = is;
+			return entry;
+		} catch (IOException ex) {
+			try {
+				is.close();
+			} catch (IOException closeEx) {
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Removes entry for given key, e.g. once its body turns out to be
+	 * corrupt.
+	 */
+	public void remove(String key) {
+		diskCache.remove(key);
+	}
+
+	/**
+	 * Marks responses for object given path belongs to as modified. Their
+	 * entries are kept as they can still be revalidated with their
+	 * validators, but they are not fresh anymore regardless of their age.
+	 * 
+	 * @param graphPath
+	 *            Path modified, e.g. "12345/comments" marks all cached paths
+	 *            of object "12345".
+	 */
+	public void invalidate(String graphPath) {
+		synchronized (modifiedMap) {
+			modifiedMap.put(getObjectId(graphPath), System.currentTimeMillis());
+		}
+	}
+
+	/**
+	 * Returns true if given entry for given path can be used without
+	 * revalidation.
+	 */
+	public boolean isFresh(String graphPath, Entry entry) {
+		Long maxAge;
+		synchronized (maxAgeMap) {
+			maxAge = maxAgeMap.get(graphPath);
+		}
+		if (maxAge == null) {
+			maxAge = defaultMaxAge;
+		}
+		Long modified;
+		synchronized (modifiedMap) {
+			modified = modifiedMap.get(getObjectId(graphPath));
+		}
+		if (modified != null && entry.time <= modified) {
+			return false;
+		}
+		long age = System.currentTimeMillis() - entry.time;
+		return age >= 0 && age < maxAge;
+	}
+
+	/**
+	 * Starts storing entry for given key. Headers of given entry are written
+	 * into returned Editor, and caller should write response body into it
+	 * and commit it. Body of given entry is not used.
+	 * 
+	 * @return Editor for writing response body, or null if entry can't be
+	 *         stored.
+	 */
+	public DiskCache.Editor put(String key, Entry entry) {
+		try {
+			DiskCache.Editor editor = diskCache.edit(key);
+			DataOutputStream out = new DataOutputStream(editor);
+			out.writeInt(FORMAT_VERSION);
+			out.writeLong(entry.time);
+			writeString(out, entry.eTag);
+			writeString(out, entry.lastModified);
+			return editor;
+		} catch (IOException ex) {
+			// Caching is optional, ignore write errors.
+			return null;
+		}
+	}
+
+	/**
+	 * Sets maximum age for given graph path. Paths without a rule of their own
+	 * use default maximum age.
+	 * 
+	 * @param graphPath
+	 *            Graph path, e.g. "me/home".
+	 * @param maxAge
+	 *            Maximum age in milliseconds, 0 for always revalidating.
+	 */
+	public void setMaxAge(String graphPath, long maxAge) {
+		synchronized (maxAgeMap) {
+			maxAgeMap.put(graphPath, maxAge);
+		}
+	}
+
+	/**
+	 * Returns id of object given path belongs to, e.g. "me" for "me/home".
+	 */
+	private static String getObjectId(String graphPath) {
+		int index = graphPath.indexOf('/');
+		return index == -1 ? graphPath : graphPath.substring(0, index);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length == -1) {
+			return null;
+		}
+		byte bytes[] = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	private static void writeString(DataOutputStream out, String str)
+			throws IOException {
+		if (str == null) {
+			out.writeInt(-1);
+		} else {
+			byte bytes[] = str.getBytes("UTF-8");
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * Cached response.
+	 */
+	public static final class Entry {
+		// Time of last validation in System.currentTimeMillis().
+		public long time;
+		// ETag header of response, or null.
+		public String eTag;
+		// Last-Modified header of response, or null.
+		public String lastModified;
+		// Stream for response body of entries read from cache.
+		public InputStream body;
+	}
+
+}
@@ -0,0 +1,110 @@
+package fi.harism.facebook.request;
+
+/**
+ * Simple histogram for latency values in milliseconds. Values are counted into
+ * buckets with power of two upper bounds, so percentiles are accurate within
+ * factor of two which is good enough for telling a 5ms wait from a 500ms one.
+ * 
+ * LatencyHistogram is thread safe.
+ * 
+ * @author harism
+ */
+public class LatencyHistogram {
+
+	// Bucket i counts values within [2^(i-1), 2^i), bucket 0 values < 1 and
+	// last bucket all values from 2^(BUCKET_COUNT-2) up.
+	private static final int BUCKET_COUNT = 32;
+
+	private int buckets[];
+	private int count;
+	private long sum;
+	private long max;
+
+	/**
+	 * Default constructor.
+	 */
+	public LatencyHistogram() {
+		buckets = new int[BUCKET_COUNT];
+	}
+
+	/**
+	 * Copy constructor.
+	 */
+	public LatencyHistogram(LatencyHistogram histogram) {
+		synchronized (histogram) {
+			buckets = histogram.buckets.clone();
+			count = histogram.count;
+			sum = histogram.sum;
+			max = histogram.max;
+		}
+	}
+
+	/**
+	 * Adds a value to this histogram.
+	 * 
+	 * @param millis
+	 *            Latency in milliseconds.
+	 */
+	public synchronized void add(long millis) {
+		if (millis < 0) {
+			millis = 0;
+		}
+		int bucket = 0;
+		while (bucket < BUCKET_COUNT - 1 && (1L << bucket) <= millis) {
+			++bucket;
+		}
+		++buckets[bucket];
+		++count;
+		sum += millis;
+		max = Math.max(max, millis);
+	}
+
+	/**
+	 * Returns number of values added.
+	 */
+	public synchronized int getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns largest value added.
+	 */
+	public synchronized long getMax() {
+		return max;
+	}
+
+	/**
+	 * Returns mean of values added, or 0 if there are none.
+	 */
+	public synchronized long getMean() {
+		return count == 0 ? 0 : sum / count;
+	}
+
+	/**
+	 * Returns upper bound for given percentile of values added, or 0 if there
+	 * are none.
+	 * 
+	 * @param percentile
+	 *            Percentile between 0 and 100.
+	 */
+	public synchronized long getPercentile(double percentile) {
+		long target = (long) Math.ceil(count * percentile / 100);
+		long cumulative = 0;
+		for (int i = 0; i < BUCKET_COUNT; ++i) {
+			cumulative += buckets[i];
+			if (cumulative >= target && cumulative > 0) {
+				// Last bucket has no upper bound of its own.
+				return i == BUCKET_COUNT - 1 ? max : Math.min(1L << i, max);
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "count=" + count + " mean=" + getMean() + " p50="
+				+ getPercentile(50) + " p90=" + getPercentile(90) + " p99="
+				+ getPercentile(99) + " max=" + max;
+	}
+
+}
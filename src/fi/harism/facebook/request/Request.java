@@ -1,5 +1,7 @@
 package fi.harism.facebook.request;
 
+import android.os.SystemClock;
+
 /**
  * Base class for all requests being handled by RequestController.
  * 
@@ -15,6 +17,17 @@ public abstract class Request implements Runnable {
 	private Object key = null;
 	// Priority for this Request.
 	private int priority = PRIORITY_NORMAL;
+	// Order of addition, set by RequestQueue.
+	long sequence = 0;
+	// Time of addition in SystemClock.uptimeMillis(), set by RequestQueue.
+	long enqueueTime = 0;
+	// Time WorkerThread took this Request, set by RequestQueue.
+	long dequeueTime = 0;
+	// Times execution started and ended, used by RequestMetrics.
+	long executeStartTime = 0;
+	long executeEndTime = 0;
+	// Time after which this Request is dropped, 0 for no deadline.
+	private long deadline = 0;
 
 	/**
 	 * Constructor for Request objects.
@@ -26,6 +39,16 @@ public abstract class Request implements Runnable {
 		this.key = key;
 	}
 
+	/**
+	 * Getter for Request deadline.
+	 * 
+	 * @return Deadline in SystemClock.uptimeMillis() time base, or 0 if there
+	 *         is none.
+	 */
+	public final long getDeadline() {
+		return deadline;
+	}
+
 	public final Object getKey() {
 		return key;
 	}
@@ -47,6 +70,28 @@ public abstract class Request implements Runnable {
 	 */
 	public abstract void cancel();
 
+	/**
+	 * Setter for Request deadline. If Request is still waiting in RequestQueue
+	 * once deadline has passed, it is dropped without being executed.
+	 * 
+	 * @param deadline
+	 *            Deadline in SystemClock.uptimeMillis() time base, or 0 for no
+	 *            deadline.
+	 */
+	public final void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Sets Request deadline given time from now.
+	 * 
+	 * @param timeToLive
+	 *            Time in milliseconds Request is allowed to wait for execution.
+	 */
+	public final void setTimeToLive(long timeToLive) {
+		deadline = SystemClock.uptimeMillis() + timeToLive;
+	}
+
 	/**
 	 * Setter for Request priority value. Default priority is PRIORITY_NORMAL.
 	 * 
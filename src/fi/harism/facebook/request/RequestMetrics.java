@@ -0,0 +1,178 @@
+package fi.harism.facebook.request;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Application wide timing statistics for Requests. RequestQueue and RequestUI
+ * record timestamps for every Request as it is added to queue, taken for
+ * execution, executed and delivered to UI thread. Durations between these are
+ * aggregated into histograms per Request class. Cancelled and expired Requests
+ * and pause calls are counted too.
+ * 
+ * RequestMetrics is thread safe.
+ * 
+ * @author harism
+ */
+public final class RequestMetrics {
+
+	// Application wide instance.
+	private static RequestMetrics instance = null;
+
+	// Statistics by Request class name.
+	private HashMap<String, Entry> entryMap;
+	// Number of setPaused() calls pausing a key.
+	private int pauseCount;
+
+	/**
+	 * Returns application wide RequestMetrics instance.
+	 */
+	public static synchronized RequestMetrics getInstance() {
+		if (instance == null) {
+			instance = new RequestMetrics();
+		}
+		return instance;
+	}
+
+	private RequestMetrics() {
+		entryMap = new HashMap<String, Entry>();
+	}
+
+	/**
+	 * Returns number of times a key has been paused.
+	 */
+	public synchronized int getPauseCount() {
+		return pauseCount;
+	}
+
+	/**
+	 * Returns a copy of current statistics by Request class name.
+	 */
+	public synchronized Map<String, Entry> getSnapshot() {
+		HashMap<String, Entry> snapshot = new HashMap<String, Entry>();
+		for (Map.Entry<String, Entry> entry : entryMap.entrySet()) {
+			snapshot.put(entry.getKey(), new Entry(entry.getValue()));
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Clears all statistics.
+	 */
+	public synchronized void reset() {
+		entryMap.clear();
+		pauseCount = 0;
+	}
+
+	/**
+	 * Returns current statistics in human readable form, one Request class per
+	 * line.
+	 */
+	@Override
+	public synchronized String toString() {
+		StringBuilder out = new StringBuilder();
+		out.append("paused=").append(pauseCount).append('\n');
+		for (Map.Entry<String, Entry> entry : new TreeMap<String, Entry>(
+				entryMap).entrySet()) {
+			out.append(entry.getKey()).append(": ").append(entry.getValue())
+					.append('\n');
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Called once Request has been cancelled or removed from queue.
+	 */
+	synchronized void onCancelled(Request request) {
+		++getEntry(request).cancelCount;
+	}
+
+	/**
+	 * Called once RequestUI result has been delivered to UI thread.
+	 */
+	synchronized void onDelivered(Request request, long time) {
+		Entry entry = getEntry(request);
+		entry.deliveryTime.add(time - request.executeEndTime);
+		entry.totalTime.add(time - request.enqueueTime);
+	}
+
+	/**
+	 * Called once Request has been executed.
+	 */
+	synchronized void onExecuted(Request request) {
+		Entry entry = getEntry(request);
+		entry.queueTime.add(request.dequeueTime - request.enqueueTime);
+		entry.executeTime.add(request.executeEndTime
+				- request.executeStartTime);
+	}
+
+	/**
+	 * Called once Request has been dropped due to its deadline.
+	 */
+	synchronized void onExpired(Request request) {
+		++getEntry(request).expireCount;
+	}
+
+	/**
+	 * Called once a key has been paused.
+	 */
+	synchronized void onPaused() {
+		++pauseCount;
+	}
+
+	/**
+	 * Returns Entry for given Request, creates one if needed.
+	 */
+	private Entry getEntry(Request request) {
+		String name = request.getClass().getName();
+		Entry entry = entryMap.get(name);
+		if (entry == null) {
+			entry = new Entry();
+			entryMap.put(name, entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * Statistics for one Request class. Times are in milliseconds.
+	 */
+	public static final class Entry {
+		// Time from addRequest() until WorkerThread takes Request.
+		public final LatencyHistogram queueTime;
+		// Time spent executing Request on WorkerThread.
+		public final LatencyHistogram executeTime;
+		// Time from end of execution until executeUI() is called.
+		public final LatencyHistogram deliveryTime;
+		// Time from addRequest() until executeUI() is called.
+		public final LatencyHistogram totalTime;
+		// Number of Requests cancelled or removed from queue.
+		public int cancelCount;
+		// Number of Requests dropped due to deadline.
+		public int expireCount;
+
+		private Entry() {
+			queueTime = new LatencyHistogram();
+			executeTime = new LatencyHistogram();
+			deliveryTime = new LatencyHistogram();
+			totalTime = new LatencyHistogram();
+		}
+
+		private Entry(Entry entry) {
+			queueTime = new LatencyHistogram(entry.queueTime);
+			executeTime = new LatencyHistogram(entry.executeTime);
+			deliveryTime = new LatencyHistogram(entry.deliveryTime);
+			totalTime = new LatencyHistogram(entry.totalTime);
+			cancelCount = entry.cancelCount;
+			expireCount = entry.expireCount;
+		}
+
+		@Override
+		public String toString() {
+			return "queue[" + queueTime + "] execute[" + executeTime
+					+ "] delivery[" + deliveryTime + "] total[" + totalTime
+					+ "] cancelled=" + cancelCount + " expired=" + expireCount;
+		}
+	}
+
+}
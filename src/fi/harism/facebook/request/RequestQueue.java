@@ -1,91 +1,193 @@
 package fi.harism.facebook.request;
 
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.os.SystemClock;
 
 /**
  * RequestController provides a queue for handling Requests. Every
- * RequestController creates one WorkerThread which is used for executing one
- * Request asynchronously at time.
+ * RequestController creates a given number of WorkerThreads, each of them
+ * executing one Request asynchronously at time. Requests are handed to
+ * WorkerThreads in priority order.
+ * 
+ * Requests are stored into per key sub-queues, and sub-queues which are not
+ * paused are kept in a heap ordered by their first Request. Picking next
+ * Request, pausing and resuming a key are all O(log n) operations and paused
+ * Requests are never looked at while searching for next Request.
+ * 
+ * Adding a Request takes no locks. New Requests are placed into a concurrent
+ * inbox queue which is moved into sub-queues by WorkerThreads, or by any other
+ * method changing queue state, while holding keyQueueMap lock. Idle
+ * WorkerThreads register themselves before waiting, and a wake up signal is
+ * given only if there is a registered WorkerThread to receive it.
+ * 
+ * Requests with a deadline which has passed are dropped instead of being
+ * executed. Time Requests spend waiting in queue is recorded per priority.
+ * Timing of every Request is also reported to RequestMetrics.
+ * 
+ * Priority of queued Requests can be changed with setPriority(). Only
+ * sub-queues containing changed Requests are reordered.
+ * 
+ * Keys are compared with equals(), the same way sub-queues and paused keys
+ * are looked up.
  * 
  * @author harism
  */
 public final class RequestQueue {
 
-	private ArrayList<Object> pausedList = null;
-	// List of requests.
-	private ArrayList<Request> requestList = null;
-	// Currently processed request.
-	private Request currentRequest = null;
-	// WorkerThread for this RequestController instance.
-	private WorkerThread workerThread = null;
+	// Orders Requests by priority, and by order of addition within same
+	// priority.
+	private static final Comparator<Request> REQUEST_COMPARATOR = new Comparator<Request>() {
+		@Override
+		public int compare(Request r1, Request r2) {
+			if (r1.getPriority() != r2.getPriority()) {
+				return r1.getPriority() > r2.getPriority() ? -1 : 1;
+			}
+			return r1.sequence < r2.sequence ? -1
+					: (r1.sequence > r2.sequence ? 1 : 0);
+		}
+	};
+
+	// Keys which are paused.
+	private HashSet<Object> pausedKeys = null;
+	// Sub-queues for Requests by their key. Also used as lock for all queue
+	// state.
+	private HashMap<Object, KeyQueue> keyQueueMap = null;
+	// Heap of sub-queues which have Requests and are not paused.
+	private KeyQueueHeap runnableHeap = null;
+	// Requests added but not yet moved into sub-queues.
+	private ConcurrentLinkedQueue<Request> inbox = null;
+	// Sequence number for next Request added.
+	private AtomicLong nextSequence = null;
+	// Wake up signals for idle WorkerThreads.
+	private Semaphore wakeUps = null;
+	// Number of idle WorkerThreads no wake up signal has been given for.
+	private AtomicInteger idleCount = null;
+	// Number of Requests dropped due to deadline.
+	private int expiredCount = 0;
+	// Queue latencies of executed Requests by priority.
+	private HashMap<Integer, LatencyHistogram> queueLatencies = null;
+	// WorkerThreads for this RequestController instance.
+	private WorkerThread workerThreads[] = null;
+
+	/**
+	 * Constructor for RequestController with one WorkerThread.
+	 */
+	public RequestQueue() {
+		this(1);
+	}
 
 	/**
 	 * Constructor for RequestController.
 	 * 
-	 * @param activity
-	 *            Activity this controller is created for.
+	 * @param workerCount
+	 *            Number of WorkerThreads executing Requests.
 	 */
-	public RequestQueue() {
-		pausedList = new ArrayList<Object>();
-		requestList = new ArrayList<Request>();
-		workerThread = new WorkerThread();
-		workerThread.start();
+	public RequestQueue(int workerCount) {
+		pausedKeys = new HashSet<Object>();
+		keyQueueMap = new HashMap<Object, KeyQueue>();
+		runnableHeap = new KeyQueueHeap();
+		inbox = new ConcurrentLinkedQueue<Request>();
+		nextSequence = new AtomicLong();
+		queueLatencies = new HashMap<Integer, LatencyHistogram>();
+		wakeUps = new Semaphore(0);
+		idleCount = new AtomicInteger();
+		workerThreads = new WorkerThread[workerCount];
+		for (int i = 0; i < workerCount; ++i) {
+			workerThreads[i] = new WorkerThread();
+			workerThreads[i].start();
+		}
 	}
 
 	/**
 	 * Adds new Request object to queue and starts processing it if there are no
 	 * other Requests being ran at the time. Request is added to list of Request
 	 * based on its priority value. Priority should be set before calling this
-	 * method. Changing priority later does not have effect.
+	 * method. Changing priority later has effect only if it's done using
+	 * setPriority() of this class.
 	 * 
 	 * @param request
 	 *            Request object to be added to queue.
 	 */
 	public final void addRequest(Request request) {
-		int index = 0;
-		while (index < requestList.size()
-				&& requestList.get(index).getPriority() >= request
-						.getPriority()) {
-			++index;
-		}
-		requestList.add(index, request);
-		synchronized (requestList) {
-			requestList.notify();
-		}
+		request.enqueueTime = SystemClock.uptimeMillis();
+		request.sequence = nextSequence.getAndIncrement();
+		inbox.offer(request);
+		wakeUpIdle(1);
 	}
 
 	/**
 	 * Destroys all data related to this RequestController.
 	 */
 	public final void destroy() {
-		workerThread.destroyWorker();
-		workerThread = null;
-		// Send notification in case run() method is in wait state.
-		synchronized (requestList) {
-			requestList.notify();
-			requestList.clear();
-			requestList = null;
+		ArrayList<Request> current = new ArrayList<Request>();
+		synchronized (keyQueueMap) {
+			for (WorkerThread workerThread : workerThreads) {
+				workerThread.destroyWorker();
+				workerThread.takeRequest(null, current);
+			}
+			clearQueue();
 		}
-		// If there is a current Request, stop its execution at once.
-		if (currentRequest != null) {
-			currentRequest.cancel();
-			currentRequest = null;
+		// If there are current Requests, stop their execution at once.
+		cancelRequests(current);
+		// Wake up WorkerThreads in case they are idle.
+		wakeUps.release(workerThreads.length);
+	}
+
+	/**
+	 * Returns number of Requests dropped because their deadline passed before
+	 * they were executed.
+	 */
+	public final int getExpiredCount() {
+		synchronized (keyQueueMap) {
+			return expiredCount;
 		}
 	}
-	
+
 	/**
-	 * Removes all requests from this queue.
+	 * Returns a copy of queue latency histogram for Requests with given
+	 * priority. Latency is measured from addRequest() to the moment a
+	 * WorkerThread takes Request for execution.
+	 * 
+	 * @param priority
+	 *            Request priority.
+	 * @return Latency histogram, empty if no Requests with given priority have
+	 *         been executed.
 	 */
-	public final void removeRequests() {
-		synchronized (requestList) {
-			pausedList.clear();
-			requestList.clear();
+	public final LatencyHistogram getQueueLatency(int priority) {
+		synchronized (keyQueueMap) {
+			LatencyHistogram histogram = queueLatencies.get(priority);
+			if (histogram == null) {
+				return new LatencyHistogram();
+			}
+			return new LatencyHistogram(histogram);
 		}
-		// If there is a current Request, stop its execution at once.
-		if (currentRequest != null) {
-			currentRequest.cancel();
-			currentRequest = null;
+	}
+
+	/**
+	 * Removes all requests from this queue. Requests are removed quietly but
+	 * if there are ones being executed cancel() will be called on them.
+	 */
+	public final void removeRequests() {
+		ArrayList<Request> current = new ArrayList<Request>();
+		synchronized (keyQueueMap) {
+			clearQueue();
+			pausedKeys.clear();
+			for (WorkerThread workerThread : workerThreads) {
+				workerThread.takeRequest(null, current);
+			}
 		}
+		// If there are current Requests, stop their execution at once.
+		cancelRequests(current);
 	}
 
 	/**
@@ -95,22 +197,60 @@ public final class RequestQueue {
 	 * @param key
 	 */
 	public final void removeRequests(Object key) {
-		synchronized (requestList) {
-			for (int i = 0; i < requestList.size();) {
-				Request r = requestList.get(i);
-				if (r.getKey() == key) {
-					requestList.remove(i);
-				} else {
-					++i;
+		ArrayList<Request> current = new ArrayList<Request>();
+		synchronized (keyQueueMap) {
+			drainInbox();
+			KeyQueue keyQueue = keyQueueMap.remove(key);
+			if (keyQueue != null) {
+				runnableHeap.remove(keyQueue);
+				for (Request request : keyQueue.requests) {
+					RequestMetrics.getInstance().onCancelled(request);
 				}
 			}
-			// If there is a current Request, stop its execution at once.
-			if (currentRequest != null && currentRequest.getKey() == key) {
-				currentRequest.cancel();
-				currentRequest = null;
+			for (WorkerThread workerThread : workerThreads) {
+				workerThread.takeRequest(key, current);
+			}
+			pausedKeys.remove(key);
+		}
+		// If there are current Requests, stop their execution at once.
+		cancelRequests(current);
+	}
+
+	/**
+	 * Changes priority of queued Requests with given key. Requests being
+	 * executed are not affected.
+	 * 
+	 * @param key
+	 *            Key for Requests.
+	 * @param priority
+	 *            New priority value.
+	 */
+	public final void setPriority(Object key, int priority) {
+		synchronized (keyQueueMap) {
+			drainInbox();
+			KeyQueue keyQueue = keyQueueMap.get(key);
+			if (keyQueue != null) {
+				setPriority(keyQueue, null, priority);
+			}
+		}
+	}
+
+	/**
+	 * Changes priority of queued Requests accepted by given Filter. Requests
+	 * being executed are not affected. Filter is called while holding lock on
+	 * this queue and it should not call methods of this class.
+	 * 
+	 * @param filter
+	 *            Filter for choosing Requests.
+	 * @param priority
+	 *            New priority value.
+	 */
+	public final void setPriority(Filter filter, int priority) {
+		synchronized (keyQueueMap) {
+			drainInbox();
+			for (KeyQueue keyQueue : keyQueueMap.values()) {
+				setPriority(keyQueue, filter, priority);
 			}
-			pausedList.remove(key);
-			requestList.notify();
 		}
 	}
 
@@ -121,15 +261,278 @@ public final class RequestQueue {
 	 * @param paused
 	 */
 	public final void setPaused(Object key, boolean paused) {
-		if (paused == true) {
-			if (!pausedList.contains(key)) {
-				pausedList.add(key);
+		boolean resumed = false;
+		synchronized (keyQueueMap) {
+			drainInbox();
+			KeyQueue keyQueue = keyQueueMap.get(key);
+			if (paused == true) {
+				if (pausedKeys.add(key)) {
+					RequestMetrics.getInstance().onPaused();
+				}
+				if (keyQueue != null) {
+					runnableHeap.remove(keyQueue);
+				}
+			} else if (pausedKeys.remove(key) && keyQueue != null) {
+				runnableHeap.addOrUpdate(keyQueue);
+				resumed = true;
+			}
+		}
+		// Wake up WorkerThreads for resumed Requests.
+		if (resumed) {
+			wakeUpIdle(workerThreads.length);
+		}
+	}
+
+	/**
+	 * Gives wake up signal to at most given number of idle WorkerThreads.
+	 * Every signal given claims one idle WorkerThread, so signals do not pile
+	 * up while WorkerThreads are busy.
+	 */
+	private void wakeUpIdle(int count) {
+		for (int i = 0; i < count; ++i) {
+			int idle;
+			do {
+				idle = idleCount.get();
+				if (idle == 0) {
+					return;
+				}
+			} while (!idleCount.compareAndSet(idle, idle - 1));
+			wakeUps.release();
+		}
+	}
+
+	/**
+	 * Calls cancel() on given Requests being executed. Cancelling may abort
+	 * network connections, so this is never called while holding keyQueueMap
+	 * lock.
+	 */
+	private void cancelRequests(ArrayList<Request> requests) {
+		for (Request request : requests) {
+			request.cancel();
+			RequestMetrics.getInstance().onCancelled(request);
+		}
+	}
+
+	/**
+	 * Removes all queued Requests, counting them as cancelled. Must be called
+	 * while holding keyQueueMap lock.
+	 */
+	private void clearQueue() {
+		drainInbox();
+		for (KeyQueue keyQueue : keyQueueMap.values()) {
+			for (Request request : keyQueue.requests) {
+				RequestMetrics.getInstance().onCancelled(request);
+			}
+		}
+		keyQueueMap.clear();
+		runnableHeap.clear();
+	}
+
+	/**
+	 * Changes priority of Requests within given sub-queue and repositions
+	 * sub-queue within runnableHeap. Null filter accepts all Requests. Must be
+	 * called while holding keyQueueMap lock.
+	 */
+	private void setPriority(KeyQueue keyQueue, Filter filter, int priority) {
+		ArrayList<Request> changed = new ArrayList<Request>();
+		Iterator<Request> iter = keyQueue.requests.iterator();
+		while (iter.hasNext()) {
+			Request request = iter.next();
+			if (request.getPriority() != priority
+					&& (filter == null || filter.accept(request))) {
+				iter.remove();
+				changed.add(request);
+			}
+		}
+		if (!changed.isEmpty()) {
+			for (Request request : changed) {
+				request.setPriority(priority);
+				keyQueue.requests.add(request);
+			}
+			runnableHeap.update(keyQueue);
+		}
+	}
+
+	/**
+	 * Moves Requests from inbox into their sub-queues. Must be called while
+	 * holding keyQueueMap lock.
+	 */
+	private void drainInbox() {
+		Request request;
+		while ((request = inbox.poll()) != null) {
+			KeyQueue keyQueue = keyQueueMap.get(request.getKey());
+			if (keyQueue == null) {
+				keyQueue = new KeyQueue(request.getKey());
+				keyQueueMap.put(request.getKey(), keyQueue);
+			}
+			keyQueue.requests.add(request);
+			if (!pausedKeys.contains(request.getKey())) {
+				runnableHeap.addOrUpdate(keyQueue);
+			}
+		}
+	}
+
+	/**
+	 * Removes next Request to be executed from queue. Returns null if there
+	 * are no Requests which are not paused. Requests whose deadline has passed
+	 * are dropped on the way. Must be called while holding keyQueueMap lock.
+	 */
+	private Request pollRequest() {
+		drainInbox();
+		long time = SystemClock.uptimeMillis();
+		KeyQueue keyQueue;
+		while ((keyQueue = runnableHeap.peek()) != null) {
+			Request request = keyQueue.requests.poll();
+			if (keyQueue.requests.isEmpty()) {
+				runnableHeap.remove(keyQueue);
+				keyQueueMap.remove(keyQueue.key);
+			} else {
+				runnableHeap.addOrUpdate(keyQueue);
+			}
+			if (request.getDeadline() != 0 && request.getDeadline() < time) {
+				++expiredCount;
+				RequestMetrics.getInstance().onExpired(request);
+				continue;
 			}
-		} else {
-			pausedList.remove(key);
+			request.dequeueTime = time;
+			LatencyHistogram histogram = queueLatencies.get(request
+					.getPriority());
+			if (histogram == null) {
+				histogram = new LatencyHistogram();
+				queueLatencies.put(request.getPriority(), histogram);
+			}
+			histogram.add(time - request.enqueueTime);
+			return request;
 		}
-		synchronized (requestList) {
-			requestList.notify();
+		return null;
+	}
+
+	/**
+	 * Interface for choosing Requests.
+	 */
+	public interface Filter {
+		/**
+		 * Returns true if given Request is accepted.
+		 */
+		public boolean accept(Request request);
+	}
+
+	/**
+	 * Sub-queue for Requests with same key.
+	 */
+	private static final class KeyQueue {
+		// Key for Requests in this sub-queue.
+		public Object key;
+		// Requests in execution order.
+		public PriorityQueue<Request> requests;
+		// Index within KeyQueueHeap, -1 if not in heap.
+		public int heapIndex = -1;
+
+		public KeyQueue(Object key) {
+			this.key = key;
+			requests = new PriorityQueue<Request>(11, REQUEST_COMPARATOR);
+		}
+	}
+
+	/**
+	 * Binary heap of KeyQueues ordered by their first Request. KeyQueues
+	 * store their index within heap so they can be removed and repositioned
+	 * in O(log n) time.
+	 */
+	private static final class KeyQueueHeap {
+		private ArrayList<KeyQueue> heap = new ArrayList<KeyQueue>();
+
+		/**
+		 * Adds KeyQueue into heap, or repositions it if it's in heap already
+		 * and its first Request has changed.
+		 */
+		public void addOrUpdate(KeyQueue keyQueue) {
+			if (keyQueue.heapIndex == -1) {
+				keyQueue.heapIndex = heap.size();
+				heap.add(keyQueue);
+			}
+			siftDown(siftUp(keyQueue.heapIndex));
+		}
+
+		/**
+		 * Repositions KeyQueue if it's in heap.
+		 */
+		public void update(KeyQueue keyQueue) {
+			if (keyQueue.heapIndex != -1) {
+				siftDown(siftUp(keyQueue.heapIndex));
+			}
+		}
+
+		public void clear() {
+			for (KeyQueue keyQueue : heap) {
+				keyQueue.heapIndex = -1;
+			}
+			heap.clear();
+		}
+
+		public KeyQueue peek() {
+			return heap.isEmpty() ? null : heap.get(0);
+		}
+
+		/**
+		 * Removes given KeyQueue from heap if it's there.
+		 */
+		public void remove(KeyQueue keyQueue) {
+			int index = keyQueue.heapIndex;
+			if (index == -1) {
+				return;
+			}
+			keyQueue.heapIndex = -1;
+			KeyQueue last = heap.remove(heap.size() - 1);
+			if (index < heap.size()) {
+				set(index, last);
+				siftDown(siftUp(index));
+			}
+		}
+
+		private int compare(int i, int j) {
+			return REQUEST_COMPARATOR.compare(heap.get(i).requests.peek(),
+					heap.get(j).requests.peek());
+		}
+
+		private void set(int index, KeyQueue keyQueue) {
+			heap.set(index, keyQueue);
+			keyQueue.heapIndex = index;
+		}
+
+		private void swap(int i, int j) {
+			KeyQueue keyQueue = heap.get(i);
+			set(i, heap.get(j));
+			set(j, keyQueue);
+		}
+
+		private void siftDown(int index) {
+			while (true) {
+				int child = index * 2 + 1;
+				if (child >= heap.size()) {
+					return;
+				}
+				if (child + 1 < heap.size() && compare(child + 1, child) < 0) {
+					++child;
+				}
+				if (compare(child, index) >= 0) {
+					return;
+				}
+				swap(index, child);
+				index = child;
+			}
+		}
+
+		private int siftUp(int index) {
+			while (index > 0) {
+				int parent = (index - 1) / 2;
+				if (compare(index, parent) >= 0) {
+					break;
+				}
+				swap(index, parent);
+				index = parent;
+			}
+			return index;
 		}
 	}
 
@@ -138,7 +541,23 @@ public final class RequestQueue {
 	 */
 	private final class WorkerThread extends Thread {
 		// Boolean to indicate this worker should keep running.
-		private boolean keepRunning = true;
+		private volatile boolean keepRunning = true;
+		// Currently processed request, guarded by keyQueueMap.
+		private Request currentRequest = null;
+
+		/**
+		 * Adds currently processed Request to given list, and releases it
+		 * from this worker, if there is one with key equal to given key. Null
+		 * key takes current Request regardless of its key. Caller is responsible for
+		 * cancelling it. Must be called while holding keyQueueMap lock.
+		 */
+		public void takeRequest(Object key, ArrayList<Request> out) {
+			if (currentRequest != null
+					&& (key == null || key.equals(currentRequest.getKey()))) {
+				out.add(currentRequest);
+				currentRequest = null;
+			}
+		}
 
 		/**
 		 * Destroys this worker. Execution of run() will be ended as soon as
@@ -150,44 +569,64 @@ public final class RequestQueue {
 			keepRunning = false;
 		}
 
+		/**
+		 * Takes next Request for execution and makes it current Request.
+		 * Returns null if there is none.
+		 */
+		private Request nextRequest() {
+			synchronized (keyQueueMap) {
+				currentRequest = keepRunning ? pollRequest() : null;
+				return currentRequest;
+			}
+		}
+
 		@Override
 		public void run() {
 			// Lets keep looping until keepRunning is set to false.
 			while (keepRunning) {
-				synchronized (requestList) {
-					// Let's idle here while isPaused is set, or requestList is
-					// empty. We are expecting a notification being sent to us
-					// once there is a change in execution state.
-					while (keepRunning && requestList.isEmpty()) {
-						try {
-							// Wait until someone calls notify on requestList.
-							requestList.wait();
-						} catch (Exception ex) {
-						}
+				Request request = nextRequest();
+				if (request == null) {
+					// Register as idle before checking once more, so that a
+					// Request added meanwhile either is found here or wakes
+					// us up.
+					idleCount.incrementAndGet();
+					request = nextRequest();
+					if (request == null) {
+						// Let's idle here while there are no Requests which
+						// are not paused. We are expecting a wake up signal
+						// once there is a change in execution state.
+						wakeUps.acquireUninterruptibly();
+						continue;
 					}
-					// If keepRunning is true there should be a request
-					// available for processing.
-					if (keepRunning) {
-						for (int i = 0; i < requestList.size(); ++i) {
-							Request r = requestList.get(i);
-							if (!pausedList.contains(r.getKey())) {
-								currentRequest = requestList.remove(i);
-								break;
-							}
-						}
+					// Unregister, or consume wake up signal if it has been
+					// given for us already.
+					int idle;
+					do {
+						idle = idleCount.get();
+					} while (idle > 0 && !idleCount.compareAndSet(idle, idle - 1));
+					if (idle == 0) {
+						wakeUps.acquireUninterruptibly();
 					}
 				}
-				// Lets check keepRunning again, and if it's set currentRequest
-				// should contain next Request for processing.
-				if (keepRunning && currentRequest != null) {
-					// execute() returns only after Request has been processed
-					// totally. This is the reason we have to call execute()
-					// separately from previous synchronized block.
-					// TODO: Try to figure out rationale for this requirement.
-					// It's tempting to have these two lines moved inside
-					// previous if block.
-					currentRequest.run();
-					currentRequest = null;
+				// Lets check keepRunning again, and if it's set request
+				// should be processed.
+				if (keepRunning) {
+					// run() returns only after Request has been processed
+					// totally. This is the reason we have to call it
+					// separately from previous synchronized block, other
+					// WorkerThreads need keyQueueMap meanwhile.
+					request.executeStartTime = SystemClock.uptimeMillis();
+					request.executeEndTime = 0;
+					request.run();
+					// RequestUI sets end time itself before delivering its
+					// result to UI thread.
+					if (request.executeEndTime == 0) {
+						request.executeEndTime = SystemClock.uptimeMillis();
+					}
+					RequestMetrics.getInstance().onExecuted(request);
+					synchronized (keyQueueMap) {
+						currentRequest = null;
+					}
 				}
 			}
 		}
@@ -1,33 +1,39 @@
 package fi.harism.facebook.request;
 
-import android.app.Activity;
+import android.os.SystemClock;
+import fi.harism.facebook.util.CancelSignal;
 
 /**
  * Helper class which splits Request into two methods. execute() is called from
- * separate thread, and executeUI from UI thread.
+ * separate thread, and executeUI from UI thread. Calls to executeUI are
+ * delivered in batches using UIDispatcher.
+ * 
+ * While execute() is running, a CancelSignal is current for the calling
+ * thread. Blocking network operations register with it and cancel() aborts
+ * them, so a cancelled Request releases its WorkerThread promptly.
+ * 
+ * Results completed by another thread after execute() has returned, e.g. by
+ * an image load coalesced with another Request, are delivered with postUI().
  * 
  * @author harism
  */
 public abstract class RequestUI extends Request {
 
-	private Activity activity;
-	private boolean isCancelled = false;
+	// Signal set cancelled once cancel() is called.
+	private CancelSignal cancelSignal = new CancelSignal();
 
 	/**
 	 * 
 	 * @param key
 	 *            Key for identifying this Request.
-	 * @param activity
-	 *            Activity to execute runOnUiThread() on.
 	 */
-	public RequestUI(Object key, Activity activity) {
+	public RequestUI(Object key) {
 		super(key);
-		this.activity = activity;
 	}
 
 	@Override
 	public final void cancel() {
-		isCancelled = true;
+		cancelSignal.cancel();
 	}
 
 	/**
@@ -38,7 +44,8 @@ public abstract class RequestUI extends Request {
 
 	/**
 	 * This method is called always from UI thread. Implement this to update UI.
-	 * Exception is null, or one thrown from execute() method.
+	 * Exception is null, or one thrown from execute() method. It's called once
+	 * after execute(), and once more for every postUI() call.
 	 */
 	public abstract void executeUI(Exception ex);
 
@@ -48,19 +55,35 @@ public abstract class RequestUI extends Request {
 	 * @return
 	 */
 	public boolean isCancelled() {
-		return isCancelled;
+		return cancelSignal.isCancelled();
+	}
+
+	/**
+	 * Posts another executeUI() call with given Exception. This method can
+	 * be called from any thread. Cancelled Requests receive no calls.
+	 * 
+	 * @param ex
+	 *            Exception for executeUI(), or null.
+	 */
+	public final void postUI(Exception ex) {
+		if (!isCancelled()) {
+			UIDispatcher.getInstance().post(new RunnableUI(ex, false));
+		}
 	}
 
 	@Override
 	public final void run() {
-		if (!isCancelled) {
+		if (!isCancelled()) {
 			Exception ex = null;
+			CancelSignal.setCurrent(cancelSignal);
 			try {
 				execute();
 			} catch (Exception e) {
 				ex = e;
 			} finally {
-				activity.runOnUiThread(new RunnableUI(ex));
+				CancelSignal.setCurrent(null);
+				executeEndTime = SystemClock.uptimeMillis();
+				UIDispatcher.getInstance().post(new RunnableUI(ex, true));
 			}
 		}
 	}
@@ -73,14 +96,21 @@ public abstract class RequestUI extends Request {
 	private class RunnableUI implements Runnable {
 
 		private Exception mEx;
+		// True for recording delivery into RequestMetrics.
+		private boolean mRecord;
 
-		public RunnableUI(Exception ex) {
+		public RunnableUI(Exception ex, boolean record) {
 			mEx = ex;
+			mRecord = record;
 		}
 
 		@Override
 		public void run() {
-			if (!isCancelled) {
+			if (!isCancelled()) {
+				if (mRecord) {
+					RequestMetrics.getInstance().onDelivered(RequestUI.this,
+							SystemClock.uptimeMillis());
+				}
 				executeUI(mEx);
 			}
 		}
@@ -0,0 +1,129 @@
+package fi.harism.facebook.request;
+
+import java.util.LinkedList;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * Dispatcher for delivering RequestUI results to UI thread in batches. Instead
+ * of posting one message per finished Request, results are collected into a
+ * queue which is processed within one UI thread message. If processing takes
+ * longer than FRAME_BUDGET, rest of the queue is left for next message so
+ * that UI thread gets to draw in between.
+ * 
+ * @author harism
+ */
+public final class UIDispatcher implements Runnable {
+
+	// Maximum time in milliseconds spent per UI thread message.
+	private static final long FRAME_BUDGET = 8;
+	// Application wide instance.
+	private static UIDispatcher instance = null;
+
+	// Handler for UI thread.
+	private Handler handler;
+	// Runnables waiting for execution, guarded by this.
+	private LinkedList<Runnable> pending;
+	// True if there is a message posted to handler already.
+	private boolean scheduled;
+	// Number of batches processed.
+	private int batchCount;
+	// Number of Runnables executed.
+	private int callbackCount;
+	// Largest number of Runnables executed within one batch.
+	private int maxBatchSize;
+	// Time spent per batch.
+	private LatencyHistogram batchTimes;
+
+	/**
+	 * Returns application wide UIDispatcher instance.
+	 */
+	public static synchronized UIDispatcher getInstance() {
+		if (instance == null) {
+			instance = new UIDispatcher();
+		}
+		return instance;
+	}
+
+	private UIDispatcher() {
+		handler = new Handler(Looper.getMainLooper());
+		pending = new LinkedList<Runnable>();
+		batchTimes = new LatencyHistogram();
+	}
+
+	/**
+	 * Returns number of batches processed.
+	 */
+	public synchronized int getBatchCount() {
+		return batchCount;
+	}
+
+	/**
+	 * Returns a copy of histogram for time spent per batch in milliseconds.
+	 */
+	public LatencyHistogram getBatchTimes() {
+		return new LatencyHistogram(batchTimes);
+	}
+
+	/**
+	 * Returns number of Runnables executed.
+	 */
+	public synchronized int getCallbackCount() {
+		return callbackCount;
+	}
+
+	/**
+	 * Returns largest number of Runnables executed within one batch.
+	 */
+	public synchronized int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	/**
+	 * Adds Runnable to be executed on UI thread with next batch. This method
+	 * can be called from any thread.
+	 * 
+	 * @param runnable
+	 *            Runnable to be executed.
+	 */
+	public synchronized void post(Runnable runnable) {
+		pending.add(runnable);
+		if (!scheduled) {
+			scheduled = true;
+			handler.post(this);
+		}
+	}
+
+	@Override
+	public void run() {
+		long startTime = SystemClock.uptimeMillis();
+		int count = 0;
+		while (true) {
+			Runnable runnable;
+			synchronized (this) {
+				if (pending.isEmpty()) {
+					scheduled = false;
+					break;
+				}
+				// Leave rest for next message if we are out of time.
+				if (count > 0
+						&& SystemClock.uptimeMillis() - startTime >= FRAME_BUDGET) {
+					handler.post(this);
+					break;
+				}
+				runnable = pending.removeFirst();
+			}
+			runnable.run();
+			++count;
+		}
+		batchTimes.add(SystemClock.uptimeMillis() - startTime);
+		synchronized (this) {
+			++batchCount;
+			callbackCount += count;
+			maxBatchSize = Math.max(maxBatchSize, count);
+		}
+	}
+
+}
@@ -0,0 +1,126 @@
+package fi.harism.facebook.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import android.graphics.Bitmap;
+
+/**
+ * Memory based cache for decoded Bitmaps. Bitmaps are stored into an access
+ * ordered LinkedHashMap using String as key and cache size is counted in pixel
+ * bytes. Least recently used Bitmaps are evicted once cache size exceeds given
+ * maximum.
+ * 
+ * BitmapCache is thread safe and it keeps count of cache hits and misses.
+ * 
+ * @author harism
+ */
+public class BitmapCache {
+
+	// Our Bitmap storage, iteration order is from least to most recently used.
+	private LinkedHashMap<String, Bitmap> cacheMap;
+	// Current size of cache in pixel bytes.
+	private int cacheSize;
+	// Maximum size of cache in pixel bytes.
+	private int cacheMaxSize;
+	// Number of getBitmap() calls which found a Bitmap.
+	private int hitCount;
+	// Number of getBitmap() calls which did not find a Bitmap.
+	private int missCount;
+	// Number of Bitmaps stored.
+	private int putCount;
+
+	/**
+	 * Default constructor.
+	 */
+	public BitmapCache(int cacheMaxSize) {
+		cacheMap = new LinkedHashMap<String, Bitmap>(16, 0.75f, true);
+		this.cacheMaxSize = cacheMaxSize;
+		cacheSize = 0;
+	}
+
+	/**
+	 * Returns Bitmap with given key, or null if there is no Bitmap stored with
+	 * one.
+	 * 
+	 * @param key
+	 *            Key for Bitmap.
+	 * @return Stored Bitmap or null if none found.
+	 */
+	public synchronized Bitmap getBitmap(String key) {
+		Bitmap bitmap = cacheMap.get(key);
+		if (bitmap != null) {
+			++hitCount;
+		} else {
+			++missCount;
+		}
+		return bitmap;
+	}
+
+	/**
+	 * Returns number of getBitmap() calls which found a Bitmap.
+	 */
+	public synchronized int getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * Returns number of getBitmap() calls which did not find a Bitmap.
+	 */
+	public synchronized int getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Returns number of Bitmaps stored into this cache. As Bitmaps are stored
+	 * once they are decoded, this equals to number of decodes done.
+	 */
+	public synchronized int getPutCount() {
+		return putCount;
+	}
+
+	/**
+	 * Returns current size of cached Bitmaps in pixel bytes.
+	 */
+	public synchronized int getSize() {
+		return cacheSize;
+	}
+
+	/**
+	 * Stores given Bitmap using given key.
+	 * 
+	 * @param key
+	 *            Key for Bitmap.
+	 * @param bitmap
+	 *            Bitmap to be stored.
+	 */
+	public synchronized void setBitmap(String key, Bitmap bitmap) {
+		++putCount;
+		// Remove previous Bitmap with same key, if any.
+		Bitmap oldBitmap = cacheMap.remove(key);
+		if (oldBitmap != null) {
+			cacheSize -= getSize(oldBitmap);
+		}
+		int size = getSize(bitmap);
+		// If there is room to store Bitmap at all.
+		if (size <= cacheMaxSize) {
+			// Remove 'oldest' Bitmaps until there is room for new one.
+			Iterator<Bitmap> iter = cacheMap.values().iterator();
+			while (cacheSize + size > cacheMaxSize) {
+				cacheSize -= getSize(iter.next());
+				iter.remove();
+			}
+			// Update cacheSize and add Bitmap on top of cacheMap.
+			cacheSize += size;
+			cacheMap.put(key, bitmap);
+		}
+	}
+
+	/**
+	 * Returns size of given Bitmap in pixel bytes.
+	 */
+	private static int getSize(Bitmap bitmap) {
+		return bitmap.getRowBytes() * bitmap.getHeight();
+	}
+
+}
@@ -8,26 +8,40 @@ import android.graphics.PorterDuff.Mode;
 import android.graphics.PorterDuffXfermode;
 import android.graphics.Rect;
 import android.graphics.RectF;
+import android.graphics.Xfermode;
 
 public class BitmapUtils {
 
+	// Drawing objects for roundBitmap(), one set per thread.
+	private static final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch();
+		}
+	};
+
 	public static final Bitmap roundBitmap(Bitmap bitmap, float radiusPx) {
 		Bitmap roundedBitmap = Bitmap.createBitmap(bitmap.getWidth(),
 				bitmap.getHeight(), Config.ARGB_8888);
-		Canvas canvas = new Canvas(roundedBitmap);
 
 		final int colorFg = 0xFFFFFFFF;
 		final int colorBg = 0x00000000;
-		final Paint paint = new Paint();
-		final Rect rect = new Rect(0, 0, bitmap.getWidth(), bitmap.getHeight());
-		final RectF rectF = new RectF(rect);
+		final Scratch current = scratch.get();
+		final Canvas canvas = current.canvas;
+		final Paint paint = current.paint;
+		final Rect rect = current.rect;
+		final RectF rectF = current.rectF;
+
+		canvas.setBitmap(roundedBitmap);
+		rect.set(0, 0, bitmap.getWidth(), bitmap.getHeight());
+		rectF.set(rect);
 
-		paint.setAntiAlias(true);
 		canvas.drawColor(colorBg);
+		paint.setXfermode(null);
 		paint.setColor(colorFg);
 		canvas.drawRoundRect(rectF, radiusPx, radiusPx, paint);
 
-		paint.setXfermode(new PorterDuffXfermode(Mode.SRC_IN));
+		paint.setXfermode(current.xfermode);
 		canvas.drawBitmap(bitmap, rect, rect, paint);
 
 		return roundedBitmap;
@@ -38,4 +52,20 @@ public class BitmapUtils {
 		return Bitmap.createScaledBitmap(bitmap, width, height, true);
 	}
 
+	/**
+	 * Drawing objects reused by roundBitmap() on one thread. Canvas keeps a
+	 * reference to last rounded Bitmap until next call.
+	 */
+	private static final class Scratch {
+		public Canvas canvas = new Canvas();
+		public Paint paint = new Paint();
+		public Rect rect = new Rect();
+		public RectF rectF = new RectF();
+		public Xfermode xfermode = new PorterDuffXfermode(Mode.SRC_IN);
+
+		public Scratch() {
+			paint.setAntiAlias(true);
+		}
+	}
+
 }
@@ -0,0 +1,75 @@
+package fi.harism.facebook.util;
+
+import java.util.LinkedList;
+
+/**
+ * Pool of reusable byte arrays. Buffers are handed out with getBuffer() and
+ * should be returned with returnBuffer() once they are not used anymore.
+ * Returned buffers are kept for reuse until their total size exceeds given
+ * maximum, after which smallest buffers are dropped.
+ * 
+ * ByteArrayPool is thread safe.
+ * 
+ * @author harism
+ */
+public class ByteArrayPool {
+
+	// Pooled buffers sorted by length, smallest first.
+	private LinkedList<byte[]> bufferList;
+	// Current size of pooled buffers.
+	private int poolSize;
+	// Maximum size of pooled buffers in bytes.
+	private int poolMaxSize;
+
+	/**
+	 * Default constructor.
+	 */
+	public ByteArrayPool(int poolMaxSize) {
+		bufferList = new LinkedList<byte[]>();
+		this.poolMaxSize = poolMaxSize;
+		poolSize = 0;
+	}
+
+	/**
+	 * Returns a buffer with at least given length. Pooled buffer is used if
+	 * there is one large enough, otherwise new buffer is allocated.
+	 * 
+	 * @param minLength
+	 *            Minimum length for buffer.
+	 * @return Buffer with length of at least minLength.
+	 */
+	public synchronized byte[] getBuffer(int minLength) {
+		for (byte[] buffer : bufferList) {
+			if (buffer.length >= minLength) {
+				bufferList.remove(buffer);
+				poolSize -= buffer.length;
+				return buffer;
+			}
+		}
+		return new byte[minLength];
+	}
+
+	/**
+	 * Returns buffer back to pool.
+	 * 
+	 * @param buffer
+	 *            Buffer received from getBuffer().
+	 */
+	public synchronized void returnBuffer(byte[] buffer) {
+		if (buffer == null || buffer.length > poolMaxSize) {
+			return;
+		}
+		int index = 0;
+		while (index < bufferList.size()
+				&& bufferList.get(index).length < buffer.length) {
+			++index;
+		}
+		bufferList.add(index, buffer);
+		poolSize += buffer.length;
+		// Drop smallest buffers until we are within poolMaxSize.
+		while (poolSize > poolMaxSize) {
+			poolSize -= bufferList.removeFirst().length;
+		}
+	}
+
+}
@@ -0,0 +1,168 @@
+package fi.harism.facebook.util;
+
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URLConnection;
+import java.util.ArrayList;
+
+/**
+ * Cancellation signal shared between code requesting cancellation and code
+ * doing blocking work. Signal is made current for a thread with setCurrent(),
+ * after which blocking operations on that thread register Cancellables which
+ * abort them, e.g. by closing a network connection, once cancel() is called.
+ * 
+ * Code doing blocking work does not need to know about the signal itself, it
+ * uses static register() and unregister() which do nothing if there is no
+ * current signal for calling thread.
+ * 
+ * @author harism
+ */
+public final class CancelSignal {
+
+	// Signal for each thread, null if there is none.
+	private static final ThreadLocal<CancelSignal> current = new ThreadLocal<CancelSignal>();
+
+	// True once cancel() has been called.
+	private boolean cancelled;
+	// Cancellables for operations currently in progress.
+	private ArrayList<Cancellable> cancellables;
+
+	/**
+	 * Returns signal for calling thread, or null if there is none.
+	 */
+	public static CancelSignal getCurrent() {
+		return current.get();
+	}
+
+	/**
+	 * Returns true if calling thread has a signal which has been cancelled.
+	 */
+	public static boolean isCurrentCancelled() {
+		CancelSignal signal = current.get();
+		return signal != null && signal.isCancelled();
+	}
+
+	/**
+	 * Registers Cancellable with signal of calling thread. Cancellable should
+	 * be unregistered once the operation it aborts has finished.
+	 * 
+	 * @param cancellable
+	 *            Cancellable to be called on cancel().
+	 * @throws InterruptedIOException
+	 *             If signal has been cancelled already.
+	 */
+	public static void register(Cancellable cancellable)
+			throws InterruptedIOException {
+		CancelSignal signal = current.get();
+		if (signal != null) {
+			signal.add(cancellable);
+		}
+	}
+
+	/**
+	 * Registers a Cancellable which disconnects given connection. Only
+	 * HttpURLConnections can be disconnected, for other connections this
+	 * method only checks if signal has been cancelled already.
+	 * 
+	 * @param connection
+	 *            Connection to be aborted on cancel().
+	 * @return Cancellable to be passed to unregister().
+	 * @throws InterruptedIOException
+	 *             If signal has been cancelled already.
+	 */
+	public static Cancellable register(final URLConnection connection)
+			throws InterruptedIOException {
+		Cancellable cancellable = new Cancellable() {
+			@Override
+			public void cancel() {
+				if (connection instanceof HttpURLConnection) {
+					((HttpURLConnection) connection).disconnect();
+				}
+			}
+		};
+		register(cancellable);
+		return cancellable;
+	}
+
+	/**
+	 * Sets signal for calling thread.
+	 * 
+	 * @param signal
+	 *            New signal, or null for none.
+	 */
+	public static void setCurrent(CancelSignal signal) {
+		if (signal == null) {
+			current.remove();
+		} else {
+			current.set(signal);
+		}
+	}
+
+	/**
+	 * Removes Cancellable from signal of calling thread.
+	 */
+	public static void unregister(Cancellable cancellable) {
+		CancelSignal signal = current.get();
+		if (signal != null) {
+			signal.remove(cancellable);
+		}
+	}
+
+	/**
+	 * Default constructor.
+	 */
+	public CancelSignal() {
+		cancellables = new ArrayList<Cancellable>();
+	}
+
+	/**
+	 * Marks this signal cancelled and aborts registered operations. Can be
+	 * called from any thread.
+	 */
+	public void cancel() {
+		ArrayList<Cancellable> aborted;
+		synchronized (this) {
+			if (cancelled) {
+				return;
+			}
+			cancelled = true;
+			aborted = cancellables;
+			cancellables = new ArrayList<Cancellable>();
+		}
+		// Cancellables are called without holding lock as they may need
+		// locks of their own which are held while checking isCancelled().
+		for (Cancellable cancellable : aborted) {
+			cancellable.cancel();
+		}
+	}
+
+	/**
+	 * Returns true if cancel() has been called.
+	 */
+	public synchronized boolean isCancelled() {
+		return cancelled;
+	}
+
+	private synchronized void add(Cancellable cancellable)
+			throws InterruptedIOException {
+		if (cancelled) {
+			throw new InterruptedIOException("Cancelled");
+		}
+		cancellables.add(cancellable);
+	}
+
+	private synchronized void remove(Cancellable cancellable) {
+		cancellables.remove(cancellable);
+	}
+
+	/**
+	 * Interface for aborting a blocking operation.
+	 */
+	public interface Cancellable {
+		/**
+		 * Aborts operation. Called from thread calling CancelSignal.cancel().
+		 */
+		public void cancel();
+	}
+
+}
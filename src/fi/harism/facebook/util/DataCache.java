@@ -1,19 +1,34 @@
 package fi.harism.facebook.util;
 
-import java.util.Vector;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Very simple memory based data cache. Data is stored as byte arrays into a
- * Vector of CacheItems using String as key.
+ * Very simple memory based data cache. Data is stored as byte arrays into
+ * access ordered LinkedHashMaps using String as key. Lookup, promotion and
+ * eviction of least recently used data are all constant time operations.
+ * 
+ * DataCache is thread safe. Keys are striped over segments, each with a map
+ * and a lock of its own, so UI thread and RequestQueue workers do not
+ * serialize on a single monitor. New data evicts least recently used data of
+ * its own segment first, and other segments only once its own segment has
+ * nothing else left, so eviction order is exact within a segment and
+ * approximate across them. Size is adjusted within segment locks, so it
+ * always matches stored data.
  * 
  * @author harism
  */
 public class DataCache {
 
-	// Our Bitmap storage.
-	private Vector<CacheItem> cacheList;
+	// Default number of segments, power of two.
+	private static final int SEGMENT_COUNT = 8;
+
+	// Our data storage.
+	private Segment segments[];
 	// Current size of cache;
-	private int cacheSize;
+	private AtomicInteger cacheSize;
 	// Maximum size of cache in bytes.
 	private int cacheMaxSize;
 
@@ -21,9 +36,29 @@ public class DataCache {
 	 * Default constructor.
 	 */
 	public DataCache(int cacheMaxSize) {
-		cacheList = new Vector<CacheItem>();
+		this(cacheMaxSize, SEGMENT_COUNT);
+	}
+
+	/**
+	 * Constructor for given number of segments. With one segment eviction
+	 * order is exact least recently used order.
+	 * 
+	 * @param cacheMaxSize
+	 *            Maximum size of cache in bytes.
+	 * @param segmentCount
+	 *            Number of segments, power of two.
+	 */
+	public DataCache(int cacheMaxSize, int segmentCount) {
+		if (segmentCount < 1 || (segmentCount & (segmentCount - 1)) != 0) {
+			throw new IllegalArgumentException("Invalid segment count "
+					+ segmentCount);
+		}
+		segments = new Segment[segmentCount];
+		for (int i = 0; i < segmentCount; ++i) {
+			segments[i] = new Segment();
+		}
+		cacheSize = new AtomicInteger();
 		this.cacheMaxSize = cacheMaxSize;
-		cacheSize = 0;
 	}
 
 	/**
@@ -34,7 +69,10 @@ public class DataCache {
 	 * @return True if data for given key exists, false otherwise.
 	 */
 	public boolean containsKey(String key) {
-		return findCacheItem(key) != null;
+		Segment segment = getSegment(key);
+		synchronized (segment) {
+			return segment.map.containsKey(key);
+		}
 	}
 
 	/**
@@ -46,14 +84,18 @@ public class DataCache {
 	 * @return Stored byte array or null if none found.
 	 */
 	public byte[] getData(String key) {
-		CacheItem cacheItem = findCacheItem(key);
-		if (cacheItem != null) {
-			// If we found CacheItem move it on top of cacheList.
-			cacheList.remove(cacheItem);
-			cacheList.add(cacheItem);
-			return cacheItem.data;
+		Segment segment = getSegment(key);
+		synchronized (segment) {
+			// Access ordered map moves found data on top of its segment.
+			return segment.map.get(key);
 		}
-		return null;
+	}
+
+	/**
+	 * Returns current size of cached data in bytes.
+	 */
+	public int getSize() {
+		return cacheSize.get();
 	}
 
 	/**
@@ -65,73 +107,64 @@ public class DataCache {
 	 *            Data to be stored.
 	 */
 	public void setData(String key, byte[] data) {
-		// First check if given key exists already.
-		CacheItem cacheItem = findCacheItem(key);
-		// If there is room to store data at all.
-		if (data.length <= cacheMaxSize) {
-			// If CacheItem was not found.
-			if (cacheItem == null) {
-				// Create new CacheItem.
-				cacheItem = new CacheItem();
-				cacheItem.key = key;
-				cacheItem.data = data;
-				// Remove CacheItems until there is room for new CacheItem.
-				while (cacheSize + data.length > cacheMaxSize) {
-					// Update cacheSize.
-					cacheSize -= cacheList.get(0).data.length;
-					// Remove CacheItem from cacheList.
-					cacheList.remove(0);
-				}
-				// Update cacheSize.
-				cacheSize += data.length;
-				// Add new CacheItem to cacheList.
-				cacheList.add(cacheItem);
+		int index = getSegmentIndex(key);
+		Segment segment = segments[index];
+		synchronized (segment) {
+			// Remove previous data with same key, if any.
+			byte[] oldData = segment.map.remove(key);
+			if (oldData != null) {
+				cacheSize.addAndGet(-oldData.length);
 			}
-			// We found existing CacheItem with same key.
-			else {
-				// Move CacheItem to top of cacheList.
-				cacheList.remove(cacheItem);
-				cacheList.add(cacheItem);
-				// Remove CacheItems until there is room for updated data size.
-				while (cacheSize + data.length - cacheItem.data.length > cacheMaxSize) {
-					// Update cacheSize and remove 'oldest' CacheItem.
-					cacheSize -= cacheList.get(0).data.length;
-					cacheList.remove(0);
+			// If there is no room to store data at all.
+			if (data.length > cacheMaxSize) {
+				return;
+			}
+			segment.map.put(key, data);
+			cacheSize.addAndGet(data.length);
+			// Remove 'oldest' data of this segment, new data excluded.
+			Iterator<byte[]> iter = segment.map.values().iterator();
+			while (cacheSize.get() > cacheMaxSize
+					&& segment.map.size() > 1) {
+				cacheSize.addAndGet(-iter.next().length);
+				iter.remove();
+			}
+		}
+		// Remove 'oldest' data of other segments, one segment at a time.
+		for (int i = 1; i < segments.length
+				&& cacheSize.get() > cacheMaxSize; ++i) {
+			Segment other = segments[(index + i) & (segments.length - 1)];
+			synchronized (other) {
+				Iterator<byte[]> iter = other.map.values().iterator();
+				while (cacheSize.get() > cacheMaxSize && iter.hasNext()) {
+					cacheSize.addAndGet(-iter.next().length);
+					iter.remove();
 				}
-				// Update cacheSize with new data length.
-				cacheSize += data.length - cacheItem.data.length;
-				cacheItem.data = data;
 			}
-		} else if (cacheItem != null) {
-			cacheSize -= cacheItem.data.length;
-			cacheList.remove(cacheItem);
 		}
 	}
 
+	private Segment getSegment(String key) {
+		return segments[getSegmentIndex(key)];
+	}
+
 	/**
-	 * Searches for CacheItem with given key. Returns it if one found or null
-	 * otherwise.
-	 * 
-	 * @param key
-	 *            Key for CacheItem.
-	 * @return CacheItem with given key or null if not found.
+	 * Returns segment index for given key. Hash is spread so that keys
+	 * differing in high bits only do not fall into same segment.
 	 */
-	private CacheItem findCacheItem(String key) {
-		for (int i = 0; i < cacheList.size(); ++i) {
-			CacheItem cacheItem = cacheList.get(i);
-			if (cacheItem.key.equals(key)) {
-				return cacheItem;
-			}
-		}
-		return null;
+	private int getSegmentIndex(String key) {
+		int hash = key.hashCode();
+		hash ^= (hash >>> 20) ^ (hash >>> 12);
+		hash ^= (hash >>> 7) ^ (hash >>> 4);
+		return hash & (segments.length - 1);
 	}
 
 	/**
-	 * Private CacheItem class for storing key and cache data.
+	 * Access ordered map of one segment, guarded by segment itself.
 	 */
-	private static final class CacheItem {
-		public String key;
-		public byte[] data;
+	private static final class Segment {
+		// Iteration order is from least to most recently used.
+		public Map<String, byte[]> map = new LinkedHashMap<String, byte[]>(
+				16, 0.75f, true);
 	}
 
 }
@@ -0,0 +1,385 @@
+package fi.harism.facebook.util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Simple file based data cache. Every data item is stored into a file of its
+ * own within given directory, file name being a hash of String key. Files are
+ * evicted in least recently used order once the size of cache exceeds given
+ * maximum. Access order survives application restarts as it is stored as file
+ * modification time. Data can be read and written as streams too, without
+ * holding all of it in memory.
+ * 
+ * Methods of this class do file I/O and they should not be called from UI
+ * thread.
+ * 
+ * @author harism
+ */
+public class DiskCache {
+
+	// Directory for cache files.
+	private File cacheDir;
+	// Cache file lengths, iteration order is from least to most recently used.
+	private LinkedHashMap<String, Long> cacheMap;
+	// Current size of cache.
+	private long cacheSize;
+	// Maximum size of cache in bytes.
+	private long cacheMaxSize;
+
+	/**
+	 * Default constructor. Existing cache files are indexed once cache is
+	 * accessed for the first time.
+	 * 
+	 * @param cacheDir
+	 *            Directory for storing cache files.
+	 * @param cacheMaxSize
+	 *            Maximum size of cache in bytes.
+	 */
+	public DiskCache(File cacheDir, long cacheMaxSize) {
+		this.cacheDir = cacheDir;
+		this.cacheMaxSize = cacheMaxSize;
+		cacheSize = 0;
+	}
+
+	/**
+	 * Removes all data from this cache.
+	 */
+	public synchronized void clear() {
+		init();
+		for (String fileName : cacheMap.keySet()) {
+			new File(cacheDir, fileName).delete();
+		}
+		cacheMap.clear();
+		cacheSize = 0;
+	}
+
+	/**
+	 * Checker method for testing whether data with given key is stored.
+	 * 
+	 * @param key
+	 *            Key for data.
+	 * @return True if data for given key exists, false otherwise.
+	 */
+	public synchronized boolean containsKey(String key) {
+		init();
+		return cacheMap.containsKey(getFileName(key));
+	}
+
+	/**
+	 * Returns byte array with given key, or null if there is no data stored
+	 * with one or reading it fails.
+	 * 
+	 * @param key
+	 *            Key for data.
+	 * @return Stored byte array or null if none found.
+	 */
+	public synchronized byte[] getData(String key) {
+		init();
+		String fileName = getFileName(key);
+		Long length = cacheMap.get(fileName);
+		if (length == null) {
+			return null;
+		}
+		File file = new File(cacheDir, fileName);
+		try {
+			byte[] data = new byte[length.intValue()];
+			InputStream is = new FileInputStream(file);
+			try {
+				int offset = 0;
+				while (offset < data.length) {
+					int readLength = is.read(data, offset, data.length - offset);
+					if (readLength == -1) {
+						throw new IOException("Unexpected end of file.");
+					}
+					offset += readLength;
+				}
+			} finally {
+				is.close();
+			}
+			// Store access order for next application start.
+			file.setLastModified(System.currentTimeMillis());
+			return data;
+		} catch (IOException ex) {
+			// Drop broken file from cache.
+			removeFile(fileName);
+			return null;
+		}
+	}
+
+	/**
+	 * Returns stream for reading data with given key, or null if there is no
+	 * data stored with one. Stream should be closed once done. Data can be
+	 * replaced or evicted meanwhile, stream keeps on reading data it was
+	 * opened for.
+	 * 
+	 * @param key
+	 *            Key for data.
+	 * @return Stream for stored data or null if none found.
+	 */
+	public synchronized InputStream getInputStream(String key) {
+		init();
+		String fileName = getFileName(key);
+		if (cacheMap.get(fileName) == null) {
+			return null;
+		}
+		File file = new File(cacheDir, fileName);
+		try {
+			InputStream is = new FileInputStream(file);
+			// Store access order for next application start.
+			file.setLastModified(System.currentTimeMillis());
+			return is;
+		} catch (IOException ex) {
+			// Drop broken file from cache.
+			removeFile(fileName);
+			return null;
+		}
+	}
+
+	/**
+	 * Removes data with given key, if any.
+	 * 
+	 * @param key
+	 *            Key for data.
+	 */
+	public synchronized void remove(String key) {
+		init();
+		removeFile(getFileName(key));
+	}
+
+	/**
+	 * Returns Editor for storing data with given key as a stream. Data is
+	 * written into a temporary file of its own, and it replaces previous data
+	 * with same key once Editor is committed.
+	 * 
+	 * @param key
+	 *            Key for data.
+	 * @return Editor for writing data.
+	 * @throws IOException
+	 *             If temporary file can't be created.
+	 */
+	public Editor edit(String key) throws IOException {
+		synchronized (this) {
+			init();
+		}
+		String fileName = getFileName(key);
+		File tempFile = File.createTempFile(fileName, ".tmp", cacheDir);
+		return new Editor(fileName, tempFile);
+	}
+
+	/**
+	 * Stores given data using given key. Data is first written into a
+	 * temporary file which is renamed once writing succeeds.
+	 * 
+	 * @param key
+	 *            Key for data.
+	 * @param data
+	 *            Data to be stored.
+	 */
+	public void setData(String key, byte[] data) {
+		try {
+			Editor editor = edit(key);
+			editor.write(data, 0, data.length);
+			editor.commit();
+		} catch (IOException ex) {
+			// Caching is optional, ignore write errors.
+		}
+	}
+
+	/**
+	 * Converts key into file name.
+	 */
+	private String getFileName(String key) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("MD5");
+			byte hash[] = digest.digest(key.getBytes());
+			StringBuilder fileName = new StringBuilder();
+			for (byte b : hash) {
+				fileName.append(Integer.toHexString((b & 0xFF) | 0x100)
+						.substring(1));
+			}
+			return fileName.toString();
+		} catch (NoSuchAlgorithmException ex) {
+			return Integer.toHexString(key.hashCode());
+		}
+	}
+
+	/**
+	 * Indexes existing cache files if it hasn't been done yet. Files are added
+	 * to cacheMap in modification time order and leftover temporary files are
+	 * removed.
+	 */
+	private void init() {
+		if (cacheMap != null) {
+			return;
+		}
+		cacheMap = new LinkedHashMap<String, Long>(16, 0.75f, true);
+		cacheDir.mkdirs();
+		File files[] = cacheDir.listFiles();
+		if (files == null) {
+			return;
+		}
+		// Query modification times once, comparator would stat every file
+		// O(log n) times otherwise.
+		final HashMap<File, Long> modifiedMap = new HashMap<File, Long>();
+		for (File file : files) {
+			modifiedMap.put(file, file.lastModified());
+		}
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File file1, File file2) {
+				long diff = modifiedMap.get(file1) - modifiedMap.get(file2);
+				return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+			}
+		});
+		for (File file : files) {
+			if (file.getName().endsWith(".tmp")) {
+				file.delete();
+			} else {
+				long length = file.length();
+				cacheSize += length;
+				cacheMap.put(file.getName(), length);
+			}
+		}
+		// Budget might have been lowered since last run.
+		Iterator<Map.Entry<String, Long>> iter = cacheMap.entrySet()
+				.iterator();
+		while (cacheSize > cacheMaxSize) {
+			Map.Entry<String, Long> entry = iter.next();
+			new File(cacheDir, entry.getKey()).delete();
+			cacheSize -= entry.getValue();
+			iter.remove();
+		}
+	}
+
+	/**
+	 * Replaces file with given name with given temporary file. Previous file
+	 * is removed even if temporary file is null or too large to be stored.
+	 */
+	private synchronized void storeFile(String fileName, File tempFile,
+			long length) {
+		// Remove previous data with same key, if any.
+		removeFile(fileName);
+		// If there is room to store data at all.
+		if (tempFile != null && length <= cacheMaxSize) {
+			// Remove 'oldest' files until there is room for new data.
+			Iterator<Map.Entry<String, Long>> iter = cacheMap.entrySet()
+					.iterator();
+			while (cacheSize + length > cacheMaxSize) {
+				Map.Entry<String, Long> entry = iter.next();
+				new File(cacheDir, entry.getKey()).delete();
+				cacheSize -= entry.getValue();
+				iter.remove();
+			}
+			if (tempFile.renameTo(new File(cacheDir, fileName))) {
+				cacheSize += length;
+				cacheMap.put(fileName, length);
+			}
+		}
+	}
+
+	/**
+	 * Removes file with given name from cache.
+	 */
+	private void removeFile(String fileName) {
+		Long length = cacheMap.remove(fileName);
+		if (length != null) {
+			new File(cacheDir, fileName).delete();
+			cacheSize -= length;
+		}
+	}
+
+	/**
+	 * Stream for storing data into cache. Write errors are not thrown, as
+	 * caching is optional, but they cause data to be discarded on commit.
+	 * Writing more data than cache can hold discards it too.
+	 */
+	public final class Editor extends OutputStream {
+
+		// Name of cache file for data.
+		private String fileName;
+		// File data is written into until commit.
+		private File tempFile;
+		// Stream for writing temporary file.
+		private OutputStream out;
+		// Number of bytes written.
+		private long length;
+		// Set once writing has failed or data has grown too large.
+		private boolean failed;
+
+		private Editor(String fileName, File tempFile) throws IOException {
+			this.fileName = fileName;
+			this.tempFile = tempFile;
+			out = new BufferedOutputStream(new FileOutputStream(tempFile));
+		}
+
+		/**
+		 * Discards written data. Previous data with same key is left as it
+		 * is.
+		 */
+		public void abort() {
+			failed = true;
+			closeOut();
+			tempFile.delete();
+		}
+
+		/**
+		 * Stores written data replacing previous data with same key. If
+		 * writing failed, previous data is removed only.
+		 */
+		public void commit() {
+			closeOut();
+			storeFile(fileName, failed ? null : tempFile, length);
+			tempFile.delete();
+		}
+
+		@Override
+		public void write(byte[] buffer, int offset, int count) {
+			if (failed) {
+				return;
+			}
+			length += count;
+			if (length > cacheMaxSize) {
+				failed = true;
+				closeOut();
+				return;
+			}
+			try {
+				out.write(buffer, offset, count);
+			} catch (IOException ex) {
+				failed = true;
+				closeOut();
+			}
+		}
+
+		@Override
+		public void write(int b) {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		/**
+		 * Closes temporary file, marks data as failed if it can't be flushed.
+		 */
+		private void closeOut() {
+			try {
+				out.close();
+			} catch (IOException ex) {
+				failed = true;
+			}
+		}
+	}
+
+}
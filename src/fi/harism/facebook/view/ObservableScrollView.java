@@ -0,0 +1,55 @@
+package fi.harism.facebook.view;
+
+import android.content.Context;
+import android.util.AttributeSet;
+import android.widget.ScrollView;
+
+/**
+ * ScrollView which notifies its Observer once it has been scrolled, as plain
+ * ScrollView has no scroll listener of its own.
+ * 
+ * @author harism
+ */
+public class ObservableScrollView extends ScrollView {
+
+	private Observer mObserver = null;
+
+	public ObservableScrollView(Context context) {
+		super(context);
+	}
+
+	public ObservableScrollView(Context context, AttributeSet attrs) {
+		super(context, attrs);
+	}
+
+	public ObservableScrollView(Context context, AttributeSet attrs,
+			int defStyle) {
+		super(context, attrs, defStyle);
+	}
+
+	/**
+	 * Sets Observer for scroll changes, or null for none.
+	 */
+	public void setObserver(Observer observer) {
+		mObserver = observer;
+	}
+
+	@Override
+	protected void onScrollChanged(int l, int t, int oldl, int oldt) {
+		super.onScrollChanged(l, t, oldl, oldt);
+		if (mObserver != null) {
+			mObserver.onScrollChanged(this);
+		}
+	}
+
+	/**
+	 * Observer for scroll changes.
+	 */
+	public interface Observer {
+		/**
+		 * Called from UI thread once view has been scrolled.
+		 */
+		public void onScrollChanged(ObservableScrollView view);
+	}
+
+}
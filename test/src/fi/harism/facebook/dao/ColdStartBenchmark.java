@@ -0,0 +1,85 @@
+package fi.harism.facebook.dao;
+
+import java.io.File;
+
+import fi.harism.facebook.net.FBClient;
+import fi.harism.facebook.net.GraphServer;
+import fi.harism.facebook.net.GzipBenchmark;
+
+/**
+ * JVM benchmark for time to content at application start. Every round
+ * creates a new FBClient, as GlobalStateImpl does at start, and loads
+ * "me/home" feed of 25 posts either from response cache written by previous
+ * run, or from a local GraphServer adding a fixed latency per response to
+ * stand for mobile network. Run with
+ * 
+ * java -cp bin-test fi.harism.facebook.dao.ColdStartBenchmark
+ * 
+ * @author harism
+ */
+public class ColdStartBenchmark {
+
+	// Latency added to every response in milliseconds.
+	private static final int NETWORK_LATENCY = 300;
+	private static final int ROUND_COUNT = 10;
+
+	public static void main(String args[]) throws Exception {
+		final String feed = GzipBenchmark.createFeed(25);
+		GraphServer server = new GraphServer(new GraphServer.Responder() {
+			@Override
+			public GraphServer.Response respond(GraphServer.Request request) {
+				try {
+					Thread.sleep(NETWORK_LATENCY);
+				} catch (InterruptedException ex) {
+				}
+				return new GraphServer.Response(200, feed, "\"1\"");
+			}
+		});
+		File cacheDir = File.createTempFile("coldstart", "");
+		cacheDir.delete();
+		try {
+			// First pass warms up JIT, second one is reported.
+			for (int pass = 0; pass < 2; ++pass) {
+				long networkTime = 0, cachedTime = 0;
+				for (int round = 0; round < ROUND_COUNT; ++round) {
+					// Start without cache, content comes from network.
+					long start = System.nanoTime();
+					FBClient client = createClient(cacheDir, server);
+					client.clearCache();
+					FBFeed fbFeed = new FBFeed(client, "me/home");
+					if (!fbFeed.loadCached()) {
+						fbFeed.load();
+					}
+					networkTime += System.nanoTime() - start;
+
+					// Start with cache written by previous start.
+					start = System.nanoTime();
+					client = createClient(cacheDir, server);
+					fbFeed = new FBFeed(client, "me/home");
+					if (!fbFeed.loadCached()) {
+						fbFeed.load();
+					}
+					cachedTime += System.nanoTime() - start;
+					if (fbFeed.getPosts().size() != 25) {
+						throw new IllegalStateException("Invalid feed");
+					}
+				}
+				if (pass == 1) {
+					System.out.println("time to content with "
+							+ NETWORK_LATENCY + "ms latency: network="
+							+ networkTime / ROUND_COUNT / 1000 + "us cache="
+							+ cachedTime / ROUND_COUNT / 1000 + "us");
+				}
+			}
+		} finally {
+			createClient(cacheDir, server).clearCache();
+			server.close();
+		}
+	}
+
+	private static FBClient createClient(File cacheDir, GraphServer server) {
+		return new FBClient(cacheDir, server.getBaseUrl(),
+				server.getBaseUrl() + "fql");
+	}
+
+}
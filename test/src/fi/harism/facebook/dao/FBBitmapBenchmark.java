@@ -0,0 +1,107 @@
+package fi.harism.facebook.dao;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+
+/**
+ * JVM benchmark for reading image downloads of unknown length. Original
+ * ByteArrayOutputStream copy loop is compared with FBBitmap.readPooled() for
+ * 2k, 8k and 32k images, arriving in network sized chunks. Reported are
+ * throughput and bytes allocated per image, latter if JVM can measure thread
+ * allocations. Run with
+ * 
+ * java -cp bin-test fi.harism.facebook.dao.FBBitmapBenchmark
+ * 
+ * @author harism
+ */
+public class FBBitmapBenchmark {
+
+	// Bytes returned per read() call, about one TCP segment.
+	private static final int CHUNK_SIZE = 1460;
+	private static final int ITERATION_COUNT = 20000;
+
+	public static void main(String args[]) throws IOException {
+		int imageSizes[] = { 2048, 8192, 32768 };
+		// First pass warms up JIT, second one is reported.
+		for (int pass = 0; pass < 2; ++pass) {
+			for (int imageSize : imageSizes) {
+				byte image[] = new byte[imageSize];
+				long streamTime = 0, pooledTime = 0;
+				long streamBytes = 0, pooledBytes = 0;
+				for (int round = 0; round < 2; ++round) {
+					boolean pooled = round == 1;
+					long bytes = getAllocatedBytes();
+					long start = System.nanoTime();
+					for (int i = 0; i < ITERATION_COUNT; ++i) {
+						InputStream is = new ChunkedInputStream(image);
+						byte data[] = pooled ? FBBitmap.readPooled(is)
+								: readStream(is);
+						if (data.length != imageSize) {
+							throw new IOException("Invalid length");
+						}
+					}
+					long time = (System.nanoTime() - start) / ITERATION_COUNT;
+					bytes = (getAllocatedBytes() - bytes) / ITERATION_COUNT;
+					if (pooled) {
+						pooledTime = time;
+						pooledBytes = bytes;
+					} else {
+						streamTime = time;
+						streamBytes = bytes;
+					}
+				}
+				if (pass == 1) {
+					System.out.println(imageSize + " bytes: stream="
+							+ streamTime + "ns " + streamBytes
+							+ "B/image pooled=" + pooledTime + "ns "
+							+ pooledBytes + "B/image");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns bytes allocated by current thread so far, or 0 if JVM does not
+	 * tell.
+	 */
+	private static long getAllocatedBytes() {
+		Object bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+	/**
+	 * Original read loop, copying 1k reads into a ByteArrayOutputStream.
+	 */
+	private static byte[] readStream(InputStream is) throws IOException {
+		ByteArrayOutputStream imageBuffer = new ByteArrayOutputStream();
+		int readLength;
+		byte buffer[] = new byte[1024];
+		while ((readLength = is.read(buffer)) != -1) {
+			imageBuffer.write(buffer, 0, readLength);
+		}
+		return imageBuffer.toByteArray();
+	}
+
+	/**
+	 * Stream returning at most CHUNK_SIZE bytes per read.
+	 */
+	private static final class ChunkedInputStream extends ByteArrayInputStream {
+
+		public ChunkedInputStream(byte[] buffer) {
+			super(buffer);
+		}
+
+		@Override
+		public synchronized int read(byte[] buffer, int offset, int length) {
+			return super.read(buffer, offset, Math.min(length, CHUNK_SIZE));
+		}
+	}
+
+}
@@ -0,0 +1,233 @@
+package fi.harism.facebook.dao;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import fi.harism.facebook.net.GraphServer;
+import fi.harism.facebook.net.HttpTransport;
+import fi.harism.facebook.util.BitmapCache;
+import fi.harism.facebook.util.DataCache;
+import fi.harism.facebook.util.DiskCache;
+import junit.framework.TestCase;
+
+/**
+ * Tests for FBBitmap decoding, caching and coalescing of loads. Test stubs
+ * decode images of form "IMG width height" into Bitmaps without pixels.
+ * 
+ * @author harism
+ */
+public class FBBitmapTest extends TestCase {
+
+	private static final String URL = "http://127.0.0.1/a_q.jpg";
+
+	private File cacheDir;
+	private BitmapCache bitmapCache;
+	private DataCache imageCache;
+	private DiskCache diskCache;
+	private HttpTransport httpTransport;
+	private FBBitmapLoads loads;
+	private GraphServer server;
+
+	@Override
+	protected void setUp() throws Exception {
+		cacheDir = File.createTempFile("fbbitmap", "");
+		cacheDir.delete();
+		bitmapCache = new BitmapCache(2048000);
+		imageCache = new DataCache(1024000);
+		diskCache = new DiskCache(cacheDir, 4096000);
+		httpTransport = new HttpTransport(2);
+		loads = new FBBitmapLoads();
+		BitmapFactory.reset();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (server != null) {
+			server.close();
+		}
+		diskCache.clear();
+		cacheDir.delete();
+	}
+
+	public void testDecodedBitmapIsCached() {
+		imageCache.setData(URL, BitmapFactory.createImage(50, 50));
+		Bitmap bitmap = createBitmap(URL, 0, 0, 0).getBitmap();
+		assertNotNull(bitmap);
+		// Another FBBitmap for same image finds decoded Bitmap.
+		assertSame(bitmap, createBitmap(URL, 0, 0, 0).getBitmap());
+		assertEquals(1, BitmapFactory.getDecodeCount());
+		assertEquals(1, bitmapCache.getPutCount());
+		// Rounded Bitmap is decoded and cached separately.
+		assertNotSame(bitmap, createBitmap(URL, 0, 0, 5).getBitmap());
+		assertEquals(2, BitmapFactory.getDecodeCount());
+	}
+
+	public void testDecodeIsSubsampledToRequestedSize() {
+		imageCache.setData(URL, BitmapFactory.createImage(400, 300));
+		Bitmap bitmap = createBitmap(URL, 50, 50, 0).getBitmap();
+		// Largest power of two keeping both sides at least 50 pixels.
+		assertEquals(100, bitmap.getWidth());
+		assertEquals(75, bitmap.getHeight());
+		// Full size image is never decoded, bounds pass excluded.
+		assertEquals(1, BitmapFactory.getDecodeCount());
+		assertEquals(100 * 75, BitmapFactory.getPeakDecodedPixels());
+	}
+
+	public void testSmallImageIsNotSubsampled() {
+		imageCache.setData(URL, BitmapFactory.createImage(40, 60));
+		Bitmap bitmap = createBitmap(URL, 50, 50, 0).getBitmap();
+		assertEquals(40, bitmap.getWidth());
+		assertEquals(60, bitmap.getHeight());
+	}
+
+	public void testPeakDecodedPixelsForFeed() {
+		// Feed shows 50x50 avatars, source pictures being up to 200x600.
+		int sizes[][] = { { 50, 50 }, { 100, 100 }, { 180, 540 },
+				{ 200, 600 } };
+		for (int i = 0; i < sizes.length; ++i) {
+			String url = URL + i;
+			imageCache.setData(url, BitmapFactory.createImage(sizes[i][0],
+					sizes[i][1]));
+			createBitmap(url, 50, 50, 5).getBitmap();
+		}
+		// 180x540 picture is decoded at 90x270, largest of all, instead of
+		// 200x600 one being decoded full size.
+		assertEquals(90 * 270, BitmapFactory.getPeakDecodedPixels());
+		assertEquals(sizes.length, BitmapFactory.getDecodeCount());
+	}
+
+	public void testConcurrentLoadsOfSameUrlAreCoalesced() throws Exception {
+		final CountDownLatch requested = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		server = new GraphServer(new GraphServer.Responder() {
+			@Override
+			public GraphServer.Response respond(GraphServer.Request request) {
+				requested.countDown();
+				await(release);
+				return new GraphServer.Response(200, "IMG 200 200", null);
+			}
+		});
+		final String url = server.getBaseUrl() + "a_q.jpg";
+		LoadThread first = new LoadThread(createBitmap(url, 50, 50, 0));
+		first.start();
+		assertTrue(requested.await(5, TimeUnit.SECONDS));
+
+		// Second load returns at once while first one is still in progress.
+		ResultObserver observer = new ResultObserver();
+		FBBitmap second = createBitmap(url, 100, 100, 5);
+		assertNull(second.load(observer));
+		assertEquals(1, loads.getCoalescedCount());
+		assertEquals(1, observer.done.getCount());
+
+		release.countDown();
+		first.join(5000);
+		assertNull(first.error);
+		assertEquals(50, first.bitmap.getWidth());
+		assertTrue(observer.done.await(5, TimeUnit.SECONDS));
+		assertNull(observer.error.get());
+		assertSame(second, observer.fbBitmap.get());
+		// Waiting FBBitmap decoded its own size on loading thread.
+		assertEquals(100, bitmapCache.getBitmap(
+				url + "#100x100#5.0").getWidth());
+		assertEquals(100, second.getBitmap().getWidth());
+		assertEquals(1, server.getRequests().size());
+	}
+
+	public void testFailedLoadIsDeliveredToWaiting() throws Exception {
+		final CountDownLatch requested = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		server = new GraphServer(new GraphServer.Responder() {
+			@Override
+			public GraphServer.Response respond(GraphServer.Request request) {
+				requested.countDown();
+				await(release);
+				return new GraphServer.Response(404, "", null);
+			}
+		});
+		final String url = server.getBaseUrl() + "a_q.jpg";
+		LoadThread first = new LoadThread(createBitmap(url, 0, 0, 0));
+		first.start();
+		assertTrue(requested.await(5, TimeUnit.SECONDS));
+
+		ResultObserver observer1 = new ResultObserver();
+		ResultObserver observer2 = new ResultObserver();
+		assertNull(createBitmap(url, 0, 0, 0).load(observer1));
+		assertNull(createBitmap(url, 0, 0, 0).load(observer2));
+
+		release.countDown();
+		first.join(5000);
+		assertTrue(first.error instanceof IOException);
+		// Waiting loads fail at once instead of retrying one by one.
+		assertTrue(observer1.done.await(5, TimeUnit.SECONDS));
+		assertTrue(observer2.done.await(5, TimeUnit.SECONDS));
+		assertSame(first.error, observer1.error.get());
+		assertSame(first.error, observer2.error.get());
+		assertEquals(1, server.getRequests().size());
+
+		// Next load of same url is not coalesced with failed one.
+		LoadThread retry = new LoadThread(createBitmap(url, 0, 0, 0));
+		retry.run();
+		assertTrue(retry.error instanceof IOException);
+		assertEquals(2, server.getRequests().size());
+		assertEquals(2, loads.getCoalescedCount());
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException ex) {
+		}
+	}
+
+	private FBBitmap createBitmap(String url, int width, int height,
+			float roundRadius) {
+		return new FBBitmap(bitmapCache, imageCache, diskCache, httpTransport,
+				loads, url, width, height, roundRadius);
+	}
+
+	/**
+	 * Thread calling FBBitmap.load(), which is expected not to coalesce.
+	 */
+	private static final class LoadThread extends Thread {
+
+		private FBBitmap fbBitmap;
+		public Bitmap bitmap;
+		public Exception error;
+
+		public LoadThread(FBBitmap fbBitmap) {
+			this.fbBitmap = fbBitmap;
+		}
+
+		@Override
+		public void run() {
+			try {
+				bitmap = fbBitmap.load(new ResultObserver());
+			} catch (Exception ex) {
+				error = ex;
+			}
+		}
+	}
+
+	/**
+	 * Observer storing result of coalesced load.
+	 */
+	private static final class ResultObserver implements FBBitmap.Observer {
+
+		public CountDownLatch done = new CountDownLatch(1);
+		public AtomicReference<FBBitmap> fbBitmap = new AtomicReference<FBBitmap>();
+		public AtomicReference<Exception> error = new AtomicReference<Exception>();
+
+		@Override
+		public void onLoaded(FBBitmap fbBitmap, Exception ex) {
+			this.fbBitmap.set(fbBitmap);
+			error.set(ex);
+			done.countDown();
+		}
+	}
+
+}
@@ -0,0 +1,84 @@
+package fi.harism.facebook.dao;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+import fi.harism.facebook.net.FBClient;
+import fi.harism.facebook.net.GraphServer;
+import fi.harism.facebook.net.GzipBenchmark;
+
+/**
+ * Tests for FBFeed loading, run against a local GraphServer.
+ * 
+ * @author harism
+ */
+public class FBFeedTest extends TestCase {
+
+	private File cacheDir;
+	private GraphServer server;
+	private FBClient client;
+	// Feed response body.
+	private volatile String body;
+
+	@Override
+	protected void setUp() throws Exception {
+		cacheDir = File.createTempFile("fbfeed", "");
+		cacheDir.delete();
+		server = new GraphServer(new GraphServer.Responder() {
+			@Override
+			public GraphServer.Response respond(GraphServer.Request request) {
+				String eTag = "\"" + Integer.toHexString(body.hashCode())
+						+ "\"";
+				if (eTag.equals(request.headers.get("if-none-match"))) {
+					return new GraphServer.Response(304, "", eTag);
+				}
+				return new GraphServer.Response(200, body, eTag);
+			}
+		});
+		client = new FBClient(cacheDir, server.getBaseUrl(),
+				server.getBaseUrl() + "fql");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		client.clearCache();
+		server.close();
+	}
+
+	/**
+	 * Fresh "me/home" is not revalidated by load(), but it is by refresh().
+	 */
+	public void testRefreshRevalidatesFreshFeed() throws Exception {
+		body = GzipBenchmark.createFeed(25);
+		FBFeed feed = new FBFeed(client, "me/home");
+		assertTrue(feed.load());
+		assertEquals(25, feed.getPosts().size());
+		assertFalse(feed.load());
+		assertEquals(1, server.getRequests().size());
+
+		assertFalse(feed.refresh());
+		assertEquals(2, server.getRequests().size());
+
+		body = GzipBenchmark.createFeed(10);
+		assertTrue(feed.refresh());
+		assertEquals(10, feed.getPosts().size());
+		assertEquals(3, server.getRequests().size());
+	}
+
+	/**
+	 * Cached feed is found by a new FBClient, as after application start.
+	 */
+	public void testCachedFeedSurvivesRestart() throws Exception {
+		body = GzipBenchmark.createFeed(25);
+		new FBFeed(client, "me/home").load();
+
+		FBClient restarted = new FBClient(cacheDir, server.getBaseUrl(),
+				server.getBaseUrl() + "fql");
+		FBFeed feed = new FBFeed(restarted, "me/home");
+		assertTrue(feed.loadCached());
+		assertEquals(25, feed.getPosts().size());
+		assertEquals("12345_0", feed.getPosts().get(0).getId());
+		assertEquals(1, server.getRequests().size());
+	}
+
+}
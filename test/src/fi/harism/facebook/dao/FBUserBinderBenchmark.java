@@ -0,0 +1,101 @@
+package fi.harism.facebook.dao;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import fi.harism.facebook.net.FQLParser;
+import fi.harism.facebook.net.FQLParserBenchmark;
+
+/**
+ * JVM benchmark for loading a 5000 row FQL user response into FBUsers.
+ * FBUserBinder is compared with parsing response into JSON presentation and
+ * updating users from it with FBUser.update(). Reported are time and bytes
+ * allocated per response, latter if JVM can measure thread allocations. Run
+ * with
+ * 
+ * java -cp bin-test fi.harism.facebook.dao.FBUserBinderBenchmark
+ * 
+ * @author harism
+ */
+public class FBUserBinderBenchmark {
+
+	private static final int ROW_COUNT = 5000;
+	private static final int ITERATION_COUNT = 20;
+
+	public static void main(String args[]) throws Exception {
+		byte xml[] = FQLParserBenchmark.createResponse(ROW_COUNT);
+		// First pass warms up JIT, second one is reported.
+		for (int pass = 0; pass < 2; ++pass) {
+			long jsonTime = 0, binderTime = 0;
+			long jsonBytes = 0, binderBytes = 0;
+			for (int round = 0; round < 2; ++round) {
+				boolean binder = round == 1;
+				long bytes = getAllocatedBytes();
+				long start = System.nanoTime();
+				for (int i = 0; i < ITERATION_COUNT; ++i) {
+					HashMap<String, FBUser> userMap = new HashMap<String, FBUser>();
+					if (binder) {
+						loadBinder(xml, userMap);
+					} else {
+						loadJSON(xml, userMap);
+					}
+					if (userMap.size() != ROW_COUNT) {
+						throw new IOException("Invalid user count");
+					}
+				}
+				long time = (System.nanoTime() - start) / ITERATION_COUNT;
+				bytes = (getAllocatedBytes() - bytes) / ITERATION_COUNT;
+				if (binder) {
+					binderTime = time;
+					binderBytes = bytes;
+				} else {
+					jsonTime = time;
+					jsonBytes = bytes;
+				}
+			}
+			if (pass == 1) {
+				System.out.println(ROW_COUNT + " rows (" + xml.length
+						+ " bytes): json+update=" + jsonTime / 1000000
+						+ "ms " + jsonBytes / 1024 + "kB binder="
+						+ binderTime / 1000000 + "ms " + binderBytes / 1024
+						+ "kB");
+			}
+		}
+	}
+
+	/**
+	 * Returns bytes allocated by current thread so far, or 0 if JVM does not
+	 * tell.
+	 */
+	private static long getAllocatedBytes() {
+		Object bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+	private static void loadBinder(byte[] xml, HashMap<String, FBUser> userMap)
+			throws Exception {
+		FQLParser.parse(new ByteArrayInputStream(xml), new FBUserBinder(
+				null, userMap));
+	}
+
+	private static void loadJSON(byte[] xml, HashMap<String, FBUser> userMap)
+			throws Exception {
+		JSONArray data = FQLParser.parse(new ByteArrayInputStream(xml))
+				.getJSONArray("data");
+		for (int i = 0; i < data.length(); ++i) {
+			JSONObject row = data.getJSONObject(i);
+			FBUser.getUser(null, userMap, row.getString("uid")).update(row,
+					FBUser.Level.FULL);
+		}
+	}
+
+}
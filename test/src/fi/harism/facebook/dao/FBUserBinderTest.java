@@ -0,0 +1,129 @@
+package fi.harism.facebook.dao;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+
+import org.json.JSONArray;
+
+import fi.harism.facebook.net.FQLParser;
+
+/**
+ * Tests that FBUserBinder and FBUser.update() leave users in same state for
+ * same FQL rows.
+ * 
+ * @author harism
+ */
+public class FBUserBinderTest extends TestCase {
+
+	private static final String HEAD = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+			+ "<fql_query_response"
+			+ " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\""
+			+ " list=\"true\">";
+	private static final String TAIL = "</fql_query_response>";
+
+	public void testFullRow() throws Exception {
+		FBUser user = assertSameUser("<user><uid>1</uid>"
+				+ "<name>User \u00e4</name>"
+				+ "<pic_square>http://127.0.0.1/1_q.jpg</pic_square>"
+				+ "<affiliations list=\"true\">"
+				+ "<affiliation><nid>1</nid><name>Aalto</name></affiliation>"
+				+ "<affiliation><nid>2</nid><name/></affiliation>"
+				+ "<affiliation><nid>3</nid><name>Nokia</name></affiliation>"
+				+ "</affiliations><birthday>May 1</birthday><sex>male</sex>"
+				+ "<hometown_location><city>Espoo</city>"
+				+ "<name>Espoo, Finland</name></hometown_location>"
+				+ "<current_location><city>Helsinki</city>"
+				+ "<name>Helsinki, Finland</name></current_location>"
+				+ "<status><message>Hello</message><time>1</time></status>"
+				+ "<website>http://127.0.0.1</website>"
+				+ "<email>user@example.com</email></user>");
+		assertEquals("User \u00e4", user.getName());
+		assertEquals(2, user.getAffiliations().size());
+		assertEquals("Nokia", user.getAffiliations().get(1));
+		assertEquals("Espoo, Finland", user.getHometown());
+		assertEquals("Helsinki, Finland", user.getLocation());
+		assertEquals("Hello", user.getStatus());
+		assertEquals("male", user.getGender());
+	}
+
+	public void testNullAndEmptyValues() throws Exception {
+		FBUser user = assertSameUser("<user><uid>1</uid><name>User</name>"
+				+ "<pic_square>http://127.0.0.1/1_q.jpg</pic_square>"
+				+ "<affiliations list=\"true\"/>"
+				+ "<birthday xsi:nil=\"true\"/><sex></sex>"
+				+ "<hometown_location xsi:nil=\"true\"/>"
+				+ "<current_location><city>Helsinki</city></current_location>"
+				+ "<status xsi:nil=\"true\"/><website/>"
+				+ "<email xsi:nil=\"true\"/></user>");
+		assertNull(user.getBirthday());
+		assertNull(user.getGender());
+		assertNull(user.getHometown());
+		assertNull(user.getLocation());
+		assertNull(user.getWebsite());
+		assertEquals(0, user.getAffiliations().size());
+	}
+
+	public void testUnknownFieldsAreIgnored() throws Exception {
+		FBUser user = assertSameUser("<user><uid>1</uid>"
+				+ "<locale>fi_FI</locale><name>User</name>"
+				+ "<education_history list=\"true\"><education_info>"
+				+ "<name>School</name><concentrations list=\"true\">"
+				+ "<concentration>Math</concentration></concentrations>"
+				+ "</education_info></education_history>"
+				+ "<hometown_location><name>Espoo</name></hometown_location>"
+				+ "<status><message>Hello</message><name>x</name></status>"
+				+ "</user>");
+		assertEquals("User", user.getName());
+		assertEquals("Espoo", user.getHometown());
+		assertEquals("Hello", user.getStatus());
+	}
+
+	/**
+	 * Previous status is cleared by a row without one on both paths.
+	 */
+	public void testStatusIsCleared() throws Exception {
+		FBUser user = assertSameUser("<user><uid>1</uid><name>User</name>"
+				+ "<status xsi:nil=\"true\"/></user>");
+		assertNull(user.getStatus());
+	}
+
+	/**
+	 * Binds given row with FBUserBinder and updates another user from its
+	 * JSON presentation, both having a previous status, and checks they
+	 * match. Returns user bound with FBUserBinder.
+	 */
+	private FBUser assertSameUser(String row) throws Exception {
+		FBUser bound = new FBUser(null, "1");
+		bound.mStatus = "Previous";
+		FQLParser.parse(createStream(row), new FBUserBinder(bound));
+
+		FBUser updated = new FBUser(null, "1");
+		updated.mStatus = "Previous";
+		JSONArray data = FQLParser.parse(createStream(row)).getJSONArray(
+				"data");
+		assertEquals(1, data.length());
+		updated.update(data.getJSONObject(0), FBUser.Level.FULL);
+
+		assertEquals(FBUser.Level.FULL, bound.getLevel());
+		assertEquals(bound.getLevel(), updated.getLevel());
+		assertEquals(bound.getName(), updated.getName());
+		assertEquals(bound.getPicture(), updated.getPicture());
+		assertEquals(bound.getStatus(), updated.getStatus());
+		assertEquals(bound.getAffiliations(), updated.getAffiliations());
+		assertEquals(bound.getBirthday(), updated.getBirthday());
+		assertEquals(bound.getGender(), updated.getGender());
+		assertEquals(bound.getWebsite(), updated.getWebsite());
+		assertEquals(bound.getEmail(), updated.getEmail());
+		assertEquals(bound.getHometown(), updated.getHometown());
+		assertEquals(bound.getLocation(), updated.getLocation());
+		assertEquals(bound.getPhone(), updated.getPhone());
+		return bound;
+	}
+
+	private InputStream createStream(String row) throws Exception {
+		return new ByteArrayInputStream((HEAD + row + TAIL).getBytes("UTF-8"));
+	}
+
+}
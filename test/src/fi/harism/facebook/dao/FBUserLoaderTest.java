@@ -0,0 +1,192 @@
+package fi.harism.facebook.dao;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Vector;
+
+import junit.framework.TestCase;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import fi.harism.facebook.net.FBClient;
+import fi.harism.facebook.net.GraphServer;
+
+/**
+ * Tests for FBUserLoader, run against a local GraphServer answering both
+ * Graph API and FQL requests. Ids below 2000 are users FQL knows about, rest
+ * of them are pages found with Graph API only.
+ * 
+ * @author harism
+ */
+public class FBUserLoaderTest extends TestCase {
+
+	// Uid FQL returns for "me()".
+	private static final String ME_UID = "999";
+
+	private File cacheDir;
+	private GraphServer server;
+	private FBClient client;
+	private HashMap<String, FBUser> userMap;
+
+	@Override
+	protected void setUp() throws Exception {
+		cacheDir = File.createTempFile("fbuserloader", "");
+		cacheDir.delete();
+		server = new GraphServer(new GraphServer.Responder() {
+			@Override
+			public GraphServer.Response respond(GraphServer.Request request) {
+				if (request.path.equals("fql")) {
+					return new GraphServer.Response(200,
+							createFQLResponse(request.params.get("query")),
+							null);
+				}
+				if (request.path.equals("")
+						&& request.params.containsKey("ids")) {
+					return new GraphServer.Response(200,
+							createPagesResponse(request.params.get("ids")),
+							null);
+				}
+				return new GraphServer.Response(404, "{}", null);
+			}
+		});
+		client = new FBClient(cacheDir, server.getBaseUrl(),
+				server.getBaseUrl() + "fql");
+		userMap = new HashMap<String, FBUser>();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		client.clearCache();
+		server.close();
+	}
+
+	/**
+	 * Users are loaded with one FQL query per MAX_IDS_PER_REQUEST ids, and
+	 * ids FQL does not return with one Graph API request.
+	 */
+	public void testFullLevelIsLoadedInBulk() throws Exception {
+		Vector<String> ids = new Vector<String>();
+		for (int i = 0; i < 60; ++i) {
+			ids.add("" + (1000 + i));
+		}
+		ids.add("2000");
+		ids.add("2001");
+		ids.add("1000");
+		FBUserLoader loader = new FBUserLoader(client, userMap);
+		loader.load(ids, FBUser.Level.FULL);
+
+		Vector<GraphServer.Request> requests = server.getRequests();
+		assertEquals(3, requests.size());
+		assertEquals("fql", requests.get(0).path);
+		assertEquals("fql", requests.get(1).path);
+		assertEquals("", requests.get(2).path);
+		assertEquals("2000,2001", requests.get(2).params.get("ids"));
+
+		for (int i = 0; i < 60; ++i) {
+			FBUser user = userMap.get("" + (1000 + i));
+			assertEquals(FBUser.Level.FULL, user.getLevel());
+			assertEquals("User " + (1000 + i), user.getName());
+			assertEquals("Status " + (1000 + i), user.getStatus());
+			assertEquals("Espoo, Finland", user.getHometown());
+			assertNull(user.getLocation());
+			assertEquals(1, user.getAffiliations().size());
+			assertEquals("Aalto", user.getAffiliations().get(0));
+		}
+		FBUser page = userMap.get("2001");
+		assertEquals(FBUser.Level.FULL, page.getLevel());
+		assertEquals("Page 2001", page.getName());
+		assertEquals("Hello 2001", page.getStatus());
+
+		// Users having FULL level already are not loaded again.
+		loader.load(ids, FBUser.Level.FULL);
+		assertEquals(3, server.getRequests().size());
+	}
+
+	/**
+	 * FQL returns actual uid for "me()", so "me" is loaded into its own
+	 * FBUser with a query of its own.
+	 */
+	public void testMeIsLoadedSeparately() throws Exception {
+		Vector<String> ids = new Vector<String>();
+		ids.add("me");
+		ids.add("1000");
+		new FBUserLoader(client, userMap).load(ids, FBUser.Level.FULL);
+
+		Vector<GraphServer.Request> requests = server.getRequests();
+		assertEquals(2, requests.size());
+		assertTrue(requests.get(0).params.get("query").endsWith(
+				"uid = me()"));
+		assertTrue(requests.get(1).params.get("query").endsWith(
+				"uid IN (1000)"));
+		assertEquals("User " + ME_UID, userMap.get("me").getName());
+		assertEquals(FBUser.Level.FULL, userMap.get("me").getLevel());
+		assertFalse(userMap.containsKey(ME_UID));
+		assertEquals("User 1000", userMap.get("1000").getName());
+	}
+
+	/**
+	 * Creates FQL response with a row for every uid below 2000 found from
+	 * given query.
+	 */
+	private String createFQLResponse(String query) {
+		StringBuilder out = new StringBuilder();
+		out.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+		out.append("<fql_query_response"
+				+ " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\""
+				+ " list=\"true\">");
+		String uids;
+		if (query.endsWith("uid = me()")) {
+			uids = ME_UID;
+		} else {
+			uids = query.substring(query.indexOf("IN (") + 4, query
+					.length() - 1);
+		}
+		for (String uid : uids.split(",")) {
+			if (Integer.parseInt(uid) >= 2000) {
+				continue;
+			}
+			out.append("<user><uid>").append(uid).append("</uid>");
+			out.append("<name>User ").append(uid).append("</name>");
+			out.append("<pic_square>http://127.0.0.1/").append(uid)
+					.append("_q.jpg</pic_square>");
+			out.append("<affiliations list=\"true\"><affiliation>"
+					+ "<nid>1</nid><name>Aalto</name></affiliation>"
+					+ "</affiliations>");
+			out.append("<hometown_location><city>Espoo</city>"
+					+ "<name>Espoo, Finland</name></hometown_location>");
+			out.append("<current_location xsi:nil=\"true\"/>");
+			out.append("<status><message>Status ").append(uid).append(
+					"</message></status>");
+			out.append("</user>");
+		}
+		out.append("</fql_query_response>");
+		return out.toString();
+	}
+
+	/**
+	 * Creates Graph API response with a page object for every id.
+	 */
+	private String createPagesResponse(String ids) {
+		try {
+			JSONObject out = new JSONObject();
+			for (String id : ids.split(",")) {
+				JSONObject status = new JSONObject();
+				status.put("message", "Hello " + id);
+				JSONObject statuses = new JSONObject();
+				statuses.put("data", new JSONArray().put(status));
+				JSONObject page = new JSONObject();
+				page.put("id", id);
+				page.put("name", "Page " + id);
+				page.put("picture", "http://127.0.0.1/" + id + "_q.jpg");
+				page.put("statuses", statuses);
+				out.put(id, page);
+			}
+			return out.toString();
+		} catch (JSONException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+}
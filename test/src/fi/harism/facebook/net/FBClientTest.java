@@ -0,0 +1,422 @@
+package fi.harism.facebook.net;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Vector;
+
+import junit.framework.TestCase;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.os.Bundle;
+
+/**
+ * Tests for FBClient Graph API requests and response caching, run against a
+ * local GraphServer.
+ * 
+ * @author harism
+ */
+public class FBClientTest extends TestCase {
+
+	private File cacheDir;
+	private GraphServer server;
+	private FBClient client;
+	// Response bodies by graph path, guarded by itself.
+	private HashMap<String, String> bodies = new HashMap<String, String>();
+	// True for gzip encoding all responses.
+	private boolean gzip;
+
+	@Override
+	protected void setUp() throws Exception {
+		cacheDir = File.createTempFile("fbclient", "");
+		cacheDir.delete();
+		server = new GraphServer(new GraphServer.Responder() {
+			@Override
+			public GraphServer.Response respond(GraphServer.Request request) {
+				String body;
+				synchronized (bodies) {
+					body = bodies.get(request.path);
+				}
+				if (request.path.equals("")
+						&& request.params.containsKey("ids")) {
+					body = createIdsResponse(request.params.get("ids"));
+				}
+				if (body == null) {
+					return new GraphServer.Response(404,
+							"{\"error\":{\"type\":\"GraphMethodException\","
+									+ "\"message\":\"Unknown path\"}}", null);
+				}
+				// ETag changes whenever body changes.
+				String eTag = "\"" + Integer.toHexString(body.hashCode())
+						+ "\"";
+				GraphServer.Response response;
+				if (eTag.equals(request.headers.get("if-none-match"))) {
+					response = new GraphServer.Response(304, "", eTag);
+				} else {
+					response = new GraphServer.Response(200, body, eTag);
+				}
+				response.gzip = gzip;
+				return response;
+			}
+		});
+		client = new FBClient(cacheDir, server.getBaseUrl(), server.getBaseUrl()
+				+ "method/fql.query");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		client.clearCache();
+		server.close();
+	}
+
+	/**
+	 * Streamed response is stored into cache while it's parsed, and it can be
+	 * read back from cache without network access.
+	 */
+	public void testStreamedResponseIsCached() throws Exception {
+		setBody("me/friends", createData(500));
+		Vector<JSONObject> items = new Vector<JSONObject>();
+		JSONObject rest = client.requestData("me/friends", null,
+				createHandler(items));
+		assertItems(500, items);
+		assertEquals("next", rest.getJSONObject("paging").getString("next"));
+		assertEquals(1, server.getRequests().size());
+
+		items.clear();
+		rest = client.requestDataCached("me/friends", null,
+				createHandler(items));
+		assertItems(500, items);
+		assertEquals("next", rest.getJSONObject("paging").getString("next"));
+
+		// Friend list is fresh for a while.
+		assertNull(client.requestDataIfModified("me/friends", null,
+				createHandler(items)));
+		assertEquals(1, server.getRequests().size());
+	}
+
+	/**
+	 * Not modified response is read from cache, and it's stored again with
+	 * new validation time.
+	 */
+	public void testNotModifiedResponseIsReadFromCache() throws Exception {
+		setBody("12345/feed", createData(10));
+		Vector<JSONObject> items = new Vector<JSONObject>();
+		client.requestData("12345/feed", null, createHandler(items));
+		assertItems(10, items);
+
+		items.clear();
+		client.requestData("12345/feed", null, createHandler(items));
+		assertItems(10, items);
+		Vector<GraphServer.Request> requests = server.getRequests();
+		assertEquals(2, requests.size());
+		assertNotNull(requests.get(1).headers.get("if-none-match"));
+
+		assertNull(client.requestDataIfModified("12345/feed", null,
+				createHandler(items)));
+		assertEquals(3, server.getRequests().size());
+		items.clear();
+		client.requestDataCached("12345/feed", null, createHandler(items));
+		assertItems(10, items);
+
+		// Modified response replaces cached one.
+		setBody("12345/feed", createData(3));
+		items.clear();
+		assertNotNull(client.requestDataIfModified("12345/feed", null,
+				createHandler(items)));
+		assertItems(3, items);
+		items.clear();
+		client.requestDataCached("12345/feed", null, createHandler(items));
+		assertItems(3, items);
+	}
+
+	/**
+	 * Response which fails to parse does not replace cached one.
+	 */
+	public void testInvalidResponseIsNotCached() throws Exception {
+		Vector<JSONObject> items = new Vector<JSONObject>();
+		setBody("12345/feed", "{\"data\":[{\"id\":\"1\"},");
+		try {
+			client.requestData("12345/feed", null, createHandler(items));
+			fail();
+		} catch (JSONException ex) {
+		}
+		assertNull(client.requestDataCached("12345/feed", null,
+				createHandler(items)));
+
+		setBody("12345/feed", createData(2));
+		client.requestData("12345/feed", null, createHandler(items));
+		setBody("12345/feed", "{\"data\":[{\"id\":\"1\"},");
+		try {
+			client.requestData("12345/feed", null, createHandler(items));
+			fail();
+		} catch (JSONException ex) {
+		}
+		items.clear();
+		client.requestDataCached("12345/feed", null, createHandler(items));
+		assertItems(2, items);
+	}
+
+	/**
+	 * Error responses throw and they are not cached.
+	 */
+	public void testErrorResponseThrows() throws Exception {
+		try {
+			client.request("unknown");
+			fail();
+		} catch (IOException ex) {
+			assertEquals("Unknown path", ex.getMessage());
+		}
+		try {
+			client.requestData("unknown", null,
+					createHandler(new Vector<JSONObject>()));
+			fail();
+		} catch (IOException ex) {
+			assertEquals("Unknown path", ex.getMessage());
+		}
+		assertNull(client.requestDataCached("unknown", null,
+				createHandler(new Vector<JSONObject>())));
+	}
+
+	/**
+	 * Access token passed in parameters is not part of cache key.
+	 */
+	public void testAccessTokenIsLeftOutOfCacheKey() throws Exception {
+		setBody("me", "{\"id\":\"me\"}");
+		Bundle params = new Bundle();
+		params.putString(FBClient.TOKEN, "token1");
+		client.request("me", params);
+		params.putString(FBClient.TOKEN, "token2");
+		assertEquals("me", client.request("me", params).getString("id"));
+		// Fresh "me" is read from cache.
+		assertEquals(1, server.getRequests().size());
+		assertNull(client.requestIfModified("me", new Bundle()));
+		assertEquals(1, server.getRequests().size());
+	}
+
+	/**
+	 * Only start up paths are used without revalidation, and POST requests
+	 * mark cached responses of their object stale.
+	 */
+	public void testPostMarksObjectStale() throws Exception {
+		setBody("me", "{\"id\":\"me\"}");
+		setBody("12345", "{\"id\":\"12345\"}");
+		client.request("me");
+		client.request("me");
+		assertEquals(1, server.getRequests().size());
+		client.request("12345");
+		client.request("12345");
+		assertEquals(3, server.getRequests().size());
+
+		client.request("me/feed", new Bundle(), "POST");
+		// Responses validated within same millisecond are stale too.
+		Thread.sleep(10);
+		assertEquals("me", client.request("me").getString("id"));
+		Vector<GraphServer.Request> requests = server.getRequests();
+		assertEquals(4, requests.size());
+		assertNotNull(requests.get(3).headers.get("if-none-match"));
+		// Revalidated response is fresh again.
+		client.request("me");
+		assertEquals(4, server.getRequests().size());
+	}
+
+	/**
+	 * Loading 50 users takes one round trip instead of 50.
+	 */
+	public void testRequestIdsBatchesIds() throws Exception {
+		Vector<String> ids = new Vector<String>();
+		for (int i = 0; i < 50; ++i) {
+			ids.add("" + (1000 + i));
+		}
+		Bundle params = new Bundle();
+		params.putString("fields", "id,name");
+		JSONObject resp = client.requestIds(ids, params);
+		assertEquals(1, server.getRequests().size());
+		assertEquals("id,name", server.getRequests().get(0).params
+				.get("fields"));
+		assertEquals(50, resp.length());
+		for (String id : ids) {
+			assertEquals(id, resp.getJSONObject(id).getString("id"));
+		}
+
+		for (int i = 50; i < 120; ++i) {
+			ids.add("" + (1000 + i));
+		}
+		resp = client.requestIds(ids, params);
+		Vector<GraphServer.Request> requests = server.getRequests();
+		assertEquals(1 + 3, requests.size());
+		for (int i = 1; i < requests.size(); ++i) {
+			int idCount = requests.get(i).params.get("ids").split(",").length;
+			assertTrue(idCount <= FBClient.MAX_IDS_PER_REQUEST);
+		}
+		assertEquals(120, resp.length());
+	}
+
+	/**
+	 * FQL queries are sent to given url, and error responses throw.
+	 */
+	public void testRequestFQL() throws Exception {
+		setBody("method/fql.query", "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+				+ "<fql_query_response list=\"true\"><user><uid>1</uid>"
+				+ "<name>User \u00e4 1</name></user></fql_query_response>");
+		JSONObject user = client.requestFQL("SELECT uid FROM user")
+				.getJSONArray("data").getJSONObject(0);
+		assertEquals("1", user.getString("uid"));
+		assertEquals("User \u00e4 1", user.getString("name"));
+		GraphServer.Request request = server.getRequests().get(0);
+		assertEquals("SELECT uid FROM user", request.params.get("query"));
+		// There is no token to send off-device.
+		assertFalse(request.params.containsKey(FBClient.TOKEN));
+
+		setBody("method/fql.query", "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+				+ "<error_response><error_code>601</error_code>"
+				+ "<error_msg>Parser error</error_msg></error_response>");
+		try {
+			client.requestFQL("SELECT");
+			fail();
+		} catch (IOException ex) {
+			assertEquals("FQL error: Parser error", ex.getMessage());
+		}
+	}
+
+	/**
+	 * Explicit refresh revalidates fresh responses too.
+	 */
+	public void testRevalidateDataIgnoresFreshness() throws Exception {
+		setBody("me/home", createData(10));
+		Vector<JSONObject> items = new Vector<JSONObject>();
+		client.requestData("me/home", null, createHandler(items));
+		assertNull(client.requestDataIfModified("me/home", null,
+				createHandler(items)));
+		assertEquals(1, server.getRequests().size());
+
+		assertNull(client.revalidateData("me/home", null,
+				createHandler(items)));
+		Vector<GraphServer.Request> requests = server.getRequests();
+		assertEquals(2, requests.size());
+		assertNotNull(requests.get(1).headers.get("if-none-match"));
+
+		setBody("me/home", createData(3));
+		items.clear();
+		assertNotNull(client.revalidateData("me/home", null,
+				createHandler(items)));
+		assertItems(3, items);
+	}
+
+	/**
+	 * Fresh cached response which fails to parse is removed and fetched
+	 * again, and handler sees items of fetched response only.
+	 */
+	public void testCorruptFreshResponseIsFetchedAgain() throws Exception {
+		setBody("me/friends", createData(500));
+		Vector<JSONObject> items = new Vector<JSONObject>();
+		client.requestData("me/friends", null, createHandler(items));
+		File files[] = new File(cacheDir, "responses").listFiles();
+		assertEquals(1, files.length);
+		// Cut body in the middle of "data" array.
+		RandomAccessFile file = new RandomAccessFile(files[0], "rw");
+		file.setLength(file.length() / 2);
+		file.close();
+
+		items.clear();
+		client.requestData("me/friends", null, createHandler(items));
+		assertItems(500, items);
+		assertEquals(2, server.getRequests().size());
+
+		// Fetched response replaced corrupt one.
+		items.clear();
+		client.requestData("me/friends", null, createHandler(items));
+		assertItems(500, items);
+		assertEquals(2, server.getRequests().size());
+	}
+
+	/**
+	 * Gzip encoded Graph API and FQL responses are decoded while they are
+	 * parsed, and decoded responses are cached.
+	 */
+	public void testGzipResponsesAreDecoded() throws Exception {
+		gzip = true;
+		setBody("12345/feed", createData(500));
+		Vector<JSONObject> items = new Vector<JSONObject>();
+		client.requestData("12345/feed", null, createHandler(items));
+		assertItems(500, items);
+		HttpTransport transport = client.getHttpTransport();
+		assertTrue(transport.getWireByteCount() * 4 < transport
+				.getBodyByteCount());
+
+		// Not modified response has an empty gzip body.
+		items.clear();
+		client.requestData("12345/feed", null, createHandler(items));
+		assertItems(500, items);
+		Vector<GraphServer.Request> requests = server.getRequests();
+		assertEquals(2, requests.size());
+		assertNotNull(requests.get(1).headers.get("if-none-match"));
+
+		setBody("method/fql.query", "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+				+ "<fql_query_response list=\"true\"><user><uid>1</uid>"
+				+ "<name>User \u00e4 1</name></user></fql_query_response>");
+		assertEquals("User \u00e4 1", client.requestFQL("SELECT uid FROM user")
+				.getJSONArray("data").getJSONObject(0).getString("name"));
+	}
+
+	private void assertItems(int count, Vector<JSONObject> items)
+			throws JSONException {
+		assertEquals(count, items.size());
+		for (int i = 0; i < count; ++i) {
+			assertEquals("" + i, items.get(i).getString("id"));
+			assertEquals("User \u00e4 " + i, items.get(i).getString("name"));
+		}
+	}
+
+	/**
+	 * Creates response with given number of "data" items.
+	 */
+	private String createData(int count) throws JSONException {
+		StringBuilder out = new StringBuilder("{\"data\":[");
+		for (int i = 0; i < count; ++i) {
+			JSONObject item = new JSONObject();
+			item.put("id", "" + i);
+			item.put("name", "User \u00e4 " + i);
+			out.append(i > 0 ? "," : "").append(item.toString());
+		}
+		out.append("],\"paging\":{\"next\":\"next\"}}");
+		return out.toString();
+	}
+
+	/**
+	 * Creates response for comma separated ids, an object for every id.
+	 */
+	private String createIdsResponse(String ids) {
+		try {
+			JSONObject out = new JSONObject();
+			for (String id : ids.split(",")) {
+				JSONObject user = new JSONObject();
+				user.put("id", id);
+				user.put("name", "User " + id);
+				out.put(id, user);
+			}
+			return out.toString();
+		} catch (JSONException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	private JSONStreamReader.DataHandler createHandler(
+			final Vector<JSONObject> items) {
+		return new JSONStreamReader.DataHandler() {
+			@Override
+			public void onData(JSONObject item) {
+				items.add(item);
+			}
+		};
+	}
+
+	private void setBody(String graphPath, String body) {
+		synchronized (bodies) {
+			bodies.put(graphPath, body);
+		}
+	}
+
+}
@@ -0,0 +1,218 @@
+package fi.harism.facebook.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONStringer;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+/**
+ * JVM benchmark comparing FQLParser.parse() with the original two-stage path,
+ * which serialized pull parser events into a JSONStringer and parsed the
+ * resulting String again with new JSONObject(). Responses contain 100, 1000
+ * and 5000 FULL level user rows. Reported are time and bytes allocated per
+ * response, latter if JVM can measure thread allocations. Run with
+ * 
+ * java -cp bin-test fi.harism.facebook.net.FQLParserBenchmark
+ * 
+ * @author harism
+ */
+public class FQLParserBenchmark {
+
+	// Rows parsed per measurement, divided over responses.
+	private static final int ROW_COUNT = 50000;
+
+	public static void main(String args[]) throws Exception {
+		int rowCounts[] = { 100, 1000, 5000 };
+		// First pass warms up JIT, second one is reported.
+		for (int pass = 0; pass < 2; ++pass) {
+			for (int rowCount : rowCounts) {
+				byte xml[] = createResponse(rowCount);
+				int iterationCount = ROW_COUNT / rowCount;
+				long twoStageTime = 0, singleTime = 0;
+				long twoStageBytes = 0, singleBytes = 0;
+				for (int round = 0; round < 2; ++round) {
+					boolean single = round == 1;
+					long bytes = getAllocatedBytes();
+					long start = System.nanoTime();
+					for (int i = 0; i < iterationCount; ++i) {
+						InputStream is = new ByteArrayInputStream(xml);
+						JSONObject out = single ? FQLParser.parse(is)
+								: parseTwoStage(is);
+						if (out.getJSONArray("data").length() != rowCount) {
+							throw new IOException("Invalid row count");
+						}
+					}
+					long time = (System.nanoTime() - start) / iterationCount;
+					bytes = (getAllocatedBytes() - bytes) / iterationCount;
+					if (single) {
+						singleTime = time;
+						singleBytes = bytes;
+					} else {
+						twoStageTime = time;
+						twoStageBytes = bytes;
+					}
+				}
+				if (pass == 1) {
+					System.out.println(rowCount + " rows (" + xml.length
+							+ " bytes): two-stage=" + twoStageTime / 1000
+							+ "us " + twoStageBytes / 1024
+							+ "kB single-pass=" + singleTime / 1000 + "us "
+							+ singleBytes / 1024 + "kB");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates FQL response with given number of FULL level user rows.
+	 */
+	public static byte[] createResponse(int rowCount) throws IOException {
+		StringBuilder out = new StringBuilder();
+		out.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		out.append("<fql_query_response xmlns=\"http://api.facebook.com/1.0/\""
+				+ " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\""
+				+ " list=\"true\">\n");
+		for (int i = 0; i < rowCount; ++i) {
+			out.append("  <user>\n");
+			out.append("    <uid>").append(100000 + i).append("</uid>\n");
+			out.append("    <name>User \u00e4 ").append(i).append("</name>\n");
+			out.append("    <pic_square>http://profile.ak.fbcdn.net/")
+					.append(i).append("_q.jpg</pic_square>\n");
+			out.append("    <affiliations list=\"true\">\n");
+			out.append("      <affiliation>\n");
+			out.append("        <nid>").append(i % 100).append("</nid>\n");
+			out.append("        <name>Network ").append(i % 100)
+					.append("</name>\n");
+			out.append("        <type>work</type>\n");
+			out.append("      </affiliation>\n");
+			out.append("    </affiliations>\n");
+			out.append("    <birthday>January ").append(i % 28 + 1)
+					.append("</birthday>\n");
+			out.append("    <sex>").append(i % 2 == 0 ? "male" : "female")
+					.append("</sex>\n");
+			if (i % 3 == 0) {
+				out.append("    <hometown_location xsi:nil=\"true\"/>\n");
+			} else {
+				out.append("    <hometown_location>\n");
+				out.append("      <city>Espoo</city>\n");
+				out.append("      <country>Finland</country>\n");
+				out.append("      <name>Espoo, Finland</name>\n");
+				out.append("    </hometown_location>\n");
+			}
+			out.append("    <current_location xsi:nil=\"true\"/>\n");
+			out.append("    <status>\n");
+			out.append("      <message>Status ").append(i)
+					.append("</message>\n");
+			out.append("      <time>1300000000</time>\n");
+			out.append("    </status>\n");
+			out.append("    <website></website>\n");
+			out.append("    <email>user").append(i)
+					.append("@example.com</email>\n");
+			out.append("  </user>\n");
+		}
+		out.append("</fql_query_response>\n");
+		return out.toString().getBytes("UTF-8");
+	}
+
+	/**
+	 * Returns bytes allocated by current thread so far, or 0 if JVM does not
+	 * tell.
+	 */
+	private static long getAllocatedBytes() {
+		Object bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+	/**
+	 * Original parser, writing xml into a JSONStringer and parsing resulting
+	 * String into JSONObject.
+	 */
+	private static JSONObject parseTwoStage(InputStream is)
+			throws IOException, JSONException, XmlPullParserException {
+		XmlPullParser parser = XmlPullParserFactory.newInstance()
+				.newPullParser();
+		parser.setInput(new InputStreamReader(is, "UTF-8"));
+		parser.nextTag();
+
+		JSONStringer stringer = new JSONStringer();
+		stringer.object();
+		String name = parser.getName();
+		stringer.key(name.equals("fql_query_response") ? "data" : "error");
+		if (FQLParser.isList(parser)) {
+			writeArray(stringer, parser);
+		} else {
+			writeObject(stringer, parser);
+		}
+		stringer.endObject();
+		return new JSONObject(stringer.toString());
+	}
+
+	private static void writeArray(JSONStringer stringer, XmlPullParser parser)
+			throws IOException, JSONException, XmlPullParserException {
+		stringer.array();
+		parser.nextTag();
+		while (parser.getEventType() != XmlPullParser.END_TAG) {
+			if (FQLParser.isList(parser)) {
+				writeArray(stringer, parser);
+			} else {
+				writeObject(stringer, parser);
+			}
+			parser.nextTag();
+		}
+		stringer.endArray();
+	}
+
+	private static void writeContent(JSONStringer stringer,
+			XmlPullParser parser) throws IOException, JSONException,
+			XmlPullParserException {
+		if (FQLParser.isNull(parser)) {
+			parser.nextTag();
+			return;
+		}
+		stringer.key(parser.getName());
+		if (FQLParser.isList(parser)) {
+			writeArray(stringer, parser);
+		} else {
+			parser.next();
+			String text = null;
+			if (parser.getEventType() == XmlPullParser.TEXT) {
+				text = parser.getText();
+				parser.nextTag();
+			}
+			if (parser.getEventType() == XmlPullParser.END_TAG) {
+				stringer.value(text);
+			} else {
+				stringer.object();
+				while (parser.getEventType() != XmlPullParser.END_TAG) {
+					writeContent(stringer, parser);
+					parser.nextTag();
+				}
+				stringer.endObject();
+			}
+		}
+	}
+
+	private static void writeObject(JSONStringer stringer, XmlPullParser parser)
+			throws IOException, JSONException, XmlPullParserException {
+		stringer.object();
+		parser.nextTag();
+		while (parser.getEventType() != XmlPullParser.END_TAG) {
+			writeContent(stringer, parser);
+			parser.nextTag();
+		}
+		stringer.endObject();
+	}
+
+}
@@ -0,0 +1,179 @@
+package fi.harism.facebook.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Vector;
+
+import junit.framework.TestCase;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Tests for FQLParser JSON presentation and Binder events.
+ * 
+ * @author harism
+ */
+public class FQLParserTest extends TestCase {
+
+	private static final String HEAD = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+			+ "<fql_query_response xmlns=\"http://api.facebook.com/1.0/\" "
+			+ "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" "
+			+ "list=\"true\">";
+	private static final String TAIL = "</fql_query_response>";
+
+	public void testNestedObjectsAndLists() throws Exception {
+		JSONObject out = FQLParser.parse(createStream(HEAD + "<user>"
+				+ "<uid>1</uid><name>User \u00e4</name>"
+				+ "<hometown_location>\n  <city>Espoo</city>"
+				+ "<name>Espoo, Finland</name>\n</hometown_location>"
+				+ "<affiliations list=\"true\">"
+				+ "<affiliation><nid>10</nid><name>Aalto</name></affiliation>"
+				+ "<affiliation><nid>11</nid><name>Nokia</name></affiliation>"
+				+ "</affiliations>"
+				+ "<status><message>Hello</message><time>1</time></status>"
+				+ "</user><user><uid>2</uid></user>" + TAIL));
+		assertFalse(out.has("error"));
+		JSONArray data = out.getJSONArray("data");
+		assertEquals(2, data.length());
+
+		JSONObject user = data.getJSONObject(0);
+		assertEquals("1", user.getString("uid"));
+		assertEquals("User \u00e4", user.getString("name"));
+		JSONObject hometown = user.getJSONObject("hometown_location");
+		assertEquals("Espoo", hometown.getString("city"));
+		assertEquals("Espoo, Finland", hometown.getString("name"));
+		JSONArray affiliations = user.getJSONArray("affiliations");
+		assertEquals(2, affiliations.length());
+		assertEquals("Aalto", affiliations.getJSONObject(0).getString("name"));
+		assertEquals("11", affiliations.getJSONObject(1).getString("nid"));
+		assertEquals("Hello", user.getJSONObject("status").getString(
+				"message"));
+		assertEquals("2", data.getJSONObject(1).getString("uid"));
+	}
+
+	public void testNullAndEmptyElements() throws Exception {
+		String xml = HEAD + "<user><uid>1</uid>"
+				+ "<hometown_location xsi:nil=\"true\"/>"
+				+ "<current_location xsi:nil=\"true\"></current_location>"
+				+ "<website></website><email/>"
+				+ "<affiliations list=\"true\"/></user>" + TAIL;
+		JSONObject user = FQLParser.parse(createStream(xml)).getJSONArray(
+				"data").getJSONObject(0);
+		assertFalse(user.has("hometown_location"));
+		assertFalse(user.has("current_location"));
+		assertTrue(user.isNull("website"));
+		assertTrue(user.has("website"));
+		assertTrue(user.isNull("email"));
+		assertEquals(0, user.getJSONArray("affiliations").length());
+
+		Vector<String> events = new Vector<String>();
+		FQLParser.parse(createStream(xml), createBinder(events));
+		assertEvents(events, "startRow", "uid=1", "website=null",
+				"email=null", "start affiliations", "end affiliations",
+				"endRow");
+	}
+
+	public void testUnknownFieldsArePassedThrough() throws Exception {
+		String xml = HEAD + "<user><uid>1</uid><unknown>x</unknown>"
+				+ "<profile_update_time>0</profile_update_time>"
+				+ "<education_history list=\"true\"><education_info>"
+				+ "<name>School</name><year xsi:nil=\"true\"/>"
+				+ "<concentrations list=\"true\"><concentration>Math"
+				+ "</concentration></concentrations>"
+				+ "</education_info></education_history>"
+				+ "<name>User</name></user>" + TAIL;
+		JSONObject user = FQLParser.parse(createStream(xml)).getJSONArray(
+				"data").getJSONObject(0);
+		assertEquals("x", user.getString("unknown"));
+		JSONObject info = user.getJSONArray("education_history")
+				.getJSONObject(0);
+		assertEquals("School", info.getString("name"));
+		assertFalse(info.has("year"));
+		assertEquals("Math", info.getJSONArray("concentrations").getString(0));
+		assertEquals("User", user.getString("name"));
+
+		Vector<String> events = new Vector<String>();
+		FQLParser.parse(createStream(xml), createBinder(events));
+		assertEvents(events, "startRow", "uid=1", "unknown=x",
+				"profile_update_time=0", "start education_history",
+				"start education_info", "name=School",
+				"start concentrations", "concentration=Math",
+				"end concentrations", "end education_info",
+				"end education_history", "name=User", "endRow");
+	}
+
+	public void testErrorResponse() throws Exception {
+		String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+				+ "<error_response xmlns=\"http://api.facebook.com/1.0/\">"
+				+ "<error_code>601</error_code>"
+				+ "<error_msg>Parser error</error_msg>"
+				+ "<request_args list=\"true\"><arg><key>query</key>"
+				+ "<value>SELECT</value></arg></request_args>"
+				+ "</error_response>";
+		JSONObject error = FQLParser.parse(createStream(xml)).getJSONObject(
+				"error");
+		assertEquals("Parser error", error.getString("error_msg"));
+		assertEquals("query", error.getJSONArray("request_args")
+				.getJSONObject(0).getString("key"));
+
+		Vector<String> events = new Vector<String>();
+		error = FQLParser.parse(createStream(xml), createBinder(events))
+				.getJSONObject("error");
+		assertEquals("601", error.getString("error_code"));
+		assertEquals(0, events.size());
+	}
+
+	public void testEmptyResponse() throws Exception {
+		assertEquals(0, FQLParser.parse(createStream(HEAD + TAIL))
+				.getJSONArray("data").length());
+		Vector<String> events = new Vector<String>();
+		assertEquals(0, FQLParser.parse(createStream(HEAD + TAIL),
+				createBinder(events)).length());
+		assertEquals(0, events.size());
+	}
+
+	private void assertEvents(Vector<String> events, String... expected) {
+		assertEquals(expected.length, events.size());
+		for (int i = 0; i < expected.length; ++i) {
+			assertEquals(expected[i], events.get(i));
+		}
+	}
+
+	/**
+	 * Creates Binder recording every call into given events.
+	 */
+	private FQLParser.Binder createBinder(final Vector<String> events) {
+		return new FQLParser.Binder() {
+			@Override
+			public void startRow() {
+				events.add("startRow");
+			}
+
+			@Override
+			public void startElement(String name) {
+				events.add("start " + name);
+			}
+
+			@Override
+			public void value(String name, String text) {
+				events.add(name + "=" + text);
+			}
+
+			@Override
+			public void endElement(String name) {
+				events.add("end " + name);
+			}
+
+			@Override
+			public void endRow() {
+				events.add("endRow");
+			}
+		};
+	}
+
+	private InputStream createStream(String xml) throws Exception {
+		return new ByteArrayInputStream(xml.getBytes("UTF-8"));
+	}
+
+}
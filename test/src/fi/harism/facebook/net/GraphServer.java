@@ -0,0 +1,262 @@
+package fi.harism.facebook.net;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Vector;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local HTTP server standing in for Graph API in tests. Keep-alive
+ * connections are served until client closes them, and every request is
+ * answered by given Responder. Response bodies are sent gzip encoded if
+ * Responder asks for it.
+ * 
+ * @author harism
+ */
+public class GraphServer {
+
+	private ServerSocket serverSocket;
+	private Responder responder;
+	// Requests served so far, guarded by itself.
+	private Vector<Request> requests;
+	// Open client connections, guarded by itself.
+	private Vector<Socket> sockets;
+	// Latest gzip encoded body and String it was encoded from, guarded by
+	// this.
+	private String gzipSource;
+	private byte[] gzipBody;
+
+	/**
+	 * Default constructor, starts listening at once.
+	 * 
+	 * @param responder
+	 *            Responder for requests.
+	 */
+	public GraphServer(Responder responder) throws IOException {
+		this.responder = responder;
+		requests = new Vector<Request>();
+		sockets = new Vector<Socket>();
+		serverSocket = new ServerSocket(0);
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						final Socket socket = serverSocket.accept();
+						sockets.add(socket);
+						new Thread() {
+							@Override
+							public void run() {
+								serve(socket);
+							}
+						}.start();
+					}
+				} catch (IOException ex) {
+					// Server socket closed.
+				}
+			}
+		}.start();
+	}
+
+	/**
+	 * Stops server and closes all connections.
+	 */
+	public void close() throws IOException {
+		serverSocket.close();
+		synchronized (sockets) {
+			for (Socket socket : sockets) {
+				socket.close();
+			}
+		}
+	}
+
+	/**
+	 * Returns base url for requests, ending with '/'.
+	 */
+	public String getBaseUrl() {
+		return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/";
+	}
+
+	/**
+	 * Returns number of connections accepted so far.
+	 */
+	public int getConnectionCount() {
+		return sockets.size();
+	}
+
+	/**
+	 * Returns requests served so far.
+	 */
+	public Vector<Request> getRequests() {
+		synchronized (requests) {
+			return new Vector<Request>(requests);
+		}
+	}
+
+	/**
+	 * Serves requests from given connection until it's closed.
+	 */
+	private void serve(Socket socket) {
+		try {
+			InputStream in = new BufferedInputStream(socket.getInputStream());
+			OutputStream out = socket.getOutputStream();
+			String requestLine;
+			while ((requestLine = readLine(in)) != null) {
+				Request request = new Request();
+				String target = requestLine.split(" ")[1];
+				int queryIndex = target.indexOf('?');
+				request.path = target.substring(1, queryIndex == -1 ? target
+						.length() : queryIndex);
+				if (queryIndex != -1) {
+					for (String param : target.substring(queryIndex + 1).split(
+							"&")) {
+						String keyValue[] = param.split("=", 2);
+						request.params.put(URLDecoder.decode(keyValue[0],
+								"UTF-8"), keyValue.length > 1 ? URLDecoder
+								.decode(keyValue[1], "UTF-8") : "");
+					}
+				}
+				String header;
+				while ((header = readLine(in)) != null && header.length() > 0) {
+					int colon = header.indexOf(':');
+					request.headers.put(header.substring(0, colon).trim()
+							.toLowerCase(), header.substring(colon + 1).trim());
+				}
+				requests.add(request);
+
+				Response response = responder.respond(request);
+				write(out, response);
+				if (response.closeConnection) {
+					break;
+				}
+			}
+		} catch (IOException ex) {
+			// Connection closed.
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException ex) {
+			}
+		}
+	}
+
+	/**
+	 * Writes given response. Its buffers are not kept referenced while
+	 * connection waits for next request.
+	 */
+	private void write(OutputStream out, Response response)
+			throws IOException {
+		byte body[] = response.body.getBytes("UTF-8");
+		if (response.gzip && body.length > 0) {
+			body = compress(response.body, body);
+		}
+		StringBuilder head = new StringBuilder();
+		head.append("HTTP/1.1 ").append(response.status)
+				.append(" Status\r\n");
+		head.append("Content-Type: text/javascript; charset=UTF-8\r\n");
+		head.append("Content-Length: ").append(body.length)
+				.append("\r\n");
+		if (response.eTag != null) {
+			head.append("ETag: ").append(response.eTag).append("\r\n");
+		}
+		if (response.gzip) {
+			head.append("Content-Encoding: gzip\r\n");
+		}
+		if (response.closeConnection) {
+			head.append("Connection: close\r\n");
+		}
+		head.append("\r\n");
+		// Head and body are written at once, separate writes would
+		// wait for delayed ACK of the first one.
+		ByteArrayOutputStream message = new ByteArrayOutputStream();
+		message.write(head.toString().getBytes("UTF-8"));
+		message.write(body);
+		message.writeTo(out);
+		out.flush();
+	}
+
+	/**
+	 * Returns gzip encoded body. Latest encoded body is reused for same body
+	 * String so that benchmarks do not measure compression.
+	 */
+	private byte[] compress(String source, byte[] body) throws IOException {
+		synchronized (this) {
+			if (source == gzipSource) {
+				return gzipBody;
+			}
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GZIPOutputStream gzipOut = new GZIPOutputStream(out);
+		gzipOut.write(body);
+		gzipOut.close();
+		synchronized (this) {
+			gzipSource = source;
+			gzipBody = out.toByteArray();
+			return gzipBody;
+		}
+	}
+
+	/**
+	 * Reads a CRLF terminated line, returns null at end of stream.
+	 */
+	private static String readLine(InputStream in) throws IOException {
+		StringBuilder line = new StringBuilder();
+		int c;
+		while ((c = in.read()) != '\n') {
+			if (c == -1) {
+				return line.length() > 0 ? line.toString() : null;
+			}
+			if (c != '\r') {
+				line.append((char) c);
+			}
+		}
+		return line.toString();
+	}
+
+	/**
+	 * Request received.
+	 */
+	public static final class Request {
+		// Graph path without leading '/'.
+		public String path;
+		// Decoded query parameters.
+		public HashMap<String, String> params = new HashMap<String, String>();
+		// Request headers using lower case names.
+		public HashMap<String, String> headers = new HashMap<String, String>();
+	}
+
+	/**
+	 * Response to send.
+	 */
+	public static final class Response {
+		public int status;
+		public String body;
+		// ETag header, or null for none.
+		public String eTag;
+		// True for closing connection after response.
+		public boolean closeConnection;
+		// True for gzip encoded body. Empty body is sent as is.
+		public boolean gzip;
+
+		public Response(int status, String body, String eTag) {
+			this.status = status;
+			this.body = body;
+			this.eTag = eTag;
+		}
+	}
+
+	/**
+	 * Interface for answering requests, called from connection threads.
+	 */
+	public interface Responder {
+		public Response respond(Request request);
+	}
+
+}
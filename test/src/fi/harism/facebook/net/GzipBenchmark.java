@@ -0,0 +1,138 @@
+package fi.harism.facebook.net;
+
+import java.io.File;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * JVM benchmark for FBClient requests against a local GraphServer, with and
+ * without gzip encoded responses. Feed responses hold 25 posts with FBPost
+ * fields, FQL responses 1000 FULL level user rows. Reported are bytes on the
+ * wire and end-to-end time per request, latter including request, decoding
+ * and parsing. Loopback has no bandwidth limit, so time shows decoding cost
+ * only, while mobile networks are limited by bytes on the wire. Run with
+ * 
+ * java -cp bin-test fi.harism.facebook.net.GzipBenchmark
+ * 
+ * @author harism
+ */
+public class GzipBenchmark {
+
+	private static final int POST_COUNT = 25;
+	private static final int ROW_COUNT = 1000;
+	private static final int ITERATION_COUNT = 50;
+
+	// True for gzip encoding responses.
+	private static volatile boolean gzip;
+
+	public static void main(String args[]) throws Exception {
+		final String feed = createFeed(POST_COUNT);
+		final String fql = new String(FQLParserBenchmark
+				.createResponse(ROW_COUNT), "UTF-8");
+		GraphServer server = new GraphServer(new GraphServer.Responder() {
+			@Override
+			public GraphServer.Response respond(GraphServer.Request request) {
+				GraphServer.Response response = new GraphServer.Response(200,
+						request.path.equals("fql") ? fql : feed, null);
+				response.gzip = gzip;
+				return response;
+			}
+		});
+		File cacheDir = File.createTempFile("gzipbenchmark", "");
+		cacheDir.delete();
+		FBClient client = new FBClient(cacheDir, server.getBaseUrl(),
+				server.getBaseUrl() + "fql");
+		try {
+			// First pass warms up JIT, second one is reported.
+			for (int pass = 0; pass < 2; ++pass) {
+				for (int round = 0; round < 4; ++round) {
+					gzip = (round & 1) == 1;
+					boolean isFQL = round >= 2;
+					HttpTransport transport = client.getHttpTransport();
+					long wireBytes = transport.getWireByteCount();
+					long bodyBytes = transport.getBodyByteCount();
+					long start = System.nanoTime();
+					for (int i = 0; i < ITERATION_COUNT; ++i) {
+						if (isFQL) {
+							client.requestFQL("SELECT uid FROM user");
+						} else {
+							client.requestData("12345/feed", null,
+									new JSONStreamReader.DataHandler() {
+										@Override
+										public void onData(JSONObject item) {
+										}
+									});
+						}
+					}
+					long time = (System.nanoTime() - start) / ITERATION_COUNT;
+					wireBytes = (transport.getWireByteCount() - wireBytes)
+							/ ITERATION_COUNT;
+					bodyBytes = (transport.getBodyByteCount() - bodyBytes)
+							/ ITERATION_COUNT;
+					if (pass == 1) {
+						System.out.println((isFQL ? "fql" : "feed")
+								+ (gzip ? " gzip: " : " plain: ") + bodyBytes
+								+ " bytes, " + wireBytes + " on wire, "
+								+ time / 1000 + "us/request");
+					}
+				}
+			}
+		} finally {
+			client.clearCache();
+			server.close();
+		}
+	}
+
+	/**
+	 * Creates feed response with given number of posts.
+	 */
+	public static String createFeed(int postCount) throws JSONException {
+		JSONArray data = new JSONArray();
+		for (int i = 0; i < postCount; ++i) {
+			JSONObject from = new JSONObject();
+			from.put("id", "" + (1000 + i % 7));
+			from.put("name", "User " + (1000 + i % 7));
+			JSONArray commentData = new JSONArray();
+			for (int j = 0; j < i % 4; ++j) {
+				JSONObject comment = new JSONObject();
+				comment.put("id", i + "_" + j);
+				comment.put("from", from);
+				comment.put("message", "Comment number " + j + " on post "
+						+ i);
+				comment.put("created_time", "2011-03-0" + (j + 1)
+						+ "T12:00:00+0000");
+				commentData.put(comment);
+			}
+			JSONObject comments = new JSONObject();
+			comments.put("data", commentData);
+			comments.put("count", commentData.length());
+			JSONObject post = new JSONObject();
+			post.put("id", "12345_" + i);
+			post.put("type", i % 3 == 0 ? "link" : "status");
+			post.put("from", from);
+			post.put("message", "Status message " + i
+					+ ", a few words of text which people write.");
+			if (i % 3 == 0) {
+				post.put("picture", "http://external.ak.fbcdn.net/safe_image"
+						+ ".php?d=" + i + "&w=90&h=90");
+				post.put("link", "http://www.example.com/article/" + i);
+				post.put("name", "Article " + i);
+				post.put("caption", "www.example.com");
+				post.put("description", "Description of article " + i);
+			}
+			post.put("created_time", "2011-03-01T12:00:00+0000");
+			post.put("comments", comments);
+			data.put(post);
+		}
+		JSONObject paging = new JSONObject();
+		paging.put("previous", "https://graph.facebook.com/12345/feed?since=1");
+		paging.put("next", "https://graph.facebook.com/12345/feed?until=1");
+		JSONObject out = new JSONObject();
+		out.put("data", data);
+		out.put("paging", paging);
+		return out.toString();
+	}
+
+}
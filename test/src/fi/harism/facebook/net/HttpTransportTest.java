@@ -0,0 +1,104 @@
+package fi.harism.facebook.net;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for HttpTransport connection counters, compared against connections
+ * a local GraphServer actually accepted.
+ * 
+ * @author harism
+ */
+public class HttpTransportTest extends TestCase {
+
+	private GraphServer server;
+	private boolean closeConnection;
+	// True for gzip encoding responses asking for it.
+	private boolean gzip;
+
+	@Override
+	protected void setUp() throws Exception {
+		server = new GraphServer(new GraphServer.Responder() {
+			@Override
+			public GraphServer.Response respond(GraphServer.Request request) {
+				GraphServer.Response response;
+				if (request.path.equals("notmodified")) {
+					response = new GraphServer.Response(304, "", null);
+				} else {
+					response = new GraphServer.Response(200, "{\"id\":\""
+							+ request.path + "\"}", null);
+				}
+				response.closeConnection = closeConnection;
+				String encoding = request.headers.get("accept-encoding");
+				response.gzip = gzip && encoding != null
+						&& encoding.contains("gzip");
+				return response;
+			}
+		});
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		server.close();
+	}
+
+	public void testKeepAliveConnectionIsReused() throws Exception {
+		HttpTransport transport = new HttpTransport(4);
+		for (int i = 0; i < 5; ++i) {
+			HttpTransport.Response resp = transport.get(server.getBaseUrl()
+					+ i);
+			assertEquals("{\"id\":\"" + i + "\"}", resp.readString());
+			resp.close();
+		}
+		assertEquals(server.getConnectionCount(), transport
+				.getOpenedCount(null));
+		assertEquals(1, transport.getOpenedCount("127.0.0.1"));
+		assertEquals(4, transport.getReusedCount("127.0.0.1"));
+	}
+
+	/**
+	 * Connections server closes after response are not counted as reused.
+	 */
+	public void testClosedConnectionIsNotReused() throws Exception {
+		closeConnection = true;
+		HttpTransport transport = new HttpTransport(4);
+		for (int i = 0; i < 5; ++i) {
+			HttpTransport.Response resp = transport.get(server.getBaseUrl()
+					+ i);
+			resp.close();
+		}
+		assertEquals(5, server.getConnectionCount());
+		assertEquals(5, transport.getOpenedCount(null));
+		assertEquals(0, transport.getReusedCount(null));
+	}
+
+	/**
+	 * Gzip encoding is asked for, and gzip encoded bodies are decoded while
+	 * they are read.
+	 */
+	public void testGzipResponseIsDecoded() throws Exception {
+		gzip = true;
+		HttpTransport transport = new HttpTransport(4);
+		StringBuilder path = new StringBuilder();
+		for (int i = 0; i < 100; ++i) {
+			path.append("repeated");
+		}
+		HttpTransport.Response resp = transport.get(server.getBaseUrl()
+				+ path);
+		assertEquals(-1, resp.getContentLength());
+		String body = "{\"id\":\"" + path + "\"}";
+		assertEquals(body, resp.readString());
+		resp.close();
+		assertEquals("gzip", server.getRequests().get(0).headers
+				.get("accept-encoding"));
+		assertEquals(body.length(), transport.getBodyByteCount());
+		assertTrue(transport.getWireByteCount() < body.length() / 4);
+
+		// Empty gzip encoded body is read as empty, and connection is kept.
+		resp = transport.get(server.getBaseUrl() + "notmodified");
+		assertEquals(304, resp.getStatus());
+		assertEquals("", resp.readString());
+		resp.close();
+		assertEquals(1, transport.getReusedCount("127.0.0.1"));
+	}
+
+}
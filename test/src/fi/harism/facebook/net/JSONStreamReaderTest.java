@@ -0,0 +1,158 @@
+package fi.harism.facebook.net;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Vector;
+
+import junit.framework.TestCase;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Tests for JSONStreamReader.
+ * 
+ * @author harism
+ */
+public class JSONStreamReaderTest extends TestCase {
+
+	public void testDataItemsAreHandledInOrder() throws Exception {
+		Vector<JSONObject> items = new Vector<JSONObject>();
+		JSONObject rest = read("{\"data\": [{\"id\": \"1\"}, {\"id\": \"2\"},"
+				+ " {\"id\": \"3\"}], \"paging\": {\"next\": \"url\"}}", items);
+		assertEquals(3, items.size());
+		for (int i = 0; i < items.size(); ++i) {
+			assertEquals("" + (i + 1), items.get(i).getString("id"));
+		}
+		assertFalse(rest.has("data"));
+		assertEquals("url", rest.getJSONObject("paging").getString("next"));
+	}
+
+	public void testEmptyResponses() throws Exception {
+		Vector<JSONObject> items = new Vector<JSONObject>();
+		assertEquals(0, read("{}", items).length());
+		assertEquals(0, read(" { \"data\" : [ ] } ", items).length());
+		assertEquals(0, items.size());
+	}
+
+	public void testValues() throws Exception {
+		Vector<JSONObject> items = new Vector<JSONObject>();
+		read("{\"data\":[{\"s\":\"a\\\"b\\\\c\\/d\\n\\u00e4\",\"i\":-12,"
+				+ "\"l\":12345678901,\"d\":1.5e2,\"t\":true,\"f\":false,"
+				+ "\"n\":null,\"a\":[1,[],{}],\"o\":{\"k\":\"v\"}}]}", items);
+		JSONObject item = items.get(0);
+		assertEquals("a\"b\\c/d\n\u00e4", item.getString("s"));
+		assertEquals(-12, item.getInt("i"));
+		assertEquals(12345678901L, item.getLong("l"));
+		assertEquals(150.0, item.getDouble("d"));
+		assertTrue(item.getBoolean("t"));
+		assertFalse(item.getBoolean("f"));
+		assertTrue(item.isNull("n"));
+		JSONArray array = item.getJSONArray("a");
+		assertEquals(3, array.length());
+		assertEquals(1, array.getInt(0));
+		assertEquals(0, array.getJSONArray(1).length());
+		assertEquals(0, array.getJSONObject(2).length());
+		assertEquals("v", item.getJSONObject("o").getString("k"));
+	}
+
+	public void testNonArrayDataIsReturned() throws Exception {
+		Vector<JSONObject> items = new Vector<JSONObject>();
+		JSONObject rest = read("{\"data\":{\"id\":\"1\"}}", items);
+		assertEquals(0, items.size());
+		assertEquals("1", rest.getJSONObject("data").getString("id"));
+	}
+
+	public void testErrorObjectThrows() throws Exception {
+		try {
+			read("{\"error\":{\"type\":\"OAuthException\",\"message\":\"Bad\"}}",
+					new Vector<JSONObject>());
+			fail();
+		} catch (IOException ex) {
+			assertEquals("OAuthException: Bad", ex.getMessage());
+		}
+	}
+
+	public void testInvalidJSONThrows() throws Exception {
+		String invalid[] = { "", "[]", "{\"data\":[{\"id\":1}", "{\"a\":tru}",
+				"{\"a\":\"b}", "{\"a\" 1}", "{\"a\":1,}", "{\"a\":\"\\u12g4\"}" };
+		for (String json : invalid) {
+			try {
+				read(json, new Vector<JSONObject>());
+				fail(json);
+			} catch (JSONException ex) {
+			}
+		}
+	}
+
+	/**
+	 * Items are handed out while response is being read, not after reading
+	 * whole response.
+	 */
+	public void testItemsAreHandledWhileReading() throws Exception {
+		final int itemCount = 1000;
+		StringBuilder json = new StringBuilder("{\"data\":[");
+		for (int i = 0; i < itemCount; ++i) {
+			json.append(i > 0 ? "," : "").append("{\"id\":").append(i)
+					.append('}');
+		}
+		json.append("]}");
+		final CountingReader reader = new CountingReader(new StringReader(
+				json.toString()));
+		final int readCounts[] = new int[itemCount];
+		new JSONStreamReader(reader).readResponse(
+				new JSONStreamReader.DataHandler() {
+					private int index = 0;
+
+					@Override
+					public void onData(JSONObject item) throws JSONException {
+						readCounts[index++] = reader.readCount;
+					}
+				});
+		assertTrue(readCounts[0] < json.length() / 100);
+		assertTrue(readCounts[itemCount / 2] < json.length() * 2 / 3);
+		assertEquals(json.length(), reader.readCount);
+	}
+
+	private JSONObject read(String json, final Vector<JSONObject> items)
+			throws IOException, JSONException {
+		return new JSONStreamReader(new StringReader(json))
+				.readResponse(new JSONStreamReader.DataHandler() {
+					@Override
+					public void onData(JSONObject item) {
+						items.add(item);
+					}
+				});
+	}
+
+	/**
+	 * Reader counting characters read through it.
+	 */
+	private static final class CountingReader extends Reader {
+
+		private Reader reader;
+		private int readCount;
+
+		public CountingReader(Reader reader) {
+			this.reader = reader;
+		}
+
+		@Override
+		public void close() throws IOException {
+			reader.close();
+		}
+
+		@Override
+		public int read(char[] buffer, int offset, int length)
+				throws IOException {
+			int readLength = reader.read(buffer, offset, length);
+			if (readLength > 0) {
+				readCount += readLength;
+			}
+			return readLength;
+		}
+	}
+
+}
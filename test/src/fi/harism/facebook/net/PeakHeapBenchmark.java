@@ -0,0 +1,163 @@
+package fi.harism.facebook.net;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.Vector;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * JVM benchmark comparing heap held while loading a friend list of 1000 and
+ * 5000 friends from a local GraphServer. Streaming FBClient.requestData() is
+ * compared with the original path, which read whole response into a String
+ * and parsed it into a JSONObject tree before walking it. Both keep id and
+ * name of every friend, as FBFriendList does, so difference between them is
+ * the String and the tree. Live heap above baseline is sampled after garbage
+ * collection where each path holds most, after last item for streaming and
+ * after parsing for original path. Full collections of serial collector
+ * leave some dead objects in place unless told not to, run with
+ * 
+ * java -XX:+UseSerialGC -XX:MarkSweepDeadRatio=0 -cp bin-test
+ * fi.harism.facebook.net.PeakHeapBenchmark
+ * 
+ * @author harism
+ */
+public class PeakHeapBenchmark {
+
+	public static void main(String args[]) throws Exception {
+		int friendCounts[] = { 1000, 5000 };
+		final Vector<String> body = new Vector<String>();
+		GraphServer server = new GraphServer(new GraphServer.Responder() {
+			@Override
+			public GraphServer.Response respond(GraphServer.Request request) {
+				return new GraphServer.Response(200, body.get(0), null);
+			}
+		});
+		File cacheDir = File.createTempFile("peakheap", "");
+		cacheDir.delete();
+		final FBClient client = new FBClient(cacheDir, server.getBaseUrl(),
+				server.getBaseUrl() + "fql");
+		try {
+			// First pass warms up JIT, second one is reported.
+			for (int pass = 0; pass < 2; ++pass) {
+				for (final int friendCount : friendCounts) {
+					body.clear();
+					body.add(createFriends(friendCount));
+
+					long streaming = runStreaming(client, friendCount);
+					long original = runOriginal(client, server.getBaseUrl(),
+							friendCount);
+					if (pass == 1) {
+						System.out.println(friendCount + " friends ("
+								+ body.get(0).length() + " bytes): original="
+								+ original / 1024 + "kB streaming="
+								+ streaming / 1024 + "kB");
+					}
+				}
+			}
+		} finally {
+			client.clearCache();
+			server.close();
+		}
+	}
+
+	/**
+	 * Loads friend list with FBClient.requestData() and returns live heap above
+	 * baseline once last friend has been handled.
+	 */
+	private static long runStreaming(FBClient client, final int friendCount)
+			throws Exception {
+		final Vector<String[]> friends = new Vector<String[]>();
+		final long usedHeap[] = new long[1];
+		long baseline = getUsedHeap();
+		client.requestData("12345/friends", null,
+				new JSONStreamReader.DataHandler() {
+					@Override
+					public void onData(JSONObject item) throws JSONException {
+						friends.add(new String[] { item.getString("id"),
+								item.getString("name") });
+						if (friends.size() == friendCount) {
+							usedHeap[0] = getUsedHeap();
+						}
+					}
+				});
+		if (friends.size() != friendCount) {
+			throw new IllegalStateException("Invalid friend count");
+		}
+		return usedHeap[0] - baseline;
+	}
+
+	/**
+	 * Loads friend list into a String, parses it into a JSONObject tree and
+	 * walks it. Returns live heap above baseline while String and tree are
+	 * still referenced.
+	 */
+	private static long runOriginal(FBClient client, String baseUrl,
+			int friendCount) throws Exception {
+		Vector<String[]> friends = new Vector<String[]>();
+		long baseline = getUsedHeap();
+		HttpTransport.Response resp = client.getHttpTransport().get(
+				baseUrl + "12345/friends");
+		String response = resp.readString();
+		resp.close();
+		JSONObject tree = new JSONObject(response);
+		JSONArray data = tree.getJSONArray("data");
+		for (int i = 0; i < data.length(); ++i) {
+			JSONObject item = data.getJSONObject(i);
+			friends.add(new String[] { item.getString("id"),
+					item.getString("name") });
+		}
+		long usedHeap = getUsedHeap();
+		// String and tree are used after sampling so that they are live.
+		if (friends.size() != friendCount || tree.length() == 0
+				|| response.length() == 0) {
+			throw new IllegalStateException("Invalid friend count");
+		}
+		return usedHeap - baseline;
+	}
+
+	/**
+	 * Creates friend list response with given number of friends.
+	 */
+	private static String createFriends(int friendCount)
+			throws JSONException {
+		JSONArray data = new JSONArray();
+		for (int i = 0; i < friendCount; ++i) {
+			JSONObject friend = new JSONObject();
+			friend.put("id", "" + (100000000 + i));
+			friend.put("name", "Friend Name " + i);
+			friend.put("picture", "http://profile.ak.fbcdn.net/" + i
+					+ "_q.jpg");
+			data.put(friend);
+		}
+		JSONObject paging = new JSONObject();
+		paging.put("next", "https://graph.facebook.com/me/friends?offset="
+				+ friendCount);
+		JSONObject out = new JSONObject();
+		out.put("data", data);
+		out.put("paging", paging);
+		return out.toString();
+	}
+
+	/**
+	 * Runs garbage collection and returns bytes of heap left in use, as
+	 * reported by heap memory pools after collection.
+	 */
+	private static long getUsedHeap() {
+		System.gc();
+		long usedHeap = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			MemoryUsage usage = pool.getCollectionUsage();
+			if (pool.getType() == MemoryType.HEAP && usage != null) {
+				usedHeap += usage.getUsed();
+			}
+		}
+		return usedHeap;
+	}
+
+}
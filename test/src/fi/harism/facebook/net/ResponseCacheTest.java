@@ -0,0 +1,133 @@
+package fi.harism.facebook.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+import fi.harism.facebook.util.DiskCache;
+
+/**
+ * Tests for ResponseCache freshness rules, invalidation and storage.
+ * 
+ * @author harism
+ */
+public class ResponseCacheTest extends TestCase {
+
+	private File cacheDir;
+	private ResponseCache responseCache;
+
+	@Override
+	protected void setUp() throws Exception {
+		cacheDir = File.createTempFile("responses", "");
+		cacheDir.delete();
+		responseCache = new ResponseCache(cacheDir, 1024 * 1024, 0);
+		responseCache.setMaxAge("me", 60 * 1000);
+		responseCache.setMaxAge("me/home", 60 * 1000);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		responseCache.clear();
+		cacheDir.delete();
+	}
+
+	public void testMaxAgeAppliesToExactPathOnly() {
+		ResponseCache.Entry entry = newEntry(System.currentTimeMillis());
+		assertTrue(responseCache.isFresh("me", entry));
+		assertTrue(responseCache.isFresh("me/home", entry));
+		// Paths without a rule of their own are always revalidated.
+		assertFalse(responseCache.isFresh("me/feed", entry));
+		assertFalse(responseCache.isFresh("12345", entry));
+		assertFalse(responseCache.isFresh("someme", entry));
+		assertFalse(responseCache.isFresh("12345/me", entry));
+	}
+
+	public void testOldEntryIsStale() {
+		ResponseCache.Entry entry = newEntry(System.currentTimeMillis()
+				- 61 * 1000);
+		assertFalse(responseCache.isFresh("me", entry));
+	}
+
+	public void testInvalidateMarksObjectPathsStale() throws Exception {
+		ResponseCache.Entry entry = newEntry(System.currentTimeMillis());
+		responseCache.invalidate("me/feed");
+		assertFalse(responseCache.isFresh("me", entry));
+		assertFalse(responseCache.isFresh("me/home", entry));
+
+		// Entries validated after modification are fresh again.
+		Thread.sleep(10);
+		ResponseCache.Entry newEntry = newEntry(System.currentTimeMillis());
+		assertTrue(responseCache.isFresh("me/home", newEntry));
+	}
+
+	public void testInvalidateLeavesOtherObjects() {
+		responseCache.setMaxAge("12345", 60 * 1000);
+		ResponseCache.Entry entry = newEntry(System.currentTimeMillis());
+		responseCache.invalidate("54321/comments");
+		assertTrue(responseCache.isFresh("12345", entry));
+		assertTrue(responseCache.isFresh("me", entry));
+	}
+
+	public void testEntrySurvivesRestart() throws Exception {
+		ResponseCache.Entry entry = newEntry(1234);
+		entry.eTag = "\"tag\"";
+		DiskCache.Editor editor = responseCache.put("me?", entry);
+		editor.write("{\"id\":\"me\"}".getBytes("UTF-8"));
+		editor.commit();
+
+		ResponseCache restarted = new ResponseCache(cacheDir, 1024 * 1024, 0);
+		ResponseCache.Entry stored = restarted.get("me?");
+		assertNotNull(stored);
+		assertEquals(1234, stored.time);
+		assertEquals("\"tag\"", stored.eTag);
+		assertNull(stored.lastModified);
+		assertEquals("{\"id\":\"me\"}", readBody(stored));
+		assertNull(restarted.get("me/home?"));
+	}
+
+	public void testAbortKeepsPreviousEntry() throws Exception {
+		DiskCache.Editor editor = responseCache.put("me?", newEntry(1));
+		editor.write("first".getBytes("UTF-8"));
+		editor.commit();
+		editor = responseCache.put("me?", newEntry(2));
+		editor.write("second".getBytes("UTF-8"));
+		editor.abort();
+
+		ResponseCache.Entry stored = responseCache.get("me?");
+		assertEquals(1, stored.time);
+		assertEquals("first", readBody(stored));
+	}
+
+	public void testOversizedBodyRemovesEntry() throws Exception {
+		ResponseCache smallCache = new ResponseCache(cacheDir, 100, 0);
+		DiskCache.Editor editor = smallCache.put("me?", newEntry(1));
+		editor.write("first".getBytes("UTF-8"));
+		editor.commit();
+		editor = smallCache.put("me?", newEntry(2));
+		editor.write(new byte[100]);
+		editor.commit();
+		assertNull(smallCache.get("me?"));
+	}
+
+	/**
+	 * Reads and closes body of given entry.
+	 */
+	private String readBody(ResponseCache.Entry entry) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte buffer[] = new byte[1024];
+		int readLength;
+		while ((readLength = entry.body.read(buffer)) != -1) {
+			out.write(buffer, 0, readLength);
+		}
+		entry.body.close();
+		return out.toString("UTF-8");
+	}
+
+	private ResponseCache.Entry newEntry(long time) {
+		ResponseCache.Entry entry = new ResponseCache.Entry();
+		entry.time = time;
+		return entry;
+	}
+
+}
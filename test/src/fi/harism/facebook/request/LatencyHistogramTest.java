@@ -0,0 +1,57 @@
+package fi.harism.facebook.request;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for LatencyHistogram.
+ * 
+ * @author harism
+ */
+public class LatencyHistogramTest extends TestCase {
+
+	public void testEmptyHistogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMean());
+		assertEquals(0, histogram.getMax());
+		assertEquals(0, histogram.getPercentile(50));
+	}
+
+	public void testPercentilesAreWithinFactorOfTwo() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 100; ++i) {
+			histogram.add(i);
+		}
+		assertEquals(100, histogram.getCount());
+		assertEquals(50, histogram.getMean());
+		assertEquals(100, histogram.getMax());
+		long p50 = histogram.getPercentile(50);
+		assertTrue(p50 >= 50 && p50 <= 100);
+		long p90 = histogram.getPercentile(90);
+		assertTrue(p90 >= 90 && p90 <= 100);
+		// Upper bound is never above largest value.
+		assertEquals(100, histogram.getPercentile(99));
+		assertEquals(100, histogram.getPercentile(100));
+	}
+
+	public void testNegativeAndHugeValues() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.add(-5);
+		histogram.add(Long.MAX_VALUE / 2);
+		assertEquals(2, histogram.getCount());
+		// Negative value is counted as 0, into bucket with upper bound 1.
+		assertEquals(1, histogram.getPercentile(50));
+		assertEquals(Long.MAX_VALUE / 2, histogram.getPercentile(100));
+	}
+
+	public void testCopyIsIndependent() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.add(10);
+		LatencyHistogram copy = new LatencyHistogram(histogram);
+		histogram.add(20);
+		assertEquals(1, copy.getCount());
+		assertEquals(10, copy.getMax());
+		assertEquals(2, histogram.getCount());
+	}
+
+}
@@ -0,0 +1,137 @@
+package fi.harism.facebook.request;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import android.os.SystemClock;
+import junit.framework.TestCase;
+
+/**
+ * Tests for RequestMetrics snapshots recorded by RequestQueue. SystemClock is
+ * replaced with a fake one so that recorded times are exact.
+ * 
+ * @author harism
+ */
+public class RequestMetricsTest extends TestCase {
+
+	private RequestQueue queue;
+
+	@Override
+	protected void setUp() {
+		RequestMetrics.getInstance().reset();
+		SystemClock.setFakeTime(1000);
+		queue = new RequestQueue(1);
+	}
+
+	@Override
+	protected void tearDown() {
+		queue.destroy();
+		SystemClock.setFakeTime(-1);
+	}
+
+	public void testSnapshotCountsAndPercentiles() throws Exception {
+		CountDownLatch gate = blockWorker();
+		CountDownLatch done = new CountDownLatch(4);
+		for (int i = 0; i < 3; ++i) {
+			queue.addRequest(new CountRequest("a", done));
+		}
+		CountRequest expired = new CountRequest("a", done);
+		expired.setTimeToLive(50);
+		queue.addRequest(expired);
+		SystemClock.setFakeTime(1090);
+		queue.addRequest(new CountRequest("b", done));
+		SystemClock.setFakeTime(1100);
+		gate.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		// Execution is recorded once run() has returned.
+		long timeout = System.currentTimeMillis() + 5000;
+		while (getEntry().executeTime.getCount() < 4
+				&& System.currentTimeMillis() < timeout) {
+			Thread.sleep(10);
+		}
+
+		RequestMetrics.Entry entry = getEntry();
+		assertEquals(1, entry.expireCount);
+		assertEquals(0, entry.cancelCount);
+		// Three Requests waited 100ms and one 10ms.
+		assertEquals(4, entry.queueTime.getCount());
+		assertEquals(100, entry.queueTime.getMax());
+		assertEquals(100, entry.queueTime.getPercentile(50));
+		assertEquals(100, entry.queueTime.getPercentile(99));
+		assertEquals(16, entry.queueTime.getPercentile(25));
+		assertEquals(4, entry.executeTime.getCount());
+		assertEquals(0, entry.executeTime.getMax());
+		// Plain Requests are not delivered to UI thread.
+		assertEquals(0, entry.totalTime.getCount());
+	}
+
+	public void testRemovedRequestsAreCountedAsCancelled() throws Exception {
+		CountDownLatch gate = blockWorker();
+		CountDownLatch done = new CountDownLatch(1);
+		queue.setPaused("paused", true);
+		queue.addRequest(new CountRequest("a", done));
+		queue.addRequest(new CountRequest("paused", done));
+		queue.addRequest(new CountRequest("b", done));
+		queue.removeRequests("a");
+		assertEquals(1, getEntry().cancelCount);
+		// Queued Requests, paused ones included, are cancelled too.
+		queue.removeRequests();
+		assertEquals(3, getEntry().cancelCount);
+		gate.countDown();
+		assertEquals(0, getEntry().queueTime.getCount());
+	}
+
+	private static RequestMetrics.Entry getEntry() {
+		return RequestMetrics.getInstance().getSnapshot().get(
+				CountRequest.class.getName());
+	}
+
+	/**
+	 * Adds a Request which blocks WorkerThread until returned latch is
+	 * released.
+	 */
+	private CountDownLatch blockWorker() throws Exception {
+		final CountDownLatch gate = new CountDownLatch(1);
+		final CountDownLatch started = new CountDownLatch(1);
+		queue.addRequest(new Request("gate") {
+			@Override
+			public void run() {
+				started.countDown();
+				try {
+					gate.await();
+				} catch (InterruptedException ex) {
+				}
+			}
+
+			@Override
+			public void cancel() {
+				gate.countDown();
+			}
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		return gate;
+	}
+
+	/**
+	 * Request which counts down given latch once executed.
+	 */
+	private static final class CountRequest extends Request {
+
+		private CountDownLatch done;
+
+		public CountRequest(Object key, CountDownLatch done) {
+			super(key);
+			this.done = done;
+		}
+
+		@Override
+		public void cancel() {
+		}
+
+		@Override
+		public void run() {
+			done.countDown();
+		}
+	}
+
+}
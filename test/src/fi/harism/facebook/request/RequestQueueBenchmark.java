@@ -0,0 +1,228 @@
+package fi.harism.facebook.request;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * JVM benchmarks for RequestQueue.
+ * 
+ * Worker count: a screenful of avatar loads, each waiting for network for a
+ * while and decoding shortly afterwards, is executed with 1, 4 and 8
+ * WorkerThreads. Reported are time until all of them are done and median and
+ * 90th percentile queue latency.
+ * 
+ * Keys: 10k empty Requests over 20 keys with mixed priorities, 5 keys being
+ * paused, are executed by one WorkerThread. RequestQueue is compared with the
+ * original queue which scanned a sorted list on every addition and removal.
+ * 
+ * Run with
+ * 
+ * java -cp bin-test fi.harism.facebook.request.RequestQueueBenchmark
+ * 
+ * @author harism
+ */
+public class RequestQueueBenchmark {
+
+	// Number of avatar loads.
+	private static final int REQUEST_COUNT = 100;
+	// Simulated network latency per load in milliseconds.
+	private static final int NETWORK_TIME = 20;
+	// Simulated decode time per load in nanoseconds.
+	private static final long DECODE_TIME = 500000;
+
+	// Number of Requests and keys for key benchmark.
+	private static final int KEYED_REQUEST_COUNT = 10000;
+	private static final int KEY_COUNT = 20;
+	private static final int PAUSED_KEY_COUNT = 5;
+
+	public static void main(String args[]) throws Exception {
+		runWorkers();
+		runKeys();
+	}
+
+	private static void runWorkers() throws Exception {
+		int workerCounts[] = { 1, 4, 8 };
+		// First pass warms up JIT, second one is reported.
+		for (int pass = 0; pass < 2; ++pass) {
+			for (int workerCount : workerCounts) {
+				RequestQueue queue = new RequestQueue(workerCount);
+				final CountDownLatch done = new CountDownLatch(REQUEST_COUNT);
+				long start = System.nanoTime();
+				for (int i = 0; i < REQUEST_COUNT; ++i) {
+					queue.addRequest(new Request("key" + (i % 4)) {
+						@Override
+						public void run() {
+							try {
+								Thread.sleep(NETWORK_TIME);
+							} catch (InterruptedException ex) {
+							}
+							long end = System.nanoTime() + DECODE_TIME;
+							while (System.nanoTime() < end) {
+							}
+							done.countDown();
+						}
+
+						@Override
+						public void cancel() {
+						}
+					});
+				}
+				done.await();
+				long time = (System.nanoTime() - start) / 1000000;
+				LatencyHistogram latency = queue
+						.getQueueLatency(Request.PRIORITY_NORMAL);
+				queue.destroy();
+				if (pass == 1) {
+					System.out.println(workerCount + " workers: "
+							+ REQUEST_COUNT + " loads in " + time
+							+ "ms, queue latency p50="
+							+ latency.getPercentile(50) + "ms p90="
+							+ latency.getPercentile(90) + "ms");
+				}
+			}
+		}
+	}
+
+	private static void runKeys() throws Exception {
+		// First passes warm up JIT, last one is reported.
+		for (int pass = 0; pass < 3; ++pass) {
+			long queueTime = runKeys(new Queue(new RequestQueue(1)));
+			long listTime = runKeys(new ListQueue());
+			if (pass == 2) {
+				System.out.println(KEYED_REQUEST_COUNT + " requests over "
+						+ KEY_COUNT + " keys: list=" + listTime
+						+ "ms requestqueue=" + queueTime + "ms");
+			}
+		}
+	}
+
+	/**
+	 * Adds Requests and returns time in milliseconds until all Requests with
+	 * keys not paused have been executed.
+	 */
+	private static long runKeys(Queue queue) throws Exception {
+		int pausedCount = KEYED_REQUEST_COUNT * PAUSED_KEY_COUNT / KEY_COUNT;
+		final CountDownLatch done = new CountDownLatch(KEYED_REQUEST_COUNT
+				- pausedCount);
+		for (int i = 0; i < PAUSED_KEY_COUNT; ++i) {
+			queue.setPaused("key" + i, true);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < KEYED_REQUEST_COUNT; ++i) {
+			Request request = new Request("key" + (i % KEY_COUNT)) {
+				@Override
+				public void run() {
+					done.countDown();
+				}
+
+				@Override
+				public void cancel() {
+				}
+			};
+			request.setPriority(Request.PRIORITY_LOW + (i % 3) * 200);
+			queue.addRequest(request);
+		}
+		done.await();
+		long time = (System.nanoTime() - start) / 1000000;
+		queue.destroy();
+		return time;
+	}
+
+	/**
+	 * Queue under benchmark.
+	 */
+	private static class Queue {
+
+		private RequestQueue requestQueue;
+
+		public Queue(RequestQueue requestQueue) {
+			this.requestQueue = requestQueue;
+		}
+
+		public void addRequest(Request request) {
+			requestQueue.addRequest(request);
+		}
+
+		public void destroy() {
+			requestQueue.destroy();
+		}
+
+		public void setPaused(Object key, boolean paused) {
+			requestQueue.setPaused(key, paused);
+		}
+	}
+
+	/**
+	 * Original RequestQueue keeping Requests in a list sorted by priority,
+	 * which is scanned for first Request not paused.
+	 */
+	private static final class ListQueue extends Queue implements Runnable {
+
+		private ArrayList<Object> pausedList = new ArrayList<Object>();
+		private ArrayList<Request> requestList = new ArrayList<Request>();
+		private volatile boolean keepRunning = true;
+
+		public ListQueue() {
+			super(null);
+			new Thread(this).start();
+		}
+
+		@Override
+		public void addRequest(Request request) {
+			synchronized (requestList) {
+				int index = 0;
+				while (index < requestList.size()
+						&& requestList.get(index).getPriority() >= request
+								.getPriority()) {
+					++index;
+				}
+				requestList.add(index, request);
+				requestList.notify();
+			}
+		}
+
+		@Override
+		public void destroy() {
+			keepRunning = false;
+			synchronized (requestList) {
+				requestList.notify();
+			}
+		}
+
+		@Override
+		public void setPaused(Object key, boolean paused) {
+			synchronized (requestList) {
+				if (paused) {
+					pausedList.add(key);
+				} else {
+					pausedList.remove(key);
+				}
+				requestList.notify();
+			}
+		}
+
+		@Override
+		public void run() {
+			while (keepRunning) {
+				Request request = null;
+				synchronized (requestList) {
+					for (int i = 0; i < requestList.size(); ++i) {
+						if (!pausedList.contains(requestList.get(i).getKey())) {
+							request = requestList.remove(i);
+							break;
+						}
+					}
+					if (request == null) {
+						try {
+							requestList.wait();
+						} catch (InterruptedException ex) {
+						}
+						continue;
+					}
+				}
+				request.run();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,227 @@
+package fi.harism.facebook.request;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for RequestQueue ordering, pausing and concurrent use.
+ * 
+ * @author harism
+ */
+public class RequestQueueTest extends TestCase {
+
+	private RequestQueue queue;
+
+	@Override
+	protected void tearDown() {
+		if (queue != null) {
+			queue.destroy();
+		}
+	}
+
+	public void testPriorityOrder() throws Exception {
+		queue = new RequestQueue(1);
+		CountDownLatch gate = blockWorker("gate");
+		List<String> order = Collections
+				.synchronizedList(new ArrayList<String>());
+		CountDownLatch done = new CountDownLatch(4);
+		queue.addRequest(new NameRequest("a", "low1", Request.PRIORITY_LOW,
+				order, done));
+		queue.addRequest(new NameRequest("b", "high", Request.PRIORITY_HIGH,
+				order, done));
+		queue.addRequest(new NameRequest("c", "low2", Request.PRIORITY_LOW,
+				order, done));
+		queue.addRequest(new NameRequest("a", "normal",
+				Request.PRIORITY_NORMAL, order, done));
+		gate.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals("[high, normal, low1, low2]", order.toString());
+	}
+
+	public void testPausedKeyRunsOnlyOnceResumed() throws Exception {
+		queue = new RequestQueue(2);
+		List<String> order = Collections
+				.synchronizedList(new ArrayList<String>());
+		CountDownLatch done = new CountDownLatch(2);
+		queue.setPaused("paused", true);
+		queue.addRequest(new NameRequest("paused", "p",
+				Request.PRIORITY_HIGH, order, done));
+		queue.addRequest(new NameRequest("other", "o", Request.PRIORITY_LOW,
+				order, done));
+		assertFalse(done.await(300, TimeUnit.MILLISECONDS));
+		assertEquals("[o]", order.toString());
+		queue.setPaused("paused", false);
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals("[o, p]", order.toString());
+	}
+
+	public void testExpiredRequestIsDropped() throws Exception {
+		queue = new RequestQueue(1);
+		CountDownLatch gate = blockWorker("gate");
+		List<String> order = Collections
+				.synchronizedList(new ArrayList<String>());
+		CountDownLatch done = new CountDownLatch(1);
+		NameRequest expired = new NameRequest("a", "expired",
+				Request.PRIORITY_HIGH, order, done);
+		expired.setTimeToLive(10);
+		queue.addRequest(expired);
+		queue.addRequest(new NameRequest("a", "live", Request.PRIORITY_LOW,
+				order, done));
+		Thread.sleep(50);
+		gate.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals("[live]", order.toString());
+		assertEquals(1, queue.getExpiredCount());
+	}
+
+	public void testSetPriorityReordersQueuedRequests() throws Exception {
+		queue = new RequestQueue(1);
+		CountDownLatch gate = blockWorker("gate");
+		List<String> order = Collections
+				.synchronizedList(new ArrayList<String>());
+		CountDownLatch done = new CountDownLatch(5);
+		queue.addRequest(new NameRequest("a", "a1", Request.PRIORITY_NORMAL,
+				order, done));
+		queue.addRequest(new NameRequest("b", "b1", Request.PRIORITY_NORMAL,
+				order, done));
+		queue.addRequest(new NameRequest("a", "a2", Request.PRIORITY_NORMAL,
+				order, done));
+		queue.addRequest(new NameRequest("c", "c1", Request.PRIORITY_LOW,
+				order, done));
+		queue.addRequest(new NameRequest("c", "c2", Request.PRIORITY_LOW,
+				order, done));
+		// Scrolled out of view.
+		queue.setPriority("a", Request.PRIORITY_LOW);
+		// Scrolled into view, by filter as requests share their key.
+		queue.setPriority(new RequestQueue.Filter() {
+			@Override
+			public boolean accept(Request request) {
+				return request instanceof NameRequest
+						&& ((NameRequest) request).name.equals("c2");
+			}
+		}, Request.PRIORITY_HIGH);
+		gate.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		// Same priority keeps order of addition.
+		assertEquals("[c2, b1, a1, a2, c1]", order.toString());
+	}
+
+	/**
+	 * Eight producers add 80000 Requests to four WorkerThreads while one key
+	 * is paused and resumed repeatedly. Every Request must be executed
+	 * exactly once.
+	 */
+	public void testConcurrentProducersRunEveryRequestOnce() throws Exception {
+		final int producerCount = 8;
+		final int requestsPerProducer = 10000;
+		final int requestCount = producerCount * requestsPerProducer;
+		queue = new RequestQueue(4);
+		final AtomicIntegerArray runCounts = new AtomicIntegerArray(
+				requestCount);
+		final CountDownLatch done = new CountDownLatch(requestCount);
+
+		Thread producers[] = new Thread[producerCount];
+		for (int p = 0; p < producerCount; ++p) {
+			final int first = p * requestsPerProducer;
+			producers[p] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < requestsPerProducer; ++i) {
+						final int id = first + i;
+						Request request = new Request("key" + (id % 20)) {
+							@Override
+							public void run() {
+								runCounts.incrementAndGet(id);
+								done.countDown();
+							}
+
+							@Override
+							public void cancel() {
+							}
+						};
+						request.setPriority(Request.PRIORITY_LOW + (i % 3)
+								* 200);
+						queue.addRequest(request);
+						if (i % 1000 == 0) {
+							queue.setPaused("key3", true);
+							queue.setPaused("key3", false);
+						}
+					}
+				}
+			};
+			producers[p].start();
+		}
+		for (Thread producer : producers) {
+			producer.join();
+		}
+
+		assertTrue(done.await(30, TimeUnit.SECONDS));
+		for (int i = 0; i < requestCount; ++i) {
+			assertEquals("Request " + i, 1, runCounts.get(i));
+		}
+	}
+
+	/**
+	 * Adds a Request which blocks its WorkerThread until returned latch is
+	 * released.
+	 */
+	private CountDownLatch blockWorker(Object key) throws Exception {
+		final CountDownLatch gate = new CountDownLatch(1);
+		final CountDownLatch started = new CountDownLatch(1);
+		Request request = new Request(key) {
+			@Override
+			public void run() {
+				started.countDown();
+				try {
+					gate.await();
+				} catch (InterruptedException ex) {
+				}
+			}
+
+			@Override
+			public void cancel() {
+				gate.countDown();
+			}
+		};
+		request.setPriority(Request.PRIORITY_HIGH + 1);
+		queue.addRequest(request);
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		return gate;
+	}
+
+	/**
+	 * Request which adds its name to given list once executed.
+	 */
+	private static final class NameRequest extends Request {
+
+		private String name;
+		private List<String> order;
+		private CountDownLatch done;
+
+		public NameRequest(Object key, String name, int priority,
+				List<String> order, CountDownLatch done) {
+			super(key);
+			setPriority(priority);
+			this.name = name;
+			this.order = order;
+			this.done = done;
+		}
+
+		@Override
+		public void cancel() {
+		}
+
+		@Override
+		public void run() {
+			order.add(name);
+			done.countDown();
+		}
+	}
+
+}
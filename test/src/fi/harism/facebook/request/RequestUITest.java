@@ -0,0 +1,179 @@
+package fi.harism.facebook.request;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+import fi.harism.facebook.net.HttpTransport;
+
+/**
+ * Tests for RequestUI cancellation and result delivery.
+ * 
+ * @author harism
+ */
+public class RequestUITest extends TestCase {
+
+	private RequestQueue queue;
+	private ServerSocket server;
+	private ArrayList<Socket> clients = new ArrayList<Socket>();
+
+	@Override
+	protected void setUp() throws Exception {
+		queue = new RequestQueue(2);
+		// Server which accepts connections but never responds.
+		server = new ServerSocket(0);
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						Socket socket = server.accept();
+						synchronized (clients) {
+							clients.add(socket);
+						}
+					}
+				} catch (Exception ex) {
+				}
+			}
+		}.start();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		queue.destroy();
+		server.close();
+		synchronized (clients) {
+			for (Socket socket : clients) {
+				socket.close();
+			}
+		}
+	}
+
+	/**
+	 * Request blocked reading a response is aborted once it's removed from
+	 * queue, instead of waiting for read timeout.
+	 */
+	public void testRemoveRequestsAbortsBlockedConnection() throws Exception {
+		final HttpTransport transport = new HttpTransport(2);
+		final String url = "http://127.0.0.1:" + server.getLocalPort() + "/";
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch finished = new CountDownLatch(1);
+		final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+		final Object key = new Object();
+
+		queue.addRequest(new RequestUI(key) {
+			@Override
+			public void execute() throws Exception {
+				started.countDown();
+				try {
+					transport.get(url).close();
+				} catch (Exception ex) {
+					failure.set(ex);
+					throw ex;
+				} finally {
+					finished.countDown();
+				}
+			}
+
+			@Override
+			public void executeUI(Exception ex) {
+			}
+		});
+
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		// Give request time to block on read.
+		Thread.sleep(200);
+		assertEquals(1, finished.getCount());
+
+		long time = System.currentTimeMillis();
+		queue.removeRequests(key);
+		assertTrue(finished.await(5, TimeUnit.SECONDS));
+		assertTrue(System.currentTimeMillis() - time < 5000);
+		assertNotNull(failure.get());
+	}
+
+	/**
+	 * cancel() is called without holding queue lock, so other WorkerThreads
+	 * keep taking Requests while a Request is being cancelled.
+	 */
+	public void testCancelDoesNotBlockOtherWorkers() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch otherRan = new CountDownLatch(1);
+		final AtomicReference<Boolean> ranDuringCancel = new AtomicReference<Boolean>();
+		final Object key = new Object();
+
+		queue.addRequest(new Request(key) {
+			private CountDownLatch cancelled = new CountDownLatch(1);
+
+			@Override
+			public void run() {
+				started.countDown();
+				try {
+					cancelled.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException ex) {
+				}
+			}
+
+			@Override
+			public void cancel() {
+				// Slow cancel, e.g. disconnecting a socket. Another Request
+				// must get executed meanwhile.
+				queue.addRequest(new Request("other") {
+					@Override
+					public void run() {
+						otherRan.countDown();
+					}
+
+					@Override
+					public void cancel() {
+					}
+				});
+				try {
+					ranDuringCancel.set(otherRan.await(5, TimeUnit.SECONDS));
+				} catch (InterruptedException ex) {
+				}
+				cancelled.countDown();
+			}
+		});
+
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		queue.removeRequests(key);
+		assertEquals(Boolean.TRUE, ranDuringCancel.get());
+	}
+
+	/**
+	 * postUI() delivers another executeUI() call for results completed after
+	 * execute() has returned, unless Request has been cancelled.
+	 */
+	public void testPostUIDeliversUntilCancelled() throws Exception {
+		final ArrayList<Exception> delivered = new ArrayList<Exception>();
+		RequestUI request = new RequestUI("key") {
+			@Override
+			public void execute() throws Exception {
+			}
+
+			@Override
+			public void executeUI(Exception ex) {
+				synchronized (delivered) {
+					delivered.add(ex);
+				}
+			}
+		};
+		// Test Handler runs posted Runnables at once.
+		request.run();
+		Exception ex = new Exception();
+		request.postUI(ex);
+		request.cancel();
+		request.postUI(null);
+		synchronized (delivered) {
+			assertEquals(2, delivered.size());
+			assertNull(delivered.get(0));
+			assertSame(ex, delivered.get(1));
+		}
+	}
+
+}
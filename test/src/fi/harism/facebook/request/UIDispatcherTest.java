@@ -0,0 +1,105 @@
+package fi.harism.facebook.request;
+
+import java.util.ArrayList;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import junit.framework.TestCase;
+
+/**
+ * Tests for UIDispatcher batching. Test Handler holds posted messages until
+ * they are run explicitly, and SystemClock is replaced with a fake one.
+ * 
+ * @author harism
+ */
+public class UIDispatcherTest extends TestCase {
+
+	private UIDispatcher dispatcher;
+	private ArrayList<Integer> ran;
+	private long time;
+
+	@Override
+	protected void setUp() {
+		dispatcher = UIDispatcher.getInstance();
+		ran = new ArrayList<Integer>();
+		time = 1000;
+		SystemClock.setFakeTime(time);
+		Handler.setHoldMessages(true);
+	}
+
+	@Override
+	protected void tearDown() {
+		// Dispatcher expects its posted message to run eventually.
+		while (Handler.runMessage()) {
+		}
+		Handler.setHoldMessages(false);
+		SystemClock.setFakeTime(-1);
+	}
+
+	public void testPostsAreRunInOneBatch() {
+		int batchCount = dispatcher.getBatchCount();
+		int callbackCount = dispatcher.getCallbackCount();
+		for (int i = 0; i < 5; ++i) {
+			dispatcher.post(new TimedRunnable(i, 0));
+		}
+		// Only first post sends a message.
+		assertEquals(1, Handler.getMessageCount());
+		assertTrue(Handler.runMessage());
+		assertEquals("[0, 1, 2, 3, 4]", ran.toString());
+		assertEquals(0, Handler.getMessageCount());
+		assertEquals(batchCount + 1, dispatcher.getBatchCount());
+		assertEquals(callbackCount + 5, dispatcher.getCallbackCount());
+		assertTrue(dispatcher.getMaxBatchSize() >= 5);
+
+		// Next post after batch sends a new message.
+		dispatcher.post(new TimedRunnable(5, 0));
+		assertEquals(1, Handler.getMessageCount());
+	}
+
+	public void testBatchIsHandedOffOnceOutOfBudget() {
+		int batchCount = dispatcher.getBatchCount();
+		for (int i = 0; i < 5; ++i) {
+			dispatcher.post(new TimedRunnable(i, 3));
+		}
+		// 3 + 3 + 3 ms exceeds 8 ms budget, rest is left for next message.
+		assertTrue(Handler.runMessage());
+		assertEquals("[0, 1, 2]", ran.toString());
+		assertEquals(1, Handler.getMessageCount());
+		assertTrue(Handler.runMessage());
+		assertEquals("[0, 1, 2, 3, 4]", ran.toString());
+		assertEquals(0, Handler.getMessageCount());
+		assertEquals(batchCount + 2, dispatcher.getBatchCount());
+	}
+
+	public void testSlowRunnableRunsAlone() {
+		dispatcher.post(new TimedRunnable(0, 20));
+		dispatcher.post(new TimedRunnable(1, 0));
+		// Every message runs at least one Runnable however long it takes.
+		assertTrue(Handler.runMessage());
+		assertEquals("[0]", ran.toString());
+		assertTrue(Handler.runMessage());
+		assertEquals("[0, 1]", ran.toString());
+	}
+
+	/**
+	 * Runnable which records its index and advances fake clock.
+	 */
+	private final class TimedRunnable implements Runnable {
+
+		private int index;
+		private long duration;
+
+		public TimedRunnable(int index, long duration) {
+			this.index = index;
+			this.duration = duration;
+		}
+
+		@Override
+		public void run() {
+			ran.add(index);
+			time += duration;
+			SystemClock.setFakeTime(time);
+		}
+	}
+
+}
@@ -0,0 +1,78 @@
+package fi.harism.facebook.util;
+
+import android.graphics.Bitmap;
+import junit.framework.TestCase;
+
+/**
+ * Tests for BitmapCache budget and eviction order.
+ * 
+ * @author harism
+ */
+public class BitmapCacheTest extends TestCase {
+
+	public void testSizeIsCountedInPixelBytes() {
+		BitmapCache cache = new BitmapCache(100000);
+		cache.setBitmap("a", createBitmap(10, 10, Bitmap.Config.ARGB_8888));
+		cache.setBitmap("b", createBitmap(10, 10, Bitmap.Config.RGB_565));
+		assertEquals(600, cache.getSize());
+		// Replacing Bitmap subtracts size of previous one.
+		cache.setBitmap("a", createBitmap(20, 10, Bitmap.Config.ARGB_8888));
+		assertEquals(1000, cache.getSize());
+	}
+
+	public void testLeastRecentlyUsedIsEvicted() {
+		// Budget for three 10x10 ARGB_8888 Bitmaps.
+		BitmapCache cache = new BitmapCache(1200);
+		cache.setBitmap("a", createBitmap(10, 10, Bitmap.Config.ARGB_8888));
+		cache.setBitmap("b", createBitmap(10, 10, Bitmap.Config.ARGB_8888));
+		cache.setBitmap("c", createBitmap(10, 10, Bitmap.Config.ARGB_8888));
+		// Touch "a" so that "b" becomes least recently used.
+		assertNotNull(cache.getBitmap("a"));
+		cache.setBitmap("d", createBitmap(10, 10, Bitmap.Config.ARGB_8888));
+		assertNotNull(cache.getBitmap("a"));
+		assertNull(cache.getBitmap("b"));
+		assertNotNull(cache.getBitmap("c"));
+		assertNotNull(cache.getBitmap("d"));
+		assertEquals(1200, cache.getSize());
+	}
+
+	public void testLargeBitmapEvictsSeveral() {
+		BitmapCache cache = new BitmapCache(1200);
+		cache.setBitmap("a", createBitmap(10, 10, Bitmap.Config.ARGB_8888));
+		cache.setBitmap("b", createBitmap(10, 10, Bitmap.Config.ARGB_8888));
+		cache.setBitmap("c", createBitmap(10, 10, Bitmap.Config.ARGB_8888));
+		cache.setBitmap("d", createBitmap(20, 10, Bitmap.Config.ARGB_8888));
+		assertNull(cache.getBitmap("a"));
+		assertNull(cache.getBitmap("b"));
+		assertNotNull(cache.getBitmap("c"));
+		assertNotNull(cache.getBitmap("d"));
+		assertEquals(1200, cache.getSize());
+	}
+
+	public void testBitmapOverBudgetIsNotStored() {
+		BitmapCache cache = new BitmapCache(1200);
+		cache.setBitmap("a", createBitmap(10, 10, Bitmap.Config.ARGB_8888));
+		cache.setBitmap("b", createBitmap(40, 10, Bitmap.Config.ARGB_8888));
+		assertNull(cache.getBitmap("b"));
+		// Cached Bitmaps are not evicted for nothing.
+		assertNotNull(cache.getBitmap("a"));
+		assertEquals(400, cache.getSize());
+	}
+
+	public void testHitMissAndPutCounts() {
+		BitmapCache cache = new BitmapCache(1200);
+		cache.setBitmap("a", createBitmap(10, 10, Bitmap.Config.ARGB_8888));
+		cache.getBitmap("a");
+		cache.getBitmap("a");
+		cache.getBitmap("b");
+		assertEquals(2, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.getPutCount());
+	}
+
+	private static Bitmap createBitmap(int width, int height,
+			Bitmap.Config config) {
+		return Bitmap.createBitmap(width, height, config);
+	}
+
+}
@@ -0,0 +1,47 @@
+package fi.harism.facebook.util;
+
+import android.graphics.Bitmap;
+import junit.framework.TestCase;
+
+/**
+ * Tests for BitmapUtils.
+ * 
+ * @author harism
+ */
+public class BitmapUtilsTest extends TestCase {
+
+	public void testRoundBitmapReturnsNewBitmap() {
+		Bitmap source = Bitmap.createBitmap(50, 40, Bitmap.Config.RGB_565);
+		Bitmap rounded1 = BitmapUtils.roundBitmap(source, 5);
+		Bitmap rounded2 = BitmapUtils.roundBitmap(source, 5);
+		// Drawing objects are reused, rounded Bitmaps are not.
+		assertNotSame(rounded1, rounded2);
+		assertEquals(50, rounded1.getWidth());
+		assertEquals(40, rounded1.getHeight());
+		assertEquals(Bitmap.Config.ARGB_8888, rounded1.getConfig());
+	}
+
+	public void testRoundBitmapOnSeveralThreads() throws Exception {
+		final Bitmap results[] = new Bitmap[4];
+		Thread threads[] = new Thread[results.length];
+		for (int i = 0; i < threads.length; ++i) {
+			final int index = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 1000; ++j) {
+						Bitmap source = Bitmap.createBitmap(10 + index, 10,
+								Bitmap.Config.ARGB_8888);
+						results[index] = BitmapUtils.roundBitmap(source, 2);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; ++i) {
+			threads[i].join();
+			assertEquals(10 + i, results[i].getWidth());
+		}
+	}
+
+}
@@ -0,0 +1,49 @@
+package fi.harism.facebook.util;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for ByteArrayPool.
+ * 
+ * @author harism
+ */
+public class ByteArrayPoolTest extends TestCase {
+
+	public void testSmallestFittingBufferIsReused() {
+		ByteArrayPool pool = new ByteArrayPool(1000);
+		byte small[] = new byte[100];
+		byte medium[] = new byte[200];
+		byte large[] = new byte[300];
+		pool.returnBuffer(large);
+		pool.returnBuffer(small);
+		pool.returnBuffer(medium);
+		assertSame(medium, pool.getBuffer(150));
+		assertSame(small, pool.getBuffer(50));
+		// Pooled buffer is handed out once only.
+		assertSame(large, pool.getBuffer(50));
+		byte buffer[] = pool.getBuffer(50);
+		assertNotSame(small, buffer);
+		assertEquals(50, buffer.length);
+	}
+
+	public void testPoolSizeIsLimited() {
+		ByteArrayPool pool = new ByteArrayPool(500);
+		byte small[] = new byte[100];
+		byte medium[] = new byte[150];
+		byte large[] = new byte[300];
+		pool.returnBuffer(small);
+		pool.returnBuffer(large);
+		// Smallest buffer is dropped to make room.
+		pool.returnBuffer(medium);
+		assertSame(medium, pool.getBuffer(100));
+		assertSame(large, pool.getBuffer(100));
+		assertNotSame(small, pool.getBuffer(100));
+
+		// Buffers larger than pool are not kept at all.
+		byte huge[] = new byte[501];
+		pool.returnBuffer(huge);
+		pool.returnBuffer(null);
+		assertNotSame(huge, pool.getBuffer(501));
+	}
+
+}
@@ -0,0 +1,67 @@
+package fi.harism.facebook.util;
+
+import java.io.InterruptedIOException;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for CancelSignal.
+ * 
+ * @author harism
+ */
+public class CancelSignalTest extends TestCase {
+
+	@Override
+	protected void tearDown() {
+		CancelSignal.setCurrent(null);
+	}
+
+	public void testCancelRunsRegisteredCancellables() throws Exception {
+		CancelSignal signal = new CancelSignal();
+		CancelSignal.setCurrent(signal);
+		CountingCancellable registered = new CountingCancellable();
+		CountingCancellable unregistered = new CountingCancellable();
+		CancelSignal.register(registered);
+		CancelSignal.register(unregistered);
+		CancelSignal.unregister(unregistered);
+
+		assertFalse(CancelSignal.isCurrentCancelled());
+		signal.cancel();
+		signal.cancel();
+		assertTrue(CancelSignal.isCurrentCancelled());
+		assertEquals(1, registered.count);
+		assertEquals(0, unregistered.count);
+	}
+
+	public void testRegisterAfterCancelThrows() {
+		CancelSignal signal = new CancelSignal();
+		CancelSignal.setCurrent(signal);
+		signal.cancel();
+		CountingCancellable cancellable = new CountingCancellable();
+		try {
+			CancelSignal.register(cancellable);
+			fail("Expected InterruptedIOException");
+		} catch (InterruptedIOException ex) {
+		}
+		assertEquals(0, cancellable.count);
+	}
+
+	public void testNoCurrentSignal() throws Exception {
+		CountingCancellable cancellable = new CountingCancellable();
+		CancelSignal.register(cancellable);
+		CancelSignal.unregister(cancellable);
+		assertNull(CancelSignal.getCurrent());
+		assertFalse(CancelSignal.isCurrentCancelled());
+	}
+
+	private static final class CountingCancellable implements
+			CancelSignal.Cancellable {
+		public int count;
+
+		@Override
+		public void cancel() {
+			++count;
+		}
+	}
+
+}
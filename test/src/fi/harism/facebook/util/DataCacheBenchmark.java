@@ -0,0 +1,150 @@
+package fi.harism.facebook.util;
+
+import java.util.Random;
+import java.util.Vector;
+
+/**
+ * JVM microbenchmark comparing DataCache with the original Vector scanning
+ * cache at 100, 1k and 10k entries. Every round fills cache to its budget
+ * and then runs a mix of hits, which promote entries, and inserts, which
+ * evict least recently used entries. Run with
+ * 
+ * java -cp bin-test fi.harism.facebook.util.DataCacheBenchmark
+ * 
+ * @author harism
+ */
+public class DataCacheBenchmark {
+
+	private static final int ENTRY_SIZE = 100;
+	private static final int OPERATION_COUNT = 200000;
+
+	public static void main(String args[]) {
+		int entryCounts[] = { 100, 1000, 10000 };
+		// First pass warms up JIT, second one is reported.
+		for (int pass = 0; pass < 2; ++pass) {
+			for (int entryCount : entryCounts) {
+				long vector = run(new VectorCache(entryCount * ENTRY_SIZE),
+						entryCount);
+				long segmented = run(new Cache(new DataCache(entryCount
+						* ENTRY_SIZE)), entryCount);
+				long single = run(new Cache(new DataCache(entryCount
+						* ENTRY_SIZE, 1)), entryCount);
+				if (pass == 1) {
+					System.out.println(entryCount + " entries: vector="
+							+ vector + "ns/op datacache=" + segmented
+							+ "ns/op datacache(1 segment)=" + single
+							+ "ns/op");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs benchmark round and returns mean time per operation in
+	 * nanoseconds.
+	 */
+	private static long run(Cache cache, int entryCount) {
+		Random random = new Random(entryCount);
+		String keys[] = new String[entryCount * 2];
+		for (int i = 0; i < keys.length; ++i) {
+			keys[i] = "http://profile.ak.fbcdn.net/" + i + "_q.jpg";
+		}
+		for (int i = 0; i < entryCount; ++i) {
+			cache.setData(keys[i], new byte[ENTRY_SIZE]);
+		}
+		// Vector cache is too slow for full operation count at 10k entries.
+		int operationCount = Math.min(OPERATION_COUNT,
+				OPERATION_COUNT * 100 / entryCount);
+		long start = System.nanoTime();
+		for (int i = 0; i < operationCount; ++i) {
+			String key = keys[random.nextInt(keys.length)];
+			if (cache.getData(key) == null) {
+				cache.setData(key, new byte[ENTRY_SIZE]);
+			}
+		}
+		return (System.nanoTime() - start) / operationCount;
+	}
+
+	/**
+	 * Cache under benchmark.
+	 */
+	private static class Cache {
+
+		private DataCache dataCache;
+
+		public Cache(DataCache dataCache) {
+			this.dataCache = dataCache;
+		}
+
+		public byte[] getData(String key) {
+			return dataCache.getData(key);
+		}
+
+		public void setData(String key, byte[] data) {
+			dataCache.setData(key, data);
+		}
+	}
+
+	/**
+	 * Original DataCache storing CacheItems into a Vector which is scanned
+	 * for every access.
+	 */
+	private static final class VectorCache extends Cache {
+
+		private Vector<CacheItem> cacheList;
+		private int cacheSize;
+		private int cacheMaxSize;
+
+		public VectorCache(int cacheMaxSize) {
+			super(null);
+			cacheList = new Vector<CacheItem>();
+			this.cacheMaxSize = cacheMaxSize;
+		}
+
+		@Override
+		public byte[] getData(String key) {
+			CacheItem cacheItem = findCacheItem(key);
+			if (cacheItem != null) {
+				cacheList.remove(cacheItem);
+				cacheList.add(cacheItem);
+				return cacheItem.data;
+			}
+			return null;
+		}
+
+		@Override
+		public void setData(String key, byte[] data) {
+			CacheItem cacheItem = findCacheItem(key);
+			if (cacheItem != null) {
+				cacheSize -= cacheItem.data.length;
+				cacheList.remove(cacheItem);
+			}
+			if (data.length <= cacheMaxSize) {
+				cacheItem = new CacheItem();
+				cacheItem.key = key;
+				cacheItem.data = data;
+				while (cacheSize + data.length > cacheMaxSize) {
+					cacheSize -= cacheList.remove(0).data.length;
+				}
+				cacheSize += data.length;
+				cacheList.add(cacheItem);
+			}
+		}
+
+		private CacheItem findCacheItem(String key) {
+			for (int i = 0; i < cacheList.size(); ++i) {
+				CacheItem cacheItem = cacheList.get(i);
+				if (cacheItem.key.equals(key)) {
+					return cacheItem;
+				}
+			}
+			return null;
+		}
+	}
+
+	private static final class CacheItem {
+		public String key;
+		public byte[] data;
+	}
+
+}
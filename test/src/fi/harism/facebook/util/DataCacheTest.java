@@ -0,0 +1,205 @@
+package fi.harism.facebook.util;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for DataCache, including concurrent access from several threads.
+ * 
+ * @author harism
+ */
+public class DataCacheTest extends TestCase {
+
+	private static final int THREAD_COUNT = 8;
+
+	public void testLeastRecentlyUsedIsEvicted() {
+		DataCache cache = new DataCache(30, 1);
+		cache.setData("a", new byte[10]);
+		cache.setData("b", new byte[10]);
+		cache.setData("c", new byte[10]);
+		// Touch "a" so that "b" becomes least recently used.
+		assertNotNull(cache.getData("a"));
+		cache.setData("d", new byte[10]);
+		assertTrue(cache.containsKey("a"));
+		assertFalse(cache.containsKey("b"));
+		assertTrue(cache.containsKey("c"));
+		assertTrue(cache.containsKey("d"));
+		assertEquals(30, cache.getSize());
+	}
+
+	/**
+	 * Fills single segment cache past its budget, touching every third entry,
+	 * and checks entries are evicted in least recently used order.
+	 */
+	public void testEvictionOrder() {
+		DataCache cache = new DataCache(100, 1);
+		for (int i = 0; i < 10; ++i) {
+			cache.setData("k" + i, new byte[10]);
+		}
+		// Order from least to most recently used becomes 1 2 4 5 7 8 0 3 6 9.
+		for (int i = 0; i < 10; i += 3) {
+			assertNotNull(cache.getData("k" + i));
+		}
+		String order[] = { "k1", "k2", "k4", "k5", "k7", "k8", "k0", "k3",
+				"k6", "k9" };
+		for (int i = 0; i < order.length; ++i) {
+			cache.setData("n" + i, new byte[10]);
+			assertFalse(order[i], cache.containsKey(order[i]));
+			for (int j = i + 1; j < order.length; ++j) {
+				assertTrue(order[j], cache.containsKey(order[j]));
+			}
+			assertEquals(100, cache.getSize());
+		}
+	}
+
+	/**
+	 * Segmented cache filled past its budget stays within it, keeps newest
+	 * data and evicts within segments in least recently used order, so
+	 * recently touched data outlives untouched data of its segment.
+	 */
+	public void testSegmentedEvictionKeepsRecentData() {
+		DataCache cache = new DataCache(1000);
+		for (int i = 0; i < 100; ++i) {
+			cache.setData("old" + i, new byte[10]);
+		}
+		for (int i = 0; i < 100; i += 10) {
+			assertNotNull(cache.getData("old" + i));
+		}
+		for (int i = 0; i < 50; ++i) {
+			cache.setData("new" + i, new byte[10]);
+			assertTrue(cache.containsKey("new" + i));
+			assertEquals(1000, cache.getSize());
+		}
+		int oldCount = 0;
+		for (int i = 0; i < 100; ++i) {
+			if (cache.containsKey("old" + i)) {
+				++oldCount;
+			}
+		}
+		assertEquals(50, oldCount);
+		for (int i = 0; i < 100; i += 10) {
+			assertTrue("old" + i, cache.containsKey("old" + i));
+		}
+	}
+
+	public void testReplaceAndOversizedData() {
+		DataCache cache = new DataCache(30);
+		cache.setData("a", new byte[10]);
+		cache.setData("a", new byte[20]);
+		assertEquals(20, cache.getSize());
+		// Data which does not fit removes previous data with same key.
+		cache.setData("a", new byte[31]);
+		assertFalse(cache.containsKey("a"));
+		assertEquals(0, cache.getSize());
+	}
+
+	/**
+	 * Every thread stores its own keys into a cache large enough to hold
+	 * them all. No entry may be lost and size must match exactly.
+	 */
+	public void testConcurrentPutLosesNothing() throws Exception {
+		final int keysPerThread = 2000;
+		final DataCache cache = new DataCache(Integer.MAX_VALUE);
+		runThreads(new Worker() {
+			@Override
+			public void run(int index) {
+				for (int i = 0; i < keysPerThread; ++i) {
+					cache.setData(index + "/" + i, new byte[1 + i % 7]);
+					cache.getData(index + "/" + (i / 2));
+				}
+			}
+		});
+
+		int expectedSize = 0;
+		for (int t = 0; t < THREAD_COUNT; ++t) {
+			for (int i = 0; i < keysPerThread; ++i) {
+				byte data[] = cache.getData(t + "/" + i);
+				assertNotNull(data);
+				assertEquals(1 + i % 7, data.length);
+				expectedSize += data.length;
+			}
+		}
+		assertEquals(expectedSize, cache.getSize());
+	}
+
+	/**
+	 * Threads read, replace and evict shared keys from a small cache. Once
+	 * they are done, size must equal stored data and be within maximum.
+	 */
+	public void testConcurrentGetPutEvictKeepsSizeExact() throws Exception {
+		final int keyCount = 200;
+		final int maxSize = 4096;
+		final DataCache cache = new DataCache(maxSize);
+		runThreads(new Worker() {
+			@Override
+			public void run(int index) {
+				Random random = new Random(index);
+				for (int i = 0; i < 50000; ++i) {
+					String key = "key" + random.nextInt(keyCount);
+					if (random.nextInt(3) == 0) {
+						byte data[] = cache.getData(key);
+						if (data != null && data.length > 0
+								&& data[0] != (byte) data.length) {
+							throw new IllegalStateException("Corrupt data");
+						}
+					} else {
+						int length = 1 + random.nextInt(100);
+						byte data[] = new byte[length];
+						data[0] = (byte) length;
+						cache.setData(key, data);
+					}
+				}
+			}
+		});
+
+		int storedSize = 0;
+		for (int i = 0; i < keyCount; ++i) {
+			byte data[] = cache.getData("key" + i);
+			if (data != null) {
+				storedSize += data.length;
+			}
+		}
+		assertEquals(storedSize, cache.getSize());
+		assertTrue(cache.getSize() <= maxSize);
+	}
+
+	/**
+	 * Runs given Worker on THREAD_COUNT threads started at the same time, and
+	 * rethrows first failure.
+	 */
+	private void runThreads(final Worker worker) throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread threads[] = new Thread[THREAD_COUNT];
+		for (int i = 0; i < THREAD_COUNT; ++i) {
+			final int index = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						worker.run(index);
+					} catch (Throwable ex) {
+						failure.compareAndSet(null, ex);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+	}
+
+	private interface Worker {
+		public void run(int index);
+	}
+
+}
@@ -0,0 +1,62 @@
+package fi.harism.facebook.util;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * JVM benchmark for DiskCache restart latency. Cache directory is filled with
+ * avatar sized files, after which a new DiskCache is created as on
+ * application start. Reported times are for first access, which indexes
+ * existing files, and for reading cached data afterwards. Run with
+ * 
+ * java -cp bin-test fi.harism.facebook.util.DiskCacheBenchmark
+ * 
+ * @author harism
+ */
+public class DiskCacheBenchmark {
+
+	// Typical size of a compressed avatar picture.
+	private static final int ENTRY_SIZE = 4096;
+	// Number of reads timed after restart.
+	private static final int READ_COUNT = 500;
+
+	public static void main(String args[]) throws IOException {
+		int fileCounts[] = { 100, 1000, 4000 };
+		for (int fileCount : fileCounts) {
+			File cacheDir = File.createTempFile("diskcachebenchmark", "");
+			cacheDir.delete();
+			try {
+				DiskCache cache = new DiskCache(cacheDir, (long) fileCount
+						* ENTRY_SIZE);
+				for (int i = 0; i < fileCount; ++i) {
+					cache.setData(getKey(i), new byte[ENTRY_SIZE]);
+				}
+				// First run warms up JIT and file system caches.
+				long indexTime = 0, readTime = 0;
+				for (int pass = 0; pass < 2; ++pass) {
+					cache = new DiskCache(cacheDir, (long) fileCount
+							* ENTRY_SIZE);
+					long start = System.nanoTime();
+					cache.containsKey(getKey(0));
+					indexTime = System.nanoTime() - start;
+					start = System.nanoTime();
+					for (int i = 0; i < READ_COUNT; ++i) {
+						cache.getData(getKey((i * 7919) % fileCount));
+					}
+					readTime = (System.nanoTime() - start) / READ_COUNT;
+				}
+				System.out.println(fileCount + " files: restart index="
+						+ indexTime / 1000 + "us read=" + readTime / 1000
+						+ "us/op");
+			} finally {
+				new DiskCache(cacheDir, 0).clear();
+				cacheDir.delete();
+			}
+		}
+	}
+
+	private static String getKey(int index) {
+		return "http://profile.ak.fbcdn.net/" + index + "_q.jpg";
+	}
+
+}
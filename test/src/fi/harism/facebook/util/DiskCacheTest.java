@@ -0,0 +1,122 @@
+package fi.harism.facebook.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for DiskCache, including storing data as streams.
+ * 
+ * @author harism
+ */
+public class DiskCacheTest extends TestCase {
+
+	private File cacheDir;
+
+	@Override
+	protected void setUp() throws Exception {
+		cacheDir = File.createTempFile("diskcache", "");
+		cacheDir.delete();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		new DiskCache(cacheDir, 0).clear();
+		cacheDir.delete();
+	}
+
+	public void testLeastRecentlyUsedIsEvicted() {
+		DiskCache cache = new DiskCache(cacheDir, 30);
+		cache.setData("a", new byte[10]);
+		cache.setData("b", new byte[10]);
+		cache.setData("c", new byte[10]);
+		// Touch "a" so that "b" becomes least recently used.
+		assertNotNull(cache.getData("a"));
+		cache.setData("d", new byte[10]);
+		assertTrue(cache.containsKey("a"));
+		assertFalse(cache.containsKey("b"));
+		assertTrue(cache.containsKey("c"));
+		assertTrue(cache.containsKey("d"));
+	}
+
+	public void testDataSurvivesRestart() {
+		new DiskCache(cacheDir, 30).setData("a", createData(10, 1));
+		DiskCache cache = new DiskCache(cacheDir, 30);
+		assertTrue(Arrays.equals(createData(10, 1), cache.getData("a")));
+		assertNull(cache.getData("b"));
+	}
+
+	public void testEditorReplacesDataOnCommitOnly() throws Exception {
+		DiskCache cache = new DiskCache(cacheDir, 1000);
+		cache.setData("a", createData(10, 1));
+		DiskCache.Editor editor = cache.edit("a");
+		editor.write(createData(20, 2));
+		// Previous data is readable until commit.
+		assertTrue(Arrays.equals(createData(10, 1), cache.getData("a")));
+		editor.commit();
+		assertTrue(Arrays.equals(createData(20, 2), cache.getData("a")));
+
+		editor = cache.edit("a");
+		editor.write(createData(30, 3));
+		editor.abort();
+		assertTrue(Arrays.equals(createData(20, 2), cache.getData("a")));
+		// Temporary files are removed.
+		assertEquals(1, cacheDir.list().length);
+	}
+
+	public void testOversizedEditorRemovesData() throws Exception {
+		DiskCache cache = new DiskCache(cacheDir, 100);
+		cache.setData("a", createData(10, 1));
+		DiskCache.Editor editor = cache.edit("a");
+		for (int i = 0; i < 10; ++i) {
+			editor.write(createData(20, i));
+		}
+		editor.commit();
+		assertFalse(cache.containsKey("a"));
+		assertEquals(0, cacheDir.list().length);
+	}
+
+	/**
+	 * Open stream keeps on reading data it was opened for even if data is
+	 * replaced meanwhile.
+	 */
+	public void testStreamSurvivesReplace() throws Exception {
+		DiskCache cache = new DiskCache(cacheDir, 1000);
+		cache.setData("a", createData(100, 1));
+		InputStream is = cache.getInputStream("a");
+		cache.setData("a", createData(50, 2));
+		assertTrue(Arrays.equals(createData(100, 1), readAll(is)));
+		is = cache.getInputStream("a");
+		assertTrue(Arrays.equals(createData(50, 2), readAll(is)));
+		assertNull(cache.getInputStream("b"));
+	}
+
+	private byte[] createData(int length, int seed) {
+		byte data[] = new byte[length];
+		for (int i = 0; i < length; ++i) {
+			data[i] = (byte) (seed * 31 + i);
+		}
+		return data;
+	}
+
+	private byte[] readAll(InputStream is) throws IOException {
+		try {
+			byte data[] = new byte[0];
+			byte buffer[] = new byte[16];
+			int readLength;
+			while ((readLength = is.read(buffer)) != -1) {
+				byte newData[] = new byte[data.length + readLength];
+				System.arraycopy(data, 0, newData, 0, data.length);
+				System.arraycopy(buffer, 0, newData, data.length, readLength);
+				data = newData;
+			}
+			return data;
+		} finally {
+			is.close();
+		}
+	}
+
+}
@@ -0,0 +1,15 @@
+package android.app;
+
+/**
+ * Activity for running tests off-device. Runnables are run at once on
+ * calling thread.
+ * 
+ * @author harism
+ */
+public class Activity {
+
+	public void runOnUiThread(Runnable action) {
+		action.run();
+	}
+
+}
@@ -0,0 +1,9 @@
+package android.content;
+
+/**
+ * Intent for running tests off-device.
+ * 
+ * @author harism
+ */
+public class Intent {
+}
@@ -0,0 +1,67 @@
+package android.graphics;
+
+/**
+ * Bitmap for running tests off-device. Only size and config are stored, no
+ * pixels.
+ * 
+ * @author harism
+ */
+public final class Bitmap {
+
+	public enum Config {
+		ALPHA_8, ARGB_4444, ARGB_8888, RGB_565
+	}
+
+	private int width;
+	private int height;
+	private Config config;
+	private boolean recycled;
+
+	Bitmap(int width, int height, Config config) {
+		this.width = width;
+		this.height = height;
+		this.config = config;
+	}
+
+	public static Bitmap createBitmap(int width, int height, Config config) {
+		return new Bitmap(width, height, config);
+	}
+
+	public static Bitmap createScaledBitmap(Bitmap src, int width,
+			int height, boolean filter) {
+		return new Bitmap(width, height, src.config);
+	}
+
+	public Config getConfig() {
+		return config;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getRowBytes() {
+		switch (config) {
+		case ALPHA_8:
+			return width;
+		case ARGB_4444:
+		case RGB_565:
+			return width * 2;
+		default:
+			return width * 4;
+		}
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public boolean isRecycled() {
+		return recycled;
+	}
+
+	public void recycle() {
+		recycled = true;
+	}
+
+}
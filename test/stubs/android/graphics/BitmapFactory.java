@@ -0,0 +1,86 @@
+package android.graphics;
+
+/**
+ * BitmapFactory for running tests off-device. Image data is ASCII text
+ * "IMG width height", anything else fails to decode. Decodes are counted, and
+ * the largest number of pixels decoded at once is recorded, so that tests can
+ * check subsampling.
+ * 
+ * @author harism
+ */
+public class BitmapFactory {
+
+	// Number of Bitmaps decoded, bounds only decodes excluded.
+	private static int decodeCount;
+	// Largest number of pixels within one decoded Bitmap.
+	private static int peakDecodedPixels;
+
+	public static Bitmap decodeByteArray(byte[] data, int offset, int length) {
+		return decodeByteArray(data, offset, length, null);
+	}
+
+	public static Bitmap decodeByteArray(byte[] data, int offset, int length,
+			Options opts) {
+		String header[] = new String(data, offset, length).split(" ");
+		if (header.length != 3 || !header[0].equals("IMG")) {
+			return null;
+		}
+		int width, height;
+		try {
+			width = Integer.parseInt(header[1]);
+			height = Integer.parseInt(header[2]);
+		} catch (NumberFormatException ex) {
+			return null;
+		}
+		if (opts != null && opts.inSampleSize > 1) {
+			width = Math.max(1, width / opts.inSampleSize);
+			height = Math.max(1, height / opts.inSampleSize);
+		}
+		if (opts != null) {
+			opts.outWidth = width;
+			opts.outHeight = height;
+			if (opts.inJustDecodeBounds) {
+				return null;
+			}
+		}
+		synchronized (BitmapFactory.class) {
+			++decodeCount;
+			peakDecodedPixels = Math.max(peakDecodedPixels, width * height);
+		}
+		return new Bitmap(width, height, opts != null
+				&& opts.inPreferredConfig != null ? opts.inPreferredConfig
+				: Bitmap.Config.ARGB_8888);
+	}
+
+	/**
+	 * Returns image data for given size.
+	 */
+	public static byte[] createImage(int width, int height) {
+		return ("IMG " + width + " " + height).getBytes();
+	}
+
+	public static synchronized int getDecodeCount() {
+		return decodeCount;
+	}
+
+	public static synchronized int getPeakDecodedPixels() {
+		return peakDecodedPixels;
+	}
+
+	/**
+	 * Resets decode statistics.
+	 */
+	public static synchronized void reset() {
+		decodeCount = 0;
+		peakDecodedPixels = 0;
+	}
+
+	public static class Options {
+		public boolean inJustDecodeBounds;
+		public Bitmap.Config inPreferredConfig;
+		public int inSampleSize;
+		public int outHeight;
+		public int outWidth;
+	}
+
+}
@@ -0,0 +1,35 @@
+package android.graphics;
+
+/**
+ * Canvas for running tests off-device, drawing does nothing.
+ * 
+ * @author harism
+ */
+public class Canvas {
+
+	private Bitmap bitmap;
+
+	public Canvas() {
+	}
+
+	public Canvas(Bitmap bitmap) {
+		this.bitmap = bitmap;
+	}
+
+	public void drawBitmap(Bitmap bitmap, Rect src, Rect dst, Paint paint) {
+		if (this.bitmap == null || bitmap.isRecycled()) {
+			throw new IllegalStateException();
+		}
+	}
+
+	public void drawColor(int color) {
+	}
+
+	public void drawRoundRect(RectF rect, float rx, float ry, Paint paint) {
+	}
+
+	public void setBitmap(Bitmap bitmap) {
+		this.bitmap = bitmap;
+	}
+
+}
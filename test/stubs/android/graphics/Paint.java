@@ -0,0 +1,39 @@
+package android.graphics;
+
+/**
+ * Paint for running tests off-device.
+ * 
+ * @author harism
+ */
+public class Paint {
+
+	private int color;
+	private boolean antiAlias;
+	private Xfermode xfermode;
+
+	public int getColor() {
+		return color;
+	}
+
+	public Xfermode getXfermode() {
+		return xfermode;
+	}
+
+	public boolean isAntiAlias() {
+		return antiAlias;
+	}
+
+	public void setAntiAlias(boolean antiAlias) {
+		this.antiAlias = antiAlias;
+	}
+
+	public void setColor(int color) {
+		this.color = color;
+	}
+
+	public Xfermode setXfermode(Xfermode xfermode) {
+		this.xfermode = xfermode;
+		return xfermode;
+	}
+
+}
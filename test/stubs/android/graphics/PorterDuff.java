@@ -0,0 +1,14 @@
+package android.graphics;
+
+/**
+ * PorterDuff for running tests off-device.
+ * 
+ * @author harism
+ */
+public class PorterDuff {
+
+	public enum Mode {
+		CLEAR, SRC, DST, SRC_OVER, DST_OVER, SRC_IN, DST_IN, SRC_OUT, DST_OUT
+	}
+
+}
@@ -0,0 +1,13 @@
+package android.graphics;
+
+/**
+ * PorterDuffXfermode for running tests off-device.
+ * 
+ * @author harism
+ */
+public class PorterDuffXfermode extends Xfermode {
+
+	public PorterDuffXfermode(PorterDuff.Mode mode) {
+	}
+
+}
@@ -0,0 +1,29 @@
+package android.graphics;
+
+/**
+ * RectF for running tests off-device.
+ * 
+ * @author harism
+ */
+public class RectF {
+
+	public float left;
+	public float top;
+	public float right;
+	public float bottom;
+
+	public RectF() {
+	}
+
+	public RectF(Rect rect) {
+		set(rect);
+	}
+
+	public void set(Rect rect) {
+		left = rect.left;
+		top = rect.top;
+		right = rect.right;
+		bottom = rect.bottom;
+	}
+
+}
@@ -0,0 +1,9 @@
+package android.graphics;
+
+/**
+ * Xfermode for running tests off-device.
+ * 
+ * @author harism
+ */
+public class Xfermode {
+}
@@ -0,0 +1,18 @@
+package android.os;
+
+/**
+ * Build for running tests off-device.
+ * 
+ * @author harism
+ */
+public final class Build {
+
+	public static final class VERSION {
+		public static final int SDK_INT = VERSION_CODES.FROYO;
+	}
+
+	public static final class VERSION_CODES {
+		public static final int FROYO = 8;
+	}
+
+}
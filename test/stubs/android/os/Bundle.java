@@ -0,0 +1,48 @@
+package android.os;
+
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * Bundle for running tests off-device. Holds String values only.
+ * 
+ * @author harism
+ */
+public class Bundle {
+
+	private HashMap<String, Object> mMap;
+
+	public Bundle() {
+		mMap = new HashMap<String, Object>();
+	}
+
+	public Bundle(Bundle bundle) {
+		mMap = new HashMap<String, Object>(bundle.mMap);
+	}
+
+	public boolean containsKey(String key) {
+		return mMap.containsKey(key);
+	}
+
+	public Object get(String key) {
+		return mMap.get(key);
+	}
+
+	public String getString(String key) {
+		Object value = mMap.get(key);
+		return value instanceof String ? (String) value : null;
+	}
+
+	public Set<String> keySet() {
+		return mMap.keySet();
+	}
+
+	public void putString(String key, String value) {
+		mMap.put(key, value);
+	}
+
+	public void remove(String key) {
+		mMap.remove(key);
+	}
+
+}
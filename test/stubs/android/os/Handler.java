@@ -0,0 +1,60 @@
+package android.os;
+
+import java.util.LinkedList;
+
+/**
+ * Handler for running tests off-device. Posted Runnables are run at once on
+ * calling thread, unless tests hold them for running one message at a time.
+ * 
+ * @author harism
+ */
+public class Handler {
+
+	// Held Runnables, null if they are run at once. Guarded by Handler.class.
+	private static LinkedList<Runnable> messages = null;
+
+	public Handler(Looper looper) {
+	}
+
+	/**
+	 * Returns number of held Runnables.
+	 */
+	public static synchronized int getMessageCount() {
+		return messages != null ? messages.size() : 0;
+	}
+
+	/**
+	 * Runs first held Runnable. Returns false if there is none.
+	 */
+	public static boolean runMessage() {
+		Runnable runnable;
+		synchronized (Handler.class) {
+			if (messages == null || messages.isEmpty()) {
+				return false;
+			}
+			runnable = messages.removeFirst();
+		}
+		runnable.run();
+		return true;
+	}
+
+	/**
+	 * Makes Runnables posted from now on wait for runMessage(), or restores
+	 * running them at once. Held Runnables are dropped once holding ends.
+	 */
+	public static synchronized void setHoldMessages(boolean hold) {
+		messages = hold ? new LinkedList<Runnable>() : null;
+	}
+
+	public boolean post(Runnable runnable) {
+		synchronized (Handler.class) {
+			if (messages != null) {
+				messages.add(runnable);
+				return true;
+			}
+		}
+		runnable.run();
+		return true;
+	}
+
+}
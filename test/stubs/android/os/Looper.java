@@ -0,0 +1,14 @@
+package android.os;
+
+/**
+ * Looper for running tests off-device. There is no message loop.
+ * 
+ * @author harism
+ */
+public final class Looper {
+
+	public static Looper getMainLooper() {
+		return null;
+	}
+
+}
@@ -0,0 +1,26 @@
+package android.os;
+
+/**
+ * SystemClock for running tests off-device. Tests can replace real time with
+ * a fake one.
+ * 
+ * @author harism
+ */
+public final class SystemClock {
+
+	// Fake time in milliseconds, or -1 for real time.
+	private static volatile long fakeTime = -1;
+
+	/**
+	 * Sets fake time returned by uptimeMillis(), or -1 for real time.
+	 */
+	public static void setFakeTime(long time) {
+		fakeTime = time;
+	}
+
+	public static long uptimeMillis() {
+		long time = fakeTime;
+		return time >= 0 ? time : System.nanoTime() / 1000000;
+	}
+
+}
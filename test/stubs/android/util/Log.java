@@ -0,0 +1,15 @@
+package android.util;
+
+/**
+ * Log for running tests off-device, messages are printed to System.err.
+ * 
+ * @author harism
+ */
+public final class Log {
+
+	public static int e(String tag, String msg) {
+		System.err.println("E/" + tag + ": " + msg);
+		return 0;
+	}
+
+}
@@ -0,0 +1,16 @@
+package com.facebook.android;
+
+/**
+ * DialogError for running tests off-device.
+ * 
+ * @author harism
+ */
+public class DialogError extends Throwable {
+
+	private static final long serialVersionUID = 1L;
+
+	public DialogError(String message) {
+		super(message);
+	}
+
+}
@@ -0,0 +1,62 @@
+package com.facebook.android;
+
+import java.io.IOException;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.os.Bundle;
+
+/**
+ * Facebook for running tests off-device. Session is never valid, and
+ * requests other than GET succeed without doing anything.
+ * 
+ * @author harism
+ */
+public class Facebook {
+
+	public static final String TOKEN = "access_token";
+	public static final int FORCE_DIALOG_AUTH = -1;
+
+	public Facebook(String appId) {
+	}
+
+	public void authorize(Activity activity, String[] permissions,
+			int activityCode, DialogListener listener) {
+		listener.onCancel();
+	}
+
+	public void authorizeCallback(int requestCode, int resultCode, Intent data) {
+	}
+
+	public String getAccessToken() {
+		return null;
+	}
+
+	public boolean isSessionValid() {
+		return false;
+	}
+
+	public String logout(Activity activity) throws IOException {
+		return "true";
+	}
+
+	public String request(Bundle parameters) throws IOException {
+		return "true";
+	}
+
+	public String request(String graphPath, Bundle parameters,
+			String httpMethod) throws IOException {
+		return "true";
+	}
+
+	public interface DialogListener {
+		public void onComplete(Bundle values);
+
+		public void onFacebookError(FacebookError e);
+
+		public void onError(DialogError e);
+
+		public void onCancel();
+	}
+
+}
@@ -0,0 +1,16 @@
+package com.facebook.android;
+
+/**
+ * FacebookError for running tests off-device.
+ * 
+ * @author harism
+ */
+public class FacebookError extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public FacebookError(String message) {
+		super(message);
+	}
+
+}
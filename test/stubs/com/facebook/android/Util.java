@@ -0,0 +1,50 @@
+package com.facebook.android;
+
+import java.net.URLEncoder;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.os.Bundle;
+
+/**
+ * Util for running tests off-device, parsing and encoding like Facebook
+ * Android SDK does.
+ * 
+ * @author harism
+ */
+public class Util {
+
+	@SuppressWarnings("deprecation")
+	public static String encodeUrl(Bundle parameters) {
+		if (parameters == null) {
+			return "";
+		}
+		StringBuilder out = new StringBuilder();
+		for (String key : parameters.keySet()) {
+			if (out.length() > 0) {
+				out.append('&');
+			}
+			out.append(URLEncoder.encode(key)).append('=')
+					.append(URLEncoder.encode(parameters.getString(key)));
+		}
+		return out.toString();
+	}
+
+	public static JSONObject parseJson(String response) throws JSONException,
+			FacebookError {
+		if (response.equals("false")) {
+			throw new FacebookError("request failed");
+		}
+		if (response.equals("true")) {
+			response = "{value : true}";
+		}
+		JSONObject json = new JSONObject(response);
+		if (json.has("error")) {
+			throw new FacebookError(json.getJSONObject("error").getString(
+					"message"));
+		}
+		return json;
+	}
+
+}